@@ -105,10 +105,13 @@ dependencies {
   implementation("com.google.guava:guava:30.0-jre")
 
   implementation("com.squareup.retrofit2:retrofit:2.6.2")
-  implementation("com.squareup.retrofit2:converter-gson:2.6.2")
   implementation("com.squareup.retrofit2:converter-scalars:2.6.2")
+  // picked up by JsonCodec if present
+  runtimeOnly("com.fasterxml.jackson.module:jackson-module-blackbird:2.12.3")
 
   testImplementation("org.junit.jupiter:junit-jupiter:5.4.2")
+  // baseline of the JSON codec benchmark
+  testImplementation("com.google.code.gson:gson:2.8.6")
   testImplementation("org.mockito:mockito-core:2.27.0")
   testImplementation("org.assertj:assertj-core:3.12.2")
   testImplementation("com.github.javafaker:javafaker:0.17.2") {
@@ -118,6 +121,10 @@ dependencies {
 
 tasks.test {
   useJUnitPlatform()
+  filter {
+    // experimental, only run by nativeSmokeTest
+    excludeTestsMatching("io.wisetime.connector.allisa.NativeImageSmokeTest")
+  }
   testLogging {
     // "passed", "skipped", "failed"
     events("skipped", "failed")
@@ -148,6 +155,72 @@ configurations.all {
     )
   }
 }
+tasks.register<JavaExec>("jsonBenchmark") {
+  classpath = sourceSets["test"].runtimeClasspath
+  mainClass.set("io.wisetime.connector.allisa.JsonCodecBenchmark")
+}
+
+// Experimental: native executable of the connector, built with GraalVM native-image from GRAALVM_HOME. The tasks are
+// left out of the default build and CI, and only exist with -PexperimentalNative. See the README.
+if (project.hasProperty("experimentalNative")) {
+  val graalVmHome: String = System.getenv("GRAALVM_HOME") ?: ""
+  val nativeImageFile = file("$buildDir/native/wisetime-allisa-connector")
+  val nativeImageConfigDir = "src/main/resources/META-INF/native-image/io.wisetime/wisetime-allisa-connector"
+
+  tasks.register<Exec>("nativeImage") {
+    group = "experimental"
+    description = "Experimental: builds the native executable of the connector with GraalVM native-image."
+    inputs.files(tasks.jar, configurations.runtimeClasspath)
+    outputs.file(nativeImageFile)
+    executable = "$graalVmHome/bin/native-image"
+    argumentProviders.add(CommandLineArgumentProvider {
+      listOf(
+        "-cp", files(tasks.jar, configurations.runtimeClasspath).asPath,
+        "-H:Name=${nativeImageFile.name}",
+        "-H:Path=${nativeImageFile.parent}",
+        application.mainClass.get()
+      )
+    })
+    doFirst {
+      require(graalVmHome.isNotEmpty()) { "GRAALVM_HOME needs to point to a GraalVM with native-image installed" }
+      nativeImageFile.parentFile.mkdirs()
+    }
+  }
+
+  tasks.register<Test>("nativeSmokeTest") {
+    group = "experimental"
+    description = "Experimental: runs the check of the native executable against a local Allisa stub."
+    dependsOn("nativeImage")
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    filter {
+      includeTestsMatching("io.wisetime.connector.allisa.NativeImageSmokeTest")
+    }
+    systemProperty("allisa.nativeImage", nativeImageFile.absolutePath)
+  }
+
+  // Runs the connector on the GraalVM JVM with the tracing agent, which adds the reflection, proxies and resources the
+  // run used to the native image config. Configure it like the connector, and stop it once it has synced tags and
+  // posted time.
+  tasks.register<Exec>("nativeImageAgent") {
+    group = "experimental"
+    description = "Experimental: runs the connector with the native-image agent to extend the native image config."
+    dependsOn(tasks.jar)
+    executable = "$graalVmHome/bin/java"
+    argumentProviders.add(CommandLineArgumentProvider {
+      listOf(
+        "-agentlib:native-image-agent=config-merge-dir=$nativeImageConfigDir",
+        "-cp", files(tasks.jar, configurations.runtimeClasspath).asPath,
+        application.mainClass.get()
+      )
+    })
+    doFirst {
+      require(graalVmHome.isNotEmpty()) { "GRAALVM_HOME needs to point to a GraalVM with native-image installed" }
+    }
+  }
+}
+
 tasks.clean {
   delete("${projectDir}/out")
 }
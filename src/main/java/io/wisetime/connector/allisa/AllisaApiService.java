@@ -4,36 +4,69 @@
 
 package io.wisetime.connector.allisa;
 
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_FIELDS_PARAMETER;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_HEDGE_CASE_SEARCH;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_HEDGE_MAX_PERCENT;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_PAGE_CACHE_SECONDS;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_POST_FIELD_MAPPING;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_POST_TIME_BUDGET_SECONDS;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_POST_TYPE;
 
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.wisetime.connector.allisa.model.AllisaCase;
 import io.wisetime.connector.allisa.model.ApiResponse;
+import io.wisetime.connector.allisa.model.CasePage;
+import io.wisetime.connector.allisa.model.Result;
 import io.wisetime.connector.allisa.model.TimePostData;
 import io.wisetime.connector.allisa.util.ConnectorException;
-import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.Deadline;
+import io.wisetime.connector.allisa.util.Hedging;
+import io.wisetime.connector.allisa.util.SingleFlight;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javax.inject.Named;
+import okhttp3.Headers;
 import okhttp3.MultipartBody;
+import okhttp3.ResponseBody;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
+import retrofit2.http.QueryMap;
 
 /**
  * Service class to communicate with allisa.
@@ -42,21 +75,56 @@ import retrofit2.http.Path;
  */
 public class AllisaApiService {
 
+  static final String POST_API = "allisaPostApi";
+  static final String LOOKUP_API = "allisaLookupApi";
+
   private static final Logger log = LoggerFactory.getLogger(AllisaApiService.class);
   private static final String DEFAULT_MAPPING = "pid:pid,userId:userId,narrative:narrative,startDateTime:startDateTime,"
       + "totalTimeSecs:totalTimeSecs,chargeableTimeSecs:chargeableTimeSecs,activityCode:activityCode";
   private static final Set<String> REQUIRED_MAPPINGS = ImmutableSet.of("pid", "userId", "narrative", "startDateTime",
       "totalTimeSecs", "chargeableTimeSecs", "activityCode");
+  private static final int MIN_POST_SHARE_DIVISOR = 3;
+
+  // kinds of page validators, which prefix the stored validators
+  private static final String ETAG_VALIDATOR = "etag:";
+  private static final String LAST_MODIFIED_VALIDATOR = "modified:";
+  private static final String DIGEST_VALIDATOR = "sha256:";
+  private static final int MAX_CACHED_PAGES = 64;
 
+  // the calls of the tag sync and refresh, and of all lanes unless these have their own, see HttpLane
   @Inject
   private AllisaApi allisaApi;
 
-  private final Gson entityParser;
+  @com.google.inject.Inject(optional = true)
+  @Named(POST_API)
+  private AllisaApi postApi;
+
+  @com.google.inject.Inject(optional = true)
+  @Named(LOOKUP_API)
+  private AllisaApi lookupApi;
+
+  @Inject
+  private ConnectorMetrics metrics;
+
+  // concurrent identical read requests share one HTTP call, e.g. several users posting to the same case at once
+  private final SingleFlight<String> inFlightReads = new SingleFlight<>();
+
+  // enforces request deadlines and triggers hedged requests
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-request-timer-%d").build());
+
+  private final Hedging searchHedging;
+
+  // pages of the case listing read recently, so that the new case sync and the tag refresh don't both fetch them
+  private final Cache<String, ListedPage> listedPages;
 
   private final Map<String, String> postTimeFieldMapping;
 
-  public AllisaApiService() {
-    entityParser = new GsonBuilder().create();
+  private final TenantConfig config;
+
+  @Inject
+  public AllisaApiService(TenantConfig config) {
+    this.config = config;
     ImmutableMap.Builder<String, String> mapBuilder = ImmutableMap.builder();
     for (String item: getAllisaPostFieldMapping().split(",")) {
       String[] parts = item.split(":");
@@ -70,10 +138,253 @@ public class AllisaApiService {
     if (!missingFields.isEmpty()) {
       throw new RuntimeException("Invalid post field mapping. Missing fields: " + missingFields.toString());
     }
+    searchHedging = config.getBoolean(ALLISA_HEDGE_CASE_SEARCH).orElse(false)
+        ? new Hedging(timer, config.getInt(ALLISA_HEDGE_MAX_PERCENT).orElse(5))
+        : null;
+    listedPages = CacheBuilder.newBuilder()
+        .expireAfterWrite(Duration.ofSeconds(config.getInt(ALLISA_PAGE_CACHE_SECONDS).orElse(60)))
+        .maximumSize(MAX_CACHED_PAGES)
+        .build();
   }
 
   public void postTime(TimePostData timePostData) {
-    MultipartBody body = new MultipartBody.Builder().setType(MultipartBody.FORM)
+    postTime(timePostData, Deadline.after(getPostTimeBudget()));
+  }
+
+  /**
+   * Posts time, taking the remaining time of the deadline. A post that has been sent can't be safely abandoned, as
+   * Allisa might have stored the record already and WiseTime would post it again on retry. Posts are therefore given
+   * at least a share of the full budget, even if the lookups have consumed most of it.
+   */
+  public void postTime(TimePostData timePostData, Deadline deadline) {
+    executeCall(postApi().postTime(getAllisaPostType(), toPostTimeBody(timePostData)),
+        deadline.atLeast(getPostTimeBudget().dividedBy(MIN_POST_SHARE_DIVISOR)));
+  }
+
+  public Optional<AllisaCase> getAllisaCaseByTagName(String tagName) {
+    final String postType = getAllisaPostType();
+    final Deadline deadline = searchDeadline(Deadline.after(getPostTimeBudget()));
+    return findCaseByTagName(
+        inFlightReads.execute(searchKey(postType, tagName),
+            () -> executeCall(lookupApi().getCase(postType, tagName, caseFields()), deadline)),
+        tagName);
+  }
+
+  /**
+   * Non-blocking variant of {@link #getAllisaCaseByTagName(String)}.
+   */
+  public CompletableFuture<Optional<AllisaCase>> getAllisaCaseByTagNameAsync(String tagName) {
+    return getAllisaCaseByTagNameAsync(tagName, searchDeadline(Deadline.after(getPostTimeBudget())));
+  }
+
+  /**
+   * Searches the Allisa case of a tag, failing if there is no answer by the deadline. If hedging is enabled, a second
+   * search is sent when the first one is slower than usual.
+   */
+  public CompletableFuture<Optional<AllisaCase>> getAllisaCaseByTagNameAsync(String tagName, Deadline deadline) {
+    return getAllisaCaseByTagNameAsync(getAllisaPostType(), tagName, deadline);
+  }
+
+  /**
+   * Searches the Allisa case of a tag in the listing of the given case type.
+   */
+  public CompletableFuture<Optional<AllisaCase>> getAllisaCaseByTagNameAsync(String caseType, String tagName,
+                                                                            Deadline deadline) {
+    final Supplier<CompletableFuture<ApiResponse<AllisaCase>>> search =
+        () -> withDeadline(executeCallAsync(lookupApi().getCase(caseType, tagName, caseFields())), deadline);
+    final CompletableFuture<ApiResponse<AllisaCase>> response = inFlightReads.executeAsync(searchKey(caseType, tagName),
+        () -> searchHedging != null ? searchHedging.execute(search) : search.get());
+    return cancellingSource(response.thenApply(found -> findCaseByTagName(found, tagName)), response);
+  }
+
+  /**
+   * Cancels the source future when the derived future is cancelled, which dependent stages don't do by themselves.
+   */
+  private static <T> CompletableFuture<T> cancellingSource(CompletableFuture<T> derived, CompletableFuture<?> source) {
+    derived.whenComplete((result, error) -> {
+      if (derived.isCancelled()) {
+        source.cancel(true);
+      }
+    });
+    return derived;
+  }
+
+  /**
+   * Resolves the Allisa cases of several tags at once. Tag names without a matching Allisa case are absent from the
+   * returned map.
+   *
+   * <p>The Allisa API has no batch lookup: its search endpoint accepts a single search term, and the case listing
+   * can't be filtered by case reference. One search is therefore still sent per distinct tag name (ignoring case),
+   * so this doesn't reduce the number of Allisa requests. It only sends them concurrently, so that a time group with
+   * several tags waits for the slowest search rather than for all of them in turn, and identical searches of concurrent
+   * posts are coalesced. As soon as a search fails, the searches still in flight are cancelled.
+   */
+  public Map<String, AllisaCase> getAllisaCasesByTagNames(Collection<String> tagNames) {
+    return getAllisaCasesByTagNames(tagNames, Deadline.after(getPostTimeBudget()));
+  }
+
+  /**
+   * Resolves the Allisa cases of several tags, using a share of the time left until the deadline of the time post.
+   */
+  public Map<String, AllisaCase> getAllisaCasesByTagNames(Collection<String> tagNames, Deadline postTimeDeadline) {
+    return getAllisaCasesByTagNames(getAllisaPostType(), tagNames, postTimeDeadline);
+  }
+
+  /**
+   * Resolves the Allisa cases of several tags in the listing of the given case type.
+   */
+  public Map<String, AllisaCase> getAllisaCasesByTagNames(String caseType, Collection<String> tagNames,
+                                                         Deadline postTimeDeadline) {
+    final Deadline deadline = searchDeadline(postTimeDeadline);
+    final Map<String, CompletableFuture<Optional<AllisaCase>>> lookups = new LinkedHashMap<>();
+    tagNames.forEach(tagName -> lookups.computeIfAbsent(tagName.toLowerCase(Locale.ROOT),
+        key -> getAllisaCaseByTagNameAsync(caseType, tagName, deadline)));
+
+    // fail on the first failed search rather than waiting for all of them
+    final CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+    lookups.values().forEach(lookup -> lookup.whenComplete((found, error) -> {
+      if (error != null) {
+        firstFailure.completeExceptionally(error);
+      }
+    }));
+    try {
+      CompletableFuture.anyOf(CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0])), firstFailure)
+          .join();
+    } catch (CompletionException e) {
+      lookups.values().forEach(lookup -> lookup.cancel(true));
+      final Throwable cause = unwrap(e);
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    }
+
+    final Map<String, AllisaCase> casesByTagName = new HashMap<>();
+    tagNames.forEach(tagName -> lookups.get(tagName.toLowerCase(Locale.ROOT)).join()
+        .ifPresent(allisaCase -> casesByTagName.put(tagName, allisaCase)));
+    return casesByTagName;
+  }
+
+  /**
+   * Lists the cases of a page that are newer than the last synced case. Full pages may be served from the recently
+   * listed pages, as new cases are only ever added to the last page.
+   */
+  public List<AllisaCase> getNewAllisaCases(String caseType, long lastSyncedTag, long nextPage, long batchSize) {
+    final String key = pageKey(caseType, nextPage, batchSize);
+    final ListedPage cached = listedPages.getIfPresent(key);
+    if (cached != null && cached.isFull(batchSize)) {
+      return filterNewCases(cached.getCases(), lastSyncedTag);
+    }
+    return filterNewCases(
+        inFlightReads.execute(key, () -> cachePage(key,
+            executeCall(allisaApi.getCasePage(caseType, nextPage, batchSize, caseFields(), null, null),
+                this::readPage)))
+            .getCases(),
+        lastSyncedTag);
+  }
+
+  /**
+   * Lists a page of cases like {@link #getNewAllisaCases(String, long, long, long)}, unless the page is unchanged
+   * since it was read with the given validator. The returned page carries the validator to pass next time: the ETag
+   * or Last-Modified header if Allisa sends one, which is sent back as a conditional request, otherwise a digest of
+   * the raw body. Unchanged pages are not decoded. Pages listed recently, e.g. by the new case sync, are not read again.
+   *
+   * @param validator the validator of the page when it was last read, or null to read the page in any case
+   */
+  public CasePage getChangedAllisaCases(String caseType, long lastSyncedTag, long page, long batchSize,
+                                        String validator) {
+    final String key = pageKey(caseType, page, batchSize);
+    final ListedPage cached = listedPages.getIfPresent(key);
+    final ListedPage listed = cached != null
+        ? cached
+        : cachePage(key, executeCall(allisaApi.getCasePage(caseType, page, batchSize, caseFields(),
+            conditionalHeader(validator, ETAG_VALIDATOR), conditionalHeader(validator, LAST_MODIFIED_VALIDATOR)),
+            this::readPage));
+    if (listed == null || listed.validator.equals(validator)) {
+      return CasePage.unchanged(validator);
+    }
+    return CasePage.changed(filterNewCases(listed.getCases(), lastSyncedTag), listed.validator);
+  }
+
+  /**
+   * Reads a page of the case listing without decoding it, or returns null if the page was not modified.
+   */
+  private ListedPage readPage(Call<ResponseBody> call, retrofit2.Response<ResponseBody> response) throws IOException {
+    if (response.code() == HttpStatus.SC_NOT_MODIFIED) {
+      return null;
+    }
+    try (ResponseBody body = handleResponse(call, response)) {
+      final byte[] bytes = body.bytes();
+      return new ListedPage(bytes, pageValidator(response.headers(), bytes));
+    }
+  }
+
+  private ListedPage cachePage(String key, ListedPage page) {
+    if (page != null) {
+      listedPages.put(key, page);
+    }
+    return page;
+  }
+
+  private static String pageValidator(Headers headers, byte[] body) {
+    if (headers.get("ETag") != null) {
+      return ETAG_VALIDATOR + headers.get("ETag");
+    }
+    if (headers.get("Last-Modified") != null) {
+      return LAST_MODIFIED_VALIDATOR + headers.get("Last-Modified");
+    }
+    return DIGEST_VALIDATOR + Hashing.sha256().hashBytes(body);
+  }
+
+  private static String conditionalHeader(String validator, String kind) {
+    return validator != null && validator.startsWith(kind) ? validator.substring(kind.length()) : null;
+  }
+
+  /**
+   * Returns the case at a position of the case listing, which is ordered by case ID. Positions start at 1.
+   */
+  public Optional<AllisaCase> getAllisaCaseAt(String caseType, long position) {
+    final ApiResponse<AllisaCase> response = inFlightReads.execute(listKey(caseType, position, 1),
+        () -> executeCall(allisaApi.getCases(caseType, position, 1, caseFields())));
+    return Optional.ofNullable(response.getResult())
+        .map(Result::getData)
+        .flatMap(data -> data.stream().findFirst());
+  }
+
+  public boolean canConnect() {
+    // check if we get an OK (200) response from allisa for every case type
+    try {
+      for (String caseType : getAllisaCaseTypes()) {
+        if (inFlightReads.execute(listKey(caseType, 1, 1),
+            () -> executeCall(lookupApi().getCases(caseType, 1, 1, caseFields()))).getCode() != HttpStatus.SC_OK) {
+          return false;
+        }
+      }
+      return true;
+    } catch (Exception e) {
+      log.error("Error while trying to connect to allisa: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Case searches may use a third of the time left for a time post, the rest is reserved for posting.
+   */
+  private static Deadline searchDeadline(Deadline postTimeDeadline) {
+    return postTimeDeadline.share(1.0 / MIN_POST_SHARE_DIVISOR);
+  }
+
+  private static String searchKey(String caseType, String tagName) {
+    return "search/" + caseType + "/" + tagName;
+  }
+
+  private static String listKey(String caseType, long page, long batchSize) {
+    return "list/" + caseType + "/" + page + "/" + batchSize;
+  }
+
+  private static String pageKey(String caseType, long page, long batchSize) {
+    return "page/" + caseType + "/" + page + "/" + batchSize;
+  }
+
+  private MultipartBody toPostTimeBody(TimePostData timePostData) {
+    return new MultipartBody.Builder().setType(MultipartBody.FORM)
         .addFormDataPart(postTimeFieldMapping.get("pid"), Long.toString(timePostData.getTagId()))
         .addFormDataPart(postTimeFieldMapping.get("userId"), timePostData.getUserId())
         .addFormDataPart(postTimeFieldMapping.get("narrative"), timePostData.getNarrative())
@@ -82,84 +393,244 @@ public class AllisaApiService {
         .addFormDataPart(postTimeFieldMapping.get("chargeableTimeSecs"), Long.toString(timePostData.getChargeableTimeSecs()))
         .addFormDataPart(postTimeFieldMapping.get("activityCode"), timePostData.getActivityCode())
         .build();
-    executeCall(allisaApi.postTime(getAllisaPostType(), body));
   }
 
-  public Optional<AllisaCase> getAllisaCaseByTagName(String tagName) {
-    return executeCall(allisaApi.getCase(getAllisaPostType(), tagName)).getResult().getData().stream()
+  private Optional<AllisaCase> findCaseByTagName(ApiResponse<AllisaCase> response, String tagName) {
+    return response.getResult().getData().stream()
         .filter(process -> tagName.equalsIgnoreCase(process.getCaseReference()))
         .findFirst();
   }
 
-  public List<AllisaCase> getNewAllisaCases(long lastSyncedTag, long nextPage, long batchSize) {
-    return executeCall(allisaApi.getCases(getAllisaCaseType(), nextPage, batchSize))
-        .getResult().getData().stream()
+  private List<AllisaCase> filterNewCases(ApiResponse<AllisaCase> response, long lastSyncedTag) {
+    return response.getResult().getData().stream()
         .filter(item -> item.getCaseId() > lastSyncedTag)
         .collect(Collectors.toList());
   }
 
-  public boolean canConnect() {
-    // check if we get an OK (200) response from allisa
-    try {
-      return executeCall(allisaApi.getCases(getAllisaCaseType(), 1, 1)).getCode() == HttpStatus.SC_OK;
-    } catch (Exception e) {
-      log.error("Error while trying to connect to allisa: {}", e.getMessage());
-      return false;
-    }
-  }
-
-  private String getAllisaCaseType() {
-    return RuntimeConfig
+  private List<String> getAllisaCaseTypes() {
+    return config
         .getString(ALLISA_CASE_TYPE)
+        .map(caseTypes -> Splitter.on(',').trimResults().omitEmptyStrings().splitToList(caseTypes))
+        .filter(caseTypes -> !caseTypes.isEmpty())
         .orElseThrow(() -> new IllegalArgumentException("ALLISA_CASE_TYPE needs to be set"));
   }
 
+  /**
+   * Asks Allisa to only list the columns the connector reads, if the Allisa API supports selecting columns.
+   */
+  private Map<String, String> caseFields() {
+    return config
+        .getString(ALLISA_CASE_FIELDS_PARAMETER)
+        .map(parameter -> ImmutableMap.of(parameter, AllisaCase.API_FIELDS))
+        .orElse(ImmutableMap.of());
+  }
+
+  private AllisaApi postApi() {
+    return postApi != null ? postApi : allisaApi;
+  }
+
+  private AllisaApi lookupApi() {
+    return lookupApi != null ? lookupApi : allisaApi;
+  }
+
   private String getAllisaPostType() {
-    return RuntimeConfig
+    return config
         .getString(ALLISA_POST_TYPE)
         .orElseThrow(() -> new IllegalArgumentException("ALLISA_POST_TYPE needs to be set"));
   }
 
+  private Duration getPostTimeBudget() {
+    return Duration.ofSeconds(config
+        .getInt(ALLISA_POST_TIME_BUDGET_SECONDS)
+        .orElse(60));
+  }
+
   private String getAllisaPostFieldMapping() {
-    return RuntimeConfig
+    return config
         .getString(ALLISA_POST_FIELD_MAPPING)
         .orElse(DEFAULT_MAPPING);
   }
 
-  <T> T executeCall(Call<T> call) {
+  /**
+   * Executes the call, cancelling it if it has not completed by the deadline.
+   */
+  <T> T executeCall(Call<T> call, Deadline deadline) {
+    final ScheduledFuture<?> timeout = timer.schedule(() -> call.cancel(),
+        deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
     try {
-      retrofit2.Response<T> response = call.execute();
-      if (response.body() != null) {
-        return response.body();
-      }
-      if (!response.isSuccessful()) {
-        // prevent potential null pointer exception
-        String errorBody = response.errorBody() != null ? response.errorBody().string() : "";
-        ApiResponse<Void> allisaError = entityParser.fromJson(errorBody, ApiResponse.class);
-        String errorMessage = String.format("Request %s failed with code %s and message %s", call.request().toString(),
-            response.code(), errorBody);
-        log.error(errorMessage);
-        // error response -> throw exception to prevent heartbeat
-        throw new ConnectorException("Unable to connect to Allisa. Error reported by Allisa: "
-            + allisaError.getMessage());
+      return executeCall(call);
+    } catch (RuntimeException e) {
+      if (deadline.isExpired() && !(e instanceof ConnectorException)) {
+        throw new RuntimeException("Allisa request did not complete within its deadline", e);
       }
-      throw new ConnectorException("There was an unexpected error when trying to connect to Allisa.");
+      throw e;
+    } finally {
+      timeout.cancel(false);
+    }
+  }
+
+  <T> T executeCall(Call<T> call) {
+    return executeCall(call, this::handleResponse);
+  }
+
+  private <T, R> R executeCall(Call<T> call, ResponseHandler<T, R> handler) {
+    try {
+      return handler.handle(call, call.execute());
     } catch (IOException e) {
       // make sure posting fails when call to clio fails
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Enqueues the call on the OkHttp dispatcher instead of blocking the calling thread. Responses are mapped exactly
+   * like {@link #executeCall(Call)} does. Cancelling the returned future cancels the HTTP request.
+   */
+  <T> CompletableFuture<T> executeCallAsync(Call<T> call) {
+    return executeCallAsync(call, this::handleResponse);
+  }
+
+  private <T, R> CompletableFuture<R> executeCallAsync(Call<T> call, ResponseHandler<T, R> handler) {
+    final CompletableFuture<R> future = new CompletableFuture<>();
+    call.enqueue(new Callback<T>() {
+      @Override
+      public void onResponse(Call<T> call, retrofit2.Response<T> response) {
+        try {
+          future.complete(handler.handle(call, response));
+        } catch (IOException e) {
+          future.completeExceptionally(new RuntimeException(e));
+        } catch (RuntimeException e) {
+          future.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Call<T> call, Throwable t) {
+        future.completeExceptionally(t instanceof IOException ? new RuntimeException(t) : t);
+      }
+    });
+    future.whenComplete((result, error) -> {
+      // the future was cancelled, timed out or lost a hedging race: no need to wait for the response
+      if (error != null) {
+        call.cancel();
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Fails the future if it has not completed by the deadline. Futures of {@link #executeCallAsync(Call)} cancel their
+   * HTTP request when that happens.
+   */
+  private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, Deadline deadline) {
+    final ScheduledFuture<?> timeout = timer.schedule(
+        () -> future.completeExceptionally(new RuntimeException("Allisa request did not complete within its deadline",
+            new TimeoutException(deadline.toString()))),
+        deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+    future.whenComplete((result, error) -> timeout.cancel(false));
+    return future;
+  }
+
+  /**
+   * Returns the original exception of a failed future stage, so that callers can apply the same error handling as
+   * for the blocking calls.
+   */
+  static Throwable unwrap(Throwable throwable) {
+    Throwable cause = throwable;
+    while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+
+  private <T> T handleResponse(Call<T> call, retrofit2.Response<T> response) throws IOException {
+    if (response.body() != null) {
+      return response.body();
+    }
+    if (!response.isSuccessful()) {
+      // prevent potential null pointer exception
+      String errorBody = response.errorBody() != null ? response.errorBody().string() : "";
+      ApiResponse<Void> allisaError = JsonCodec.MAPPER.readValue(errorBody, ApiResponse.class);
+      String errorMessage = String.format("Request %s failed with code %s and message %s", call.request().toString(),
+          response.code(), errorBody);
+      log.error(errorMessage);
+      // error response -> throw exception to prevent heartbeat
+      throw new ConnectorException("Unable to connect to Allisa. Error reported by Allisa: "
+          + allisaError.getMessage());
+    }
+    throw new ConnectorException("There was an unexpected error when trying to connect to Allisa.");
+  }
+
+  @FunctionalInterface
+  private interface ResponseHandler<T, R> {
+
+    R handle(Call<T> call, retrofit2.Response<T> response) throws IOException;
+  }
+
+  /**
+   * A page of the case listing as read from Allisa. The cases are only decoded when they are needed, which unchanged
+   * pages of the tag refresh never are.
+   */
+  private class ListedPage {
+
+    private final byte[] body;
+    private final String validator;
+    // guarded by this
+    private ApiResponse<AllisaCase> cases;
+
+    ListedPage(byte[] body, String validator) {
+      this.body = body;
+      this.validator = validator;
+    }
+
+    synchronized ApiResponse<AllisaCase> getCases() {
+      if (cases == null) {
+        try {
+          cases = JsonCodec.CASES_READER.readValue(body);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        Optional.ofNullable(cases.getResult())
+            .map(Result::getData)
+            .filter(data -> !data.isEmpty())
+            .ifPresent(data -> metrics.setGauge(ConnectorMetrics.CASE_BYTES, body.length / data.size()));
+      }
+      return cases;
+    }
+
+    boolean isFull(long batchSize) {
+      return Optional.ofNullable(getCases().getResult())
+          .map(Result::getData)
+          .map(data -> data.size() >= batchSize)
+          .orElse(false);
+    }
+  }
+
   interface AllisaApi {
 
     @POST("api/{postType}")
     Call<ApiResponse<Void>> postTime(@Path("postType") String postType, @Body MultipartBody body);
 
+    /**
+     * @param fields selects the columns of the listed cases, empty to list all columns
+     */
     @GET("api/list/type/{caseType}/rowsPerPage/{rowsPerPage}/page/{page}/orderrow/caseId")
     Call<ApiResponse<AllisaCase>> getCases(@Path("caseType") String caseType,
-                                           @Path("page") long page, @Path("rowsPerPage") long batchSize);
+                                           @Path("page") long page, @Path("rowsPerPage") long batchSize,
+                                           @QueryMap Map<String, String> fields);
+
+    /**
+     * Lists cases like {@link #getCases}, without decoding them. Retrofit leaves out the conditional headers if null.
+     */
+    @GET("api/list/type/{caseType}/rowsPerPage/{rowsPerPage}/page/{page}/orderrow/caseId")
+    Call<ResponseBody> getCasePage(@Path("caseType") String caseType,
+                                   @Path("page") long page, @Path("rowsPerPage") long batchSize,
+                                   @QueryMap Map<String, String> fields,
+                                   @Header("If-None-Match") String etag,
+                                   @Header("If-Modified-Since") String lastModified);
 
     @GET("api/list/type/{caseType}/search/{tagName}")
-    Call<ApiResponse<AllisaCase>> getCase(@Path("caseType") String caseType, @Path("tagName") String tagName);
+    Call<ApiResponse<AllisaCase>> getCase(@Path("caseType") String caseType, @Path("tagName") String tagName,
+                                          @QueryMap Map<String, String> fields);
   }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.util.ConnectorException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the cases of an Allisa export file, without loading the whole file into memory.
+ *
+ * Supported formats are JSON, either an array of cases or a case listing response of the Allisa API, and CSV with a
+ * header row. Fields are recognised by the same names as in API responses, e.g. `ID`, `az` and `prname`. Records
+ * without a valid case ID or case reference are skipped, so that they can't hold up the rest of the export.
+ */
+class AllisaCaseExportReader {
+
+  private static final Logger log = LoggerFactory.getLogger(AllisaCaseExportReader.class);
+
+  private static final Map<String, String> CSV_COLUMNS = ImmutableMap.<String, String>builder()
+      .put("caseid", "caseId")
+      .put("id", "caseId")
+      .put("casereference", "caseReference")
+      .put("az", "caseReference")
+      .put("casedescription", "caseDescription")
+      .put("prname", "caseDescription")
+      .build();
+
+  private final int batchSize;
+
+  AllisaCaseExportReader(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Reads the export file and passes its cases on in batches, in the order of the file.
+   */
+  void forEachBatch(Path exportFile, Consumer<List<AllisaCase>> batchConsumer) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(exportFile, StandardCharsets.UTF_8)) {
+      final Batcher batcher = new Batcher(batchConsumer);
+      if (exportFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+        readCsv(reader, batcher);
+      } else {
+        readJson(reader, batcher);
+      }
+      batcher.flush();
+    }
+  }
+
+  private void readJson(Reader reader, Batcher batcher) throws IOException {
+    try (JsonParser jsonParser = JsonCodec.MAPPER.createParser(reader)) {
+      jsonParser.nextToken();
+      if (!findCaseArray(jsonParser)) {
+        throw new ConnectorException("Allisa export contains no list of cases");
+      }
+      while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+        final JsonNode record = JsonCodec.MAPPER.readTree(jsonParser);
+        try {
+          batcher.add(JsonCodec.CASE_READER.readValue(record));
+        } catch (JsonProcessingException e) {
+          batcher.skip("unreadable case: " + e.getOriginalMessage());
+        }
+      }
+      if (!jsonParser.hasToken(JsonToken.END_ARRAY)) {
+        throw new ConnectorException("Expected a case object in Allisa export, but got " + jsonParser.currentToken());
+      }
+    }
+  }
+
+  /**
+   * Moves the parser to the start of the case array: the top level array, or the `data` array of an API response.
+   */
+  private static boolean findCaseArray(JsonParser jsonParser) throws IOException {
+    if (jsonParser.hasToken(JsonToken.START_ARRAY)) {
+      return true;
+    }
+    if (!jsonParser.hasToken(JsonToken.START_OBJECT)) {
+      return false;
+    }
+    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = jsonParser.getCurrentName();
+      final JsonToken value = jsonParser.nextToken();
+      if ("data".equals(name) && value == JsonToken.START_ARRAY) {
+        return true;
+      }
+      if ("result".equals(name) && value == JsonToken.START_OBJECT) {
+        if (findCaseArray(jsonParser)) {
+          return true;
+        }
+        // the result object has been read completely
+        continue;
+      }
+      jsonParser.skipChildren();
+    }
+    return false;
+  }
+
+  private void readCsv(BufferedReader reader, Batcher batcher) throws IOException {
+    final String header = reader.readLine();
+    if (header == null) {
+      return;
+    }
+    final List<String> columns = parseCsvLine(StringUtils.removeStart(header, "\uFEFF"));
+    final String[] fields = new String[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      fields[i] = CSV_COLUMNS.get(columns.get(i).trim().toLowerCase(Locale.ROOT));
+    }
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      // quoted values may contain line breaks
+      while (StringUtils.countMatches(line, '"') % 2 != 0) {
+        final String next = reader.readLine();
+        if (next == null) {
+          throw new ConnectorException("Unterminated quoted value in Allisa export");
+        }
+        line = line + "\n" + next;
+      }
+      try {
+        batcher.add(toAllisaCase(fields, parseCsvLine(line)));
+      } catch (NumberFormatException e) {
+        batcher.skip("invalid case ID: " + e.getMessage());
+      }
+    }
+  }
+
+  private static AllisaCase toAllisaCase(String[] fields, List<String> values) {
+    final AllisaCase allisaCase = new AllisaCase();
+    for (int i = 0; i < fields.length && i < values.size(); i++) {
+      if (fields[i] == null) {
+        continue;
+      }
+      switch (fields[i]) {
+        case "caseId":
+          allisaCase.setCaseId(Long.parseLong(values.get(i).trim()));
+          break;
+        case "caseReference":
+          allisaCase.setCaseReference(values.get(i));
+          break;
+        default:
+          allisaCase.setCaseDescription(values.get(i));
+      }
+    }
+    return allisaCase;
+  }
+
+  private static List<String> parseCsvLine(String line) {
+    final List<String> values = new ArrayList<>();
+    final StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          value.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(value.toString());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
+    }
+    values.add(value.toString());
+    return values;
+  }
+
+  private class Batcher {
+    private final Consumer<List<AllisaCase>> batchConsumer;
+    private List<AllisaCase> batch = new ArrayList<>(batchSize);
+    private long records;
+
+    Batcher(Consumer<List<AllisaCase>> batchConsumer) {
+      this.batchConsumer = batchConsumer;
+    }
+
+    void add(AllisaCase allisaCase) {
+      records++;
+      if (allisaCase.getCaseId() <= 0) {
+        logSkipped("case ID is missing");
+        return;
+      }
+      if (StringUtils.isBlank(allisaCase.getCaseReference())) {
+        logSkipped("case reference is missing for case " + allisaCase.getCaseId());
+        return;
+      }
+      batch.add(allisaCase);
+      if (batch.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    void skip(String reason) {
+      records++;
+      logSkipped(reason);
+    }
+
+    private void logSkipped(String reason) {
+      log.warn("Skipping record {} of Allisa export, {}", records, reason);
+    }
+
+    void flush() {
+      if (!batch.isEmpty()) {
+        batchConsumer.accept(batch);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+  }
+}
@@ -7,29 +7,44 @@ package io.wisetime.connector.allisa;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BASE_URL;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_BATCH_SIZE;
-import static io.wisetime.connector.utils.ActivityTimeCalculator.startTime;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.WiseTimeConnector;
 import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.CasePage;
 import io.wisetime.connector.allisa.model.TimePostData;
+import io.wisetime.connector.allisa.util.AdaptiveLimit;
 import io.wisetime.connector.allisa.util.ConnectorException;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.Deadline;
+import io.wisetime.connector.allisa.util.InFlightGate;
+import io.wisetime.connector.allisa.util.NamespacedConnectorStore;
+import io.wisetime.connector.allisa.util.TimeGroupAnalysis;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.api_client.PostResult;
-import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.connector.template.TemplateFormatter;
 import io.wisetime.connector.template.TemplateFormatterConfig;
-import io.wisetime.connector.utils.DurationCalculator;
-import io.wisetime.connector.utils.DurationSource;
 import io.wisetime.generated.connect.Tag;
 import io.wisetime.generated.connect.TimeGroup;
 import io.wisetime.generated.connect.TimeRow;
 import io.wisetime.generated.connect.UpsertTagRequest;
+import io.wisetime.generated.connect.User;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
@@ -37,14 +52,41 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import javax.inject.Inject;
+import javax.inject.Named;
+import lombok.Value;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
@@ -58,37 +100,329 @@ public class AllisaConnector implements WiseTimeConnector {
 
   private static final Logger log = LoggerFactory.getLogger(AllisaConnector.class);
   private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  static final String SHARED_UPSERT_WORKERS = "allisaSharedUpsertWorkers";
 
   private static final String ALLISA_LAST_SYNC_KEY = "allisa_last_sync_id";
   private static final String ALLISA_LAST_REFRESHED_KEY = "allisa_last_refreshed_id";
   private static final String ALLISA_LAST_SYNC_PAGE = "allisa_last_sync_page";
   private static final String ALLISA_LAST_REFRESHED_PAGE = "allisa_last_refreshed_page";
+  private static final String ALLISA_BOOTSTRAP_ATTEMPTED_KEY = "allisa_bootstrap_attempted";
+  private static final String ALLISA_BOOTSTRAP_BATCHES_KEY = "allisa_bootstrap_batches";
+  // followed by the page number
+  private static final String ALLISA_REFRESHED_PAGE_VALIDATOR = "allisa_refreshed_page_validator_";
+
+  private static final int TAG_UPSERT_ATTEMPTS = 3;
+  private static final Duration CONNECTIVITY_RETRY_DELAY = Duration.ofSeconds(10);
+  private static final Duration TAG_UPSERT_RETRY_DELAY = Duration.ofMillis(250);
+  private static final Duration REJECTION_WARNING_INTERVAL = Duration.ofMinutes(1);
+  private static final int MAX_REQUEUED_UPSERTS = 10_000;
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
 
   private ApiClient apiClient;
   private ConnectorStore connectorStore;
-  private TemplateFormatter timeRegistrationTemplate;
+  private Supplier<TemplateFormatter> timeRegistrationTemplate;
+
+  // only used to sync pages in parallel, see ALLISA_SYNC_WORKERS
+  private ExecutorService syncExecutor;
+  private ExecutorService upsertExecutor;
+  // tag upserts sent recently, keyed by their content, which includes the case ID in the tag URL
+  private Cache<UpsertTagRequest, Boolean> recentUpserts;
+  // run the syncs of several case types concurrently
+  private ExecutorService caseTypeExecutor;
+  // decide whether the new case sync of a case type needs to run, empty if disabled
+  private Map<String, NewCaseProbe> newCaseProbes;
+  // corrects the sync page cursor after cases were deleted, null if disabled
+  private PageCursorRecovery pageCursorRecovery;
+  // receives case notifications from Allisa, null if disabled
+  private CaseWebhookServer caseWebhookServer;
+  // tag upserts of notified cases, which the new case sync doesn't need to send again
+  private Cache<UpsertTagRequest, Boolean> notifiedUpserts;
+  private Instant lastNewCaseSync;
+  // decides which replica runs the tag sync, null if there is only one replica
+  private LeaderElection leaderElection;
+  // false while fast start is still waiting for Allisa to be reachable
+  private volatile boolean allisaReachable;
+  // the connectivity check and warm-up of fast start
+  private ScheduledExecutorService startupTasks;
+  // logs the metrics summary, null if disabled
+  private ScheduledExecutorService metricsSummary;
+  // tag upserts that failed transiently while others got through, retried on the next tag sync run
+  private final Queue<UpsertTagRequest> requeuedUpserts = new ConcurrentLinkedQueue<>();
+  // the posts and tag syncs in flight, closed by the shutdown
+  private volatile InFlightGate inFlight = new InFlightGate();
+  // limits the posts in flight to what Allisa can take, null if disabled
+  private volatile AdaptiveLimit postLimit;
+  private final AtomicLong rejectedPosts = new AtomicLong();
+  // rejected posts come in bursts, they are logged once per interval
+  private final AtomicLong nextRejectionWarning = new AtomicLong(System.nanoTime());
 
   @Inject
   private AllisaApiService allisaApiService;
 
+  @Inject
+  private ConnectorMetrics metrics;
+
+  @Inject
+  private TenantConfig config;
+
+  // in multi-tenant mode, the tag upserts of all tenants share these workers, see ConnectorLauncher
+  @com.google.inject.Inject(optional = true)
+  @Named(SHARED_UPSERT_WORKERS)
+  private Executor sharedUpsertExecutor;
+
   @Override
   public void init(final ConnectorModule connectorModule) {
-    Preconditions.checkState(allisaApiService.canConnect(),
-        "Connector couldn't connect to Allisa instance");
+    inFlight = new InFlightGate();
+    postLimit = createPostLimit();
+    final boolean fastStart = config.getBoolean(AllisaConnectorConfigKey.ALLISA_FAST_START).orElse(false);
+    if (!fastStart) {
+      Preconditions.checkState(allisaApiService.canConnect(),
+          "Connector couldn't connect to Allisa instance");
+    }
 
-    // default to no summary
-    if (RuntimeConfig.getBoolean(AllisaConnectorConfigKey.ADD_SUMMARY_TO_NARRATIVE).orElse(false)) {
-      timeRegistrationTemplate = createTemplateFormatter(
-          "classpath:narrative-template/allisa-template_include-summary.ftl");
+    // with fast start, the template is built by the warm-up, or by the first post if that comes first
+    timeRegistrationTemplate = Suppliers.memoize(() -> createTemplateFormatter(templatePath()));
+
+    apiClient = connectorModule.getApiClient();
+    // tenants share the store of the connector process
+    connectorStore = config.getTenantId()
+        .<ConnectorStore>map(tenantId -> new NamespacedConnectorStore(connectorModule.getConnectorStore(), tenantId))
+        .orElse(connectorModule.getConnectorStore());
+
+    stopLeaderElection();
+    leaderElection = config.getString(AllisaConnectorConfigKey.ALLISA_LEADER_LEASE_FILE)
+        .map(leaseFile -> new LeaderElection(new FileLeaderLease(Paths.get(leaseFile)), replicaId(), leaderLeaseTtl()))
+        .orElse(null);
+    if (leaderElection != null) {
+      // replicas continue from the sync cursors of the previous leader, page validators are cached per replica
+      connectorStore = new LeaseConnectorStore(leaderElection, connectorStore,
+          key -> key.startsWith(ALLISA_REFRESHED_PAGE_VALIDATOR));
+      leaderElection.start();
+    }
+
+    newCaseProbes = new HashMap<>();
+    if (config.getBoolean(AllisaConnectorConfigKey.ALLISA_SYNC_PROBE).orElse(true)) {
+      final int maxIdleSkips = config.getInt(AllisaConnectorConfigKey.ALLISA_SYNC_MAX_IDLE_SKIPS).orElse(4);
+      caseTypes().forEach(caseType -> newCaseProbes.put(caseType,
+          new NewCaseProbe(allisaApiService, connectorStore, caseType, keySuffix(caseType), maxIdleSkips)));
+    }
+    pageCursorRecovery = config.getBoolean(AllisaConnectorConfigKey.ALLISA_SYNC_CURSOR_CHECK).orElse(true)
+        ? new PageCursorRecovery(allisaApiService)
+        : null;
+
+    recentUpserts = CacheBuilder.newBuilder()
+        .maximumSize(100_000)
+        .expireAfterWrite(Duration.ofSeconds(config
+            .getInt(AllisaConnectorConfigKey.TAG_UPSERT_DEDUP_WINDOW_SECONDS)
+            .orElse(300)))
+        .build();
+
+    // kept until the new case sync has been through the notified cases
+    notifiedUpserts = CacheBuilder.newBuilder()
+        .maximumSize(100_000)
+        .expireAfterWrite(webhookSyncInterval().multipliedBy(2))
+        .build();
+    lastNewCaseSync = null;
+    stopCaseWebhookServer();
+    caseWebhookServer = config.getInt(AllisaConnectorConfigKey.ALLISA_WEBHOOK_PORT)
+        .map(this::startCaseWebhookServer)
+        .orElse(null);
+
+    stopStartupTasks();
+    if (fastStart) {
+      allisaReachable = false;
+      startupTasks = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-startup-%d").build());
+      startupTasks.execute(this::warmUp);
+      final ScheduledExecutorService tasks = startupTasks;
+      startupTasks.execute(() -> checkConnectivity(tasks));
     } else {
-      // in case of no summary, just use the charge template, as it is the same as time registration without summary
-      timeRegistrationTemplate = createTemplateFormatter(
-          "classpath:narrative-template/allisa-template.ftl");
+      allisaReachable = true;
+      timeRegistrationTemplate.get();
     }
 
-    apiClient = connectorModule.getApiClient();
-    connectorStore = connectorModule.getConnectorStore();
+    stopMetricsSummary();
+    final int summaryMinutes = config.getInt(AllisaConnectorConfigKey.ALLISA_METRICS_SUMMARY_MINUTES).orElse(5);
+    if (summaryMinutes > 0) {
+      metricsSummary = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-metrics-%d").build());
+      metricsSummary.scheduleAtFixedRate(this::logMetricsSummary, summaryMinutes, summaryMinutes, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * Checks until Allisa can be reached, as fast start doesn't wait for it.
+   */
+  private void checkConnectivity(ScheduledExecutorService tasks) {
+    if (allisaApiService.canConnect()) {
+      allisaReachable = true;
+      log.info("Connected to Allisa instance");
+      tasks.shutdown();
+      return;
+    }
+    log.warn("Connector couldn't connect to Allisa instance, retrying in {} seconds",
+        CONNECTIVITY_RETRY_DELAY.getSeconds());
+    if (!tasks.isShutdown()) {
+      tasks.schedule(() -> checkConnectivity(tasks), CONNECTIVITY_RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Formats a synthetic time group the way posted time is formatted, so that the first real post doesn't pay for
+   * building the template, loading the time zone rules and compiling the formatting code.
+   *
+   * @return whether the synthetic time group could be formatted
+   */
+  @VisibleForTesting
+  boolean warmUp() {
+    try {
+      final TimeGroup timeGroup = convertToZone(syntheticTimeGroup(), getTimeZoneId());
+      timeRegistrationTemplate.get().format(timeGroup);
+      TimeGroupAnalysis.of(timeGroup).getStartTime().ifPresent(DATE_TIME_FORMATTER::format);
+      log.info("Warmed up time posting");
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Failed to warm up time posting", e);
+      return false;
+    }
+  }
+
+  /**
+   * Checks the connector against Allisa without starting it: connects, lists the first case of every case type and
+   * formats a synthetic time group. Used to smoke test a build, e.g. the native image.
+   *
+   * @return whether all checks passed
+   */
+  boolean check() {
+    if (!allisaApiService.canConnect()) {
+      log.error("Connector couldn't connect to Allisa instance");
+      return false;
+    }
+    for (String caseType : caseTypes()) {
+      try {
+        log.info("Listed {} case(s) of type {}",
+            allisaApiService.getNewAllisaCases(caseType, 0, 1, 1).size(), caseType);
+      } catch (RuntimeException e) {
+        log.error("Failed to list cases of type {}", caseType, e);
+        return false;
+      }
+    }
+    if (timeRegistrationTemplate == null) {
+      timeRegistrationTemplate = Suppliers.memoize(() -> createTemplateFormatter(templatePath()));
+    }
+    return warmUp();
+  }
+
+  private String templatePath() {
+    // default to no summary
+    return config.getBoolean(AllisaConnectorConfigKey.ADD_SUMMARY_TO_NARRATIVE).orElse(false)
+        ? "classpath:narrative-template/allisa-template_include-summary.ftl"
+        // in case of no summary, just use the charge template, as it is the same as time registration without summary
+        : "classpath:narrative-template/allisa-template.ftl";
+  }
+
+  private TimeGroup syntheticTimeGroup() {
+    final TimeRow timeRow = new TimeRow()
+        .activity("Warm-up")
+        .description("Warm-up")
+        .activityHour(2021010109)
+        .firstObservedInHour(15)
+        .durationSecs(600)
+        .submittedDate(20210101091500000L)
+        .activityTypeCode("warm-up")
+        .source(TimeRow.SourceEnum.WT_DESKTOP);
+    return new TimeGroup()
+        .groupId("warm-up")
+        .description("Warm-up")
+        .totalDurationSecs(600)
+        .groupName("Warm-up")
+        .tags(Collections.singletonList(new Tag().name("WARM-UP").path(tagUpsertPath()).description("Warm-up")))
+        .user(new User().name("Warm-up").externalId("0").experienceWeightingPercent(100))
+        .timeRows(Collections.singletonList(timeRow))
+        .narrativeType(TimeGroup.NarrativeTypeEnum.AND_TIME_ROW_ACTIVITY_DESCRIPTIONS)
+        .durationSplitStrategy(TimeGroup.DurationSplitStrategyEnum.DIVIDE_BETWEEN_TAGS);
+  }
+
+  private synchronized void stopStartupTasks() {
+    if (startupTasks != null) {
+      startupTasks.shutdownNow();
+      startupTasks = null;
+    }
+  }
+
+  @VisibleForTesting
+  void logMetricsSummary() {
+    metrics.summary().ifPresent(summary -> log.info("Metrics{}: {}",
+        config.getTenantId().map(tenantId -> " of tenant " + tenantId).orElse(""), summary));
+  }
+
+  private synchronized void stopMetricsSummary() {
+    if (metricsSummary != null) {
+      metricsSummary.shutdownNow();
+      metricsSummary = null;
+    }
+  }
+
+  /**
+   * Stops the connector in order. New posts are rejected with a transient failure, so that the WiseTime Connector
+   * library retries them later, and the tag sync stops at the end of its current page. The posts and pages in flight
+   * then get until the shutdown timeout to finish, which also writes the sync cursors of their pages. Finally, hands
+   * the tag sync over to another replica and stops the worker threads.
+   */
+  public void shutdown() {
+    stopStartupTasks();
+    stopCaseWebhookServer();
+    drainInFlight();
+    stopLeaderElection();
+    stopExecutors();
+    stopMetricsSummary();
+  }
+
+  private void drainInFlight() {
+    final InFlightGate gate = inFlight;
+    if (gate.isClosed()) {
+      return;
+    }
+    log.info("Shutting down, waiting for {} posts and tag syncs to finish", gate.getInFlight());
+    try {
+      if (!gate.closeAndAwait(Deadline.after(shutdownTimeout()))) {
+        log.warn("{} posts and tag syncs didn't finish before the shutdown timeout", gate.getInFlight());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for posts and tag syncs to finish");
+    }
+  }
+
+  private synchronized void stopExecutors() {
+    for (ExecutorService executor : Arrays.asList(syncExecutor, caseTypeExecutor, upsertExecutor)) {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+    syncExecutor = null;
+    caseTypeExecutor = null;
+    upsertExecutor = null;
+  }
+
+  /**
+   * Runs the tag sync task, unless the connector is shutting down.
+   */
+  private void runTagSync(Runnable task) {
+    final InFlightGate gate = inFlight;
+    if (!gate.tryEnter()) {
+      log.debug("Shutting down, skipping the tag sync");
+      return;
+    }
+    try {
+      task.run();
+    } catch (LeaseLostException e) {
+      // the cursors saved so far are kept, the new leader continues from them
+      log.info("Stopping the tag sync: {}", e.getMessage());
+    } finally {
+      gate.leave();
+    }
   }
 
   /**
@@ -96,18 +430,40 @@ public class AllisaConnector implements WiseTimeConnector {
    */
   @Override
   public boolean isConnectorHealthy() {
-    return allisaApiService.canConnect();
+    // with fast start, the connector is unhealthy until Allisa could be reached
+    return allisaReachable && allisaApiService.canConnect();
   }
 
   /**
    * Called by the WiseTime Connector library on a regular schedule.
    *
-   * Finds all Allisa cases that haven't been synced and creates matching tags for them in WiseTime.
-   * Blocks until all cases have been synced.
+   * Finds Allisa cases that haven't been synced and creates matching tags for them in WiseTime. Blocks until all
+   * cases have been synced, or until the sync budget is used up. The sync then continues on the next call.
    */
   @Override
   public void performTagUpdate() {
-    syncNewCases();
+    if (!allisaReachable) {
+      log.debug("Waiting for Allisa to be reachable before syncing tags");
+      return;
+    }
+    if (!isTagSyncLeader()) {
+      log.debug("Another replica is running the tag sync");
+      return;
+    }
+    runTagSync(() -> {
+      retryRequeuedUpserts();
+      if (!bootstrapFromExport()) {
+        return;
+      }
+      if (caseWebhookServer != null && lastNewCaseSync != null
+          && Instant.now().isBefore(lastNewCaseSync.plus(webhookSyncInterval()))) {
+        // Allisa notifies us of new cases, the sync only catches notifications that got lost
+        return;
+      }
+      if (forEachCaseType(this::syncCaseType)) {
+        lastNewCaseSync = Instant.now();
+      }
+    });
   }
 
   /**
@@ -116,7 +472,13 @@ public class AllisaConnector implements WiseTimeConnector {
    */
   @Override
   public void performTagUpdateSlowLoop() {
-    refreshCases();
+    if (!allisaReachable || !isTagSyncLeader()) {
+      return;
+    }
+    runTagSync(() -> forEachCaseType(caseType -> {
+      refreshCases(caseType);
+      return true;
+    }));
   }
 
   @Override
@@ -130,11 +492,36 @@ public class AllisaConnector implements WiseTimeConnector {
    */
   @Override
   public PostResult postTime(final Request request, final TimeGroup userPostedTime) {
+    final InFlightGate gate = inFlight;
+    if (!gate.tryEnter()) {
+      log.info("Shutting down, rejecting posted time {}", userPostedTime.getGroupId());
+      return PostResult.TRANSIENT_FAILURE().withMessage("The connector is shutting down");
+    }
+    try {
+      return postTimeToAllisa(userPostedTime);
+    } finally {
+      gate.leave();
+    }
+  }
+
+  private PostResult postTimeToAllisa(final TimeGroup userPostedTime) {
     log.info("Posted time received: {}", userPostedTime.getGroupId());
+    // all Allisa requests of this post share one time budget
+    final Deadline deadline = Deadline.after(postTimeBudget());
+
+    final List<Tag> tagsOfUnsyncedCaseTypes = userPostedTime.getTags().stream()
+        .filter(tag -> !caseTypeOfTag(tag).isPresent() && isInTagUpsertPath(tag))
+        .collect(Collectors.toList());
 
     List<Tag> relevantTags = userPostedTime.getTags().stream()
         .filter(tag -> {
-          if (!createdByConnector(tag)) {
+          if (tagsOfUnsyncedCaseTypes.contains(tag)) {
+            // the tag was created by the connector, for a case type that was since removed from ALLISA_CASE_TYPE
+            log.warn("Tag {} in folder {} doesn't belong to a case type the connector syncs. "
+                + "No time will be posted for this tag.", tag.getName(), tag.getPath());
+            return false;
+          }
+          if (!caseTypeOfTag(tag).isPresent()) {
             log.warn("The Allisa connector is not configured to handle this tag: {}. No time will be posted for this tag.",
                 tag.getName());
             return false;
@@ -142,6 +529,12 @@ public class AllisaConnector implements WiseTimeConnector {
           return true;
         })
         .collect(Collectors.toList());
+    if (relevantTags.isEmpty() && !tagsOfUnsyncedCaseTypes.isEmpty()) {
+      // none of the time would be posted, don't report it as posted
+      return PostResult.PERMANENT_FAILURE().withMessage(String.format(
+          "Tag %s in folder %s doesn't belong to a case type the connector syncs",
+          tagsOfUnsyncedCaseTypes.get(0).getName(), tagsOfUnsyncedCaseTypes.get(0).getPath()));
+    }
     userPostedTime.setTags(relevantTags);
 
     if (userPostedTime.getTags().isEmpty()) {
@@ -161,89 +554,389 @@ public class AllisaConnector implements WiseTimeConnector {
       return PostResult.PERMANENT_FAILURE().withMessage("External User Id must be numeric: " + userIdAllisa);
     }
 
-    final long chargeableSecsPerCase;
-    if (wasTotalDurationEdited(userPostedTime)) {
-      // time was edited -> use the edited time as is (no exp rating)
-      chargeableSecsPerCase = DurationCalculator
-          .of(userPostedTime)
-          .useDurationFrom(DurationSource.TIME_GROUP)
-          .roundToNearestSeconds(1) // do not round
-          .disregardExperienceWeighting()
-          .calculate();
-    } else {
-      // time was not edited -> use the experience rating
-      chargeableSecsPerCase = DurationCalculator
-          .of(userPostedTime)
-          .useDurationFrom(DurationSource.TIME_GROUP)
-          .roundToNearestSeconds(1) // do not round
-          .calculate();
-    }
-
-    final long actualSecsPerCase = DurationCalculator
-        .of(userPostedTime)
-        .useDurationFrom(DurationSource.SUM_TIME_ROWS)
-        .roundToNearestSeconds(1) // do not round
-        .disregardExperienceWeighting()
-        .calculate();
-
-
     final TimeGroup timeGroupToFormat = convertToZone(userPostedTime, getTimeZoneId());
-    final String timeRegComment =  timeRegistrationTemplate.format(timeGroupToFormat);
+    final String timeRegComment =  timeRegistrationTemplate.get().format(timeGroupToFormat);
+
+    // durations and activity codes don't depend on the zone, so the converted rows give all figures
+    final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroupToFormat);
+    // time was edited -> use the edited time as is (no exp rating), otherwise use the experience rating
+    final long chargeableSecsPerCase = analysis.getChargeableSecsPerCase();
+    final long actualSecsPerCase = analysis.getActualSecsPerCase();
 
-    final Optional<LocalDateTime> activityStartTime = startTime(timeGroupToFormat);
+    final Optional<LocalDateTime> activityStartTime = analysis.getStartTime();
     if (!activityStartTime.isPresent()) {
       return PostResult.PERMANENT_FAILURE().withMessage("Cannot post time group with no time rows");
     }
 
     final Consumer<AllisaCase> createTimeAndChargeRecord = allisaCase ->
-        executeCreateTimeAndChargeRecord(new TimePostData()
+        executeCreateTimeAndChargeRecord(deadline, new TimePostData()
             .setTagId(allisaCase.getCaseId())
             .setNarrative(timeRegComment)
             .setUserId(userIdAllisa)
             .setStartDateTime(activityStartTime.get().format(DATE_TIME_FORMATTER))
             .setChargeableTimeSecs(chargeableSecsPerCase)
             .setTotalTimeSecs(actualSecsPerCase)
-            .setActivityCode(getTimeGroupActivityCode(userPostedTime))
+            .setActivityCode(getTimeGroupActivityCode(userPostedTime, analysis))
         );
 
-    final Function<Tag, AllisaCase> findProcess = tag ->
-        allisaApiService.getAllisaCaseByTagName(tag.getName())
-            .orElseThrow(() -> new ConnectorException("Can't find Allisa case for tag " + tag.getName()));
+    return withinPostLimit(userPostedTime.getTags().size(), () -> {
+      try {
+        // resolve all tags up front, lookups for the individual tags are sent concurrently
+        final Map<String, AllisaCase> allisaCases = findAllisaCases(userPostedTime.getTags(), deadline);
+
+        final Function<Tag, AllisaCase> findProcess = tag ->
+            Optional.ofNullable(allisaCases.get(tag.getName()))
+                .orElseThrow(() -> new ConnectorException("Can't find Allisa case for tag " + tag.getName()));
+
+        userPostedTime
+            .getTags()
+            .stream()
+
+            .map(findProcess)
+
+            .forEach(createTimeAndChargeRecord);
+      } catch (ConnectorException e) {
+        log.warn("Can't post time to Allisa: " + e.getMessage());
+        return PostResult.PERMANENT_FAILURE()
+            .withError(e)
+            .withMessage(e.getMessage());
+      } catch (RuntimeException e) {
+        log.warn("Failed to save posted time in Allisa", e);
+        return PostResult.TRANSIENT_FAILURE()
+            .withError(e)
+            .withMessage("There was an error posting time to Allisa");
+      }
+      return PostResult.SUCCESS();
+    });
+  }
+
+  /**
+   * Sends a post to Allisa if the {@link AdaptiveLimit} of posts in flight allows it. Otherwise, rejects the post right
+   * away, so that WiseTime retries it later instead of it waiting for a slow Allisa on a request thread.
+   *
+   * @param tagCount number of tags of the post, which sends a lookup and a time record to Allisa per tag. The latency
+   *     of the post is divided by it, so that posts to many cases don't look like a slow Allisa.
+   */
+  private PostResult withinPostLimit(final int tagCount, final Supplier<PostResult> post) {
+    final AdaptiveLimit limit = postLimit;
+    if (limit == null) {
+      return post.get();
+    }
+    if (!limit.tryAcquire()) {
+      final long rejected = rejectedPosts.incrementAndGet();
+      metrics.setGauge(ConnectorMetrics.POST_REJECTED, rejected);
+      final long now = System.nanoTime();
+      final long nextWarning = nextRejectionWarning.get();
+      if (now - nextWarning >= 0
+          && nextRejectionWarning.compareAndSet(nextWarning, now + REJECTION_WARNING_INTERVAL.toNanos())) {
+        log.warn("Allisa is slow to take posted time, rejecting posts at {} posts in flight ({} rejected so far)",
+            limit.getLimit(), rejected);
+      }
+      return PostResult.TRANSIENT_FAILURE().withMessage("Allisa is too busy to take the posted time");
+    }
+    final long startedAt = System.nanoTime();
+    PostResult result = null;
+    try {
+      result = post.get();
+      return result;
+    } finally {
+      // failed lookups and posts are mostly timeouts, they are no latency sample
+      if (result == null || result.getStatus() == PostResult.PostResultStatus.TRANSIENT_FAILURE) {
+        limit.onDropped();
+      } else {
+        limit.onSample((System.nanoTime() - startedAt) / Math.max(1, tagCount));
+      }
+      metrics.setGauge(ConnectorMetrics.POST_LIMIT, limit.getLimit());
+    }
+  }
+
+  /**
+   * Creates tags for all cases of the configured Allisa export file, unless the new case sync has already started or
+   * the export was already handled. The sync cursors are then set past the exported cases, so that the new case sync
+   * only picks up the cases created after the export.
+   *
+   * Like the new case sync, the bootstrap stops between batches when the sync budget is used up or the connector shuts
+   * down. The next run reads the export again, but only upserts the batches that weren't upserted yet. The same holds
+   * after a transient upsert failure. If WiseTime rejects a batch, the bootstrap is given up and the new case sync goes
+   * through all cases instead.
+   *
+   * @return false if the bootstrap isn't done yet, in which case the new case sync must not run
+   */
+  @VisibleForTesting
+  boolean bootstrapFromExport() {
+    final Optional<String> exportFile = config.getString(AllisaConnectorConfigKey.ALLISA_BOOTSTRAP_FILE);
+    if (!exportFile.isPresent()) {
+      return true;
+    }
+    final String caseType = caseTypes().get(0);
+    final String attemptedKey = storeKey(ALLISA_BOOTSTRAP_ATTEMPTED_KEY, caseType);
+    if (connectorStore.getLong(attemptedKey).isPresent()
+        || connectorStore.getLong(storeKey(ALLISA_LAST_SYNC_KEY, caseType)).isPresent()) {
+      return true;
+    }
+    if (caseTypes().size() > 1) {
+      log.warn("Ignoring Allisa export {}, exports are only supported with a single case type", exportFile.get());
+      connectorStore.putLong(attemptedKey, 1);
+      return true;
+    }
+
+    final String batchesKey = storeKey(ALLISA_BOOTSTRAP_BATCHES_KEY, caseType);
+    final long upsertedBatches = connectorStore.getLong(batchesKey).orElse(0L);
+    log.info("Creating tags for the cases of Allisa export {}{}", exportFile.get(),
+        upsertedBatches > 0 ? ", continuing after batch " + upsertedBatches : "");
 
+    final Deadline deadline = Deadline.after(syncTimeBudget());
+    final int parallelism = syncWorkers();
+    final int batchSize = tagUpsertBatchSize();
+    // bounds the number of batches in memory while upserts are slower than reading the file
+    final Semaphore permits = new Semaphore(parallelism);
+    final List<CompletableFuture<Void>> upserts = new ArrayList<>();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final AtomicLong readBatches = new AtomicLong();
+    final AtomicLong caseCount = new AtomicLong();
+    final AtomicLong maxCaseId = new AtomicLong();
+    boolean stopped = false;
     try {
-      userPostedTime
-          .getTags()
-          .stream()
-
-          .map(findProcess)
-
-          .forEach(createTimeAndChargeRecord);
-    } catch (ConnectorException e) {
-      log.warn("Can't post time to Allisa: " + e.getMessage());
-      return PostResult.PERMANENT_FAILURE()
-          .withError(e)
-          .withMessage(e.getMessage());
+      new AllisaCaseExportReader(batchSize).forEachBatch(Paths.get(exportFile.get()), batch -> {
+        if (readBatches.get() >= upsertedBatches && budgetUsedUp(upserts.size(), Integer.MAX_VALUE, deadline)) {
+          throw new CancellationException();
+        }
+        caseCount.addAndGet(batch.size());
+        batch.forEach(allisaCase -> maxCaseId.accumulateAndGet(allisaCase.getCaseId(), Math::max));
+        if (readBatches.getAndIncrement() < upsertedBatches) {
+          // upserted by an earlier run
+          return;
+        }
+        permits.acquireUninterruptibly();
+        if (failure.get() != null) {
+          // stop reading, the failure is thrown once running upserts are done
+          permits.release();
+          throw new CancellationException();
+        }
+        upserts.add(CompletableFuture
+            .runAsync(() -> upsertWiseTimeTags(caseType, batch, true), syncExecutor(parallelism))
+            .whenComplete((result, error) -> {
+              if (error != null) {
+                failure.compareAndSet(null, error instanceof CompletionException ? error.getCause() : error);
+              }
+              permits.release();
+            }));
+      });
+    } catch (CancellationException e) {
+      stopped = true;
+    } catch (IOException | ConnectorException e) {
+      // the new case sync goes through all cases instead
+      log.error("Failed to read Allisa export {}, syncing all cases from Allisa instead", exportFile.get(), e);
+      connectorStore.putLong(attemptedKey, 1);
+      return true;
+    } finally {
+      CompletableFuture.allOf(upserts.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+    }
+    // batches complete out of order, the next run continues after the ones that completed without a gap
+    final long completedBatches = upsertedBatches + upserts.stream()
+        .filter(upsert -> upsert.isCompletedExceptionally())
+        .findFirst()
+        .map(upserts::indexOf)
+        .orElse(upserts.size());
+    if (failure.get() instanceof LeaseLostException) {
+      throw (LeaseLostException) failure.get();
+    }
+    if (failure.get() != null) {
+      connectorStore.putLong(batchesKey, completedBatches);
+      if (failure.get() instanceof ConnectorException) {
+        log.error("WiseTime rejected the tags of Allisa export {}, syncing all cases from Allisa instead",
+            exportFile.get(), failure.get());
+        connectorStore.putLong(attemptedKey, 1);
+        return true;
+      }
+      log.warn("Stopped reading Allisa export {} after a failed upsert, continuing after batch {} on the next run",
+          exportFile.get(), completedBatches);
+      Throwables.throwIfUnchecked(failure.get());
+      throw new RuntimeException(failure.get());
+    }
+    if (stopped) {
+      connectorStore.putLong(batchesKey, completedBatches);
+      log.info("Tag sync budget used up, continuing with Allisa export {} after batch {} on the next run",
+          exportFile.get(), completedBatches);
+      return false;
+    }
+    connectorStore.putLong(attemptedKey, 1);
+    if (caseCount.get() == 0) {
+      log.warn("Allisa export {} contains no cases", exportFile.get());
+      return true;
+    }
+
+    final long lastSyncPage = pageAfterExport(caseType, maxCaseId.get(), caseCount.get(), batchSize);
+    connectorStore.putLong(storeKey(ALLISA_LAST_SYNC_KEY, caseType), maxCaseId.get());
+    connectorStore.putLong(storeKey(ALLISA_LAST_SYNC_PAGE, caseType), lastSyncPage);
+    log.info("Created tags for {} exported cases. Last case ID synced: {} on page {}",
+        caseCount.get(), maxCaseId.get(), lastSyncPage);
+    return true;
+  }
+
+  /**
+   * Finds the listing page of the first case after the export. If the export holds all cases up to its highest ID,
+   * that is the page after the last full page of exported cases. Otherwise, e.g. if case IDs have gaps, the page is
+   * searched for in the listing.
+   */
+  private long pageAfterExport(String caseType, long maxCaseId, long caseCount, int batchSize) {
+    final long expectedPage = Math.max(1, caseCount / batchSize);
+    try {
+      return new PageCursorRecovery(allisaApiService).recoverPage(caseType, maxCaseId, expectedPage, batchSize);
     } catch (RuntimeException e) {
-      log.warn("Failed to save posted time in Allisa", e);
-      return PostResult.TRANSIENT_FAILURE()
-          .withError(e)
-          .withMessage("There was an error posting time to Allisa");
+      // the new case sync skips synced cases, it only lists more pages than needed
+      log.warn("Failed to find the listing page after Allisa case {}, the tag sync starts on the first page",
+          maxCaseId, e);
+      return 1;
+    }
+  }
+
+  /**
+   * Upserts tags for the cases Allisa notified us about. The sync cursors are left alone, as notifications can
+   * arrive out of order or get lost: the new case sync still goes through these cases, but doesn't upsert them again.
+   */
+  @VisibleForTesting
+  void upsertNotifiedCases(String caseType, List<AllisaCase> cases) {
+    log.info("Allisa notified {} {} of type {}: {}",
+        cases.size(),
+        cases.size() > 1 ? "cases" : "case",
+        caseType,
+        cases.stream().map(AllisaCase::getCaseId).map(Object::toString).collect(Collectors.joining(", ")));
+    upsertWiseTimeTags(caseType, cases, false);
+    cases.forEach(allisaCase -> notifiedUpserts.put(toUpsertTagRequest(caseType, allisaCase), Boolean.TRUE));
+  }
+
+  private CaseWebhookServer startCaseWebhookServer(int port) {
+    final String secret = config.getString(AllisaConnectorConfigKey.ALLISA_WEBHOOK_SECRET)
+        .orElseThrow(() -> new IllegalArgumentException(
+            "ALLISA_WEBHOOK_SECRET needs to be set when ALLISA_WEBHOOK_PORT is set"));
+    try {
+      final CaseWebhookServer server = new CaseWebhookServer(port, secret, caseTypes(), this::upsertNotifiedCases);
+      server.start();
+      return server;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to start Allisa webhook server on port " + port, e);
+    }
+  }
+
+  private synchronized void stopCaseWebhookServer() {
+    if (caseWebhookServer != null) {
+      caseWebhookServer.stop();
+      caseWebhookServer = null;
     }
-    return PostResult.SUCCESS();
   }
 
   @VisibleForTesting
-  void syncNewCases() {
+  boolean isTagSyncLeader() {
+    return leaderElection == null || leaderElection.isLeader();
+  }
+
+  private synchronized void stopLeaderElection() {
+    if (leaderElection != null) {
+      leaderElection.stop();
+      leaderElection = null;
+    }
+  }
+
+  @VisibleForTesting
+  Optional<Integer> getCaseWebhookPort() {
+    return Optional.ofNullable(caseWebhookServer).map(CaseWebhookServer::getPort);
+  }
+
+  /**
+   * Syncs new cases until there are no more, until the time or page budget of the sync is used up, or until the
+   * connector shuts down. These are only checked between pages, so the cursors always point to a page boundary.
+   */
+  @VisibleForTesting
+  SyncProgress syncNewCases(String caseType) {
+    final Deadline deadline = Deadline.after(syncTimeBudget());
+    final int maxPages = syncMaxPages();
+    final int syncWorkers = syncWorkers();
+    recoverPageCursor(caseType);
+    final SyncProgress progress = syncWorkers > 1
+        ? syncNewCasesInParallel(caseType, syncWorkers, deadline, maxPages)
+        : syncNewCasesInSequence(caseType, deadline, maxPages);
+    if (progress.isComplete()) {
+      metrics.setGauge(syncBacklogGauge(caseType), 0);
+    } else if (!inFlight.isClosed()) {
+      reportSyncBacklog(caseType);
+    }
+    return progress;
+  }
+
+  /**
+   * Runs the new case sync of a case type, unless its probe finds no new cases. Returns false if the sync budget was
+   * used up before all cases were synced.
+   */
+  private boolean syncCaseType(String caseType) {
+    final String lastSyncKey = storeKey(ALLISA_LAST_SYNC_KEY, caseType);
+    final String lastSyncPageKey = storeKey(ALLISA_LAST_SYNC_PAGE, caseType);
+    final NewCaseProbe newCaseProbe = newCaseProbes.get(caseType);
+    if (newCaseProbe != null && !newCaseProbe.shouldSync()) {
+      return true;
+    }
+    final SyncProgress progress = syncNewCases(caseType);
+    if (!progress.isComplete()) {
+      if (newCaseProbe != null) {
+        // there are cases left, no need to probe before the next sync
+        newCaseProbe.reset();
+      }
+      return false;
+    }
+    if (newCaseProbe != null) {
+      // the sync stops after the first page without cases, there are no cases after that page
+      newCaseProbe.afterSync(progress.getSyncedCases(),
+          connectorStore.getLong(lastSyncKey).orElse(0L),
+          (connectorStore.getLong(lastSyncPageKey).orElse(0L) + 1) * tagUpsertBatchSize());
+    }
+    return true;
+  }
+
+  /**
+   * Runs the task for every case type, concurrently if there are several, and returns whether all tasks returned
+   * true. If a task fails, its failure is thrown once all tasks are done.
+   */
+  private boolean forEachCaseType(Predicate<String> task) {
+    final List<String> caseTypes = caseTypes();
+    if (caseTypes.size() == 1) {
+      return task.test(caseTypes.get(0));
+    }
+    final List<CompletableFuture<Boolean>> results = caseTypes.stream()
+        .map(caseType -> CompletableFuture.supplyAsync(() -> task.test(caseType), caseTypeExecutor(caseTypes.size())))
+        .collect(Collectors.toList());
+    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+
+    boolean allTrue = true;
+    for (CompletableFuture<Boolean> result : results) {
+      try {
+        allTrue &= result.join();
+      } catch (CompletionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw e;
+      }
+    }
+    return allTrue;
+  }
+
+  private SyncProgress syncNewCasesInSequence(String caseType, Deadline deadline, int maxPages) {
+    final String lastSyncKey = storeKey(ALLISA_LAST_SYNC_KEY, caseType);
+    final String lastSyncPageKey = storeKey(ALLISA_LAST_SYNC_PAGE, caseType);
     // When we start a new tag sync it is possible that the current page returns an empty result
     // because we already synced all of the cases of this page and we want to check the next page if there are new
     // cases. We can't check the next page directly because there might be new values on the current page
     boolean shouldCheckNextPage = true;
+    long syncedCases = 0;
+    int syncedPages = 0;
     while (true) {
-      final Optional<Long> storedLastSyncedCaseId = connectorStore.getLong(ALLISA_LAST_SYNC_KEY);
-      final Optional<Long> storedLastCompletelySyncPage = connectorStore.getLong(ALLISA_LAST_SYNC_PAGE);
+      if (budgetUsedUp(syncedPages, maxPages, deadline)) {
+        return new SyncProgress(syncedCases, false);
+      }
+      final Optional<Long> storedLastSyncedCaseId = connectorStore.getLong(lastSyncKey);
+      final Optional<Long> storedLastCompletelySyncPage = connectorStore.getLong(lastSyncPageKey);
       final long currentPage = storedLastCompletelySyncPage.orElse(1L);
 
       final List<AllisaCase> newAllisaCases = allisaApiService.getNewAllisaCases(
+          caseType,
           storedLastSyncedCaseId.orElse(0L),
           currentPage,
           tagUpsertBatchSize()
@@ -254,15 +947,15 @@ public class AllisaConnector implements WiseTimeConnector {
           shouldCheckNextPage = false;
           log.info("Encountered empty tag list for the first time, checking next page.");
           // first page was empty, checking next. Only doing this for the first page we check
-          connectorStore.putLong(ALLISA_LAST_SYNC_PAGE, currentPage + 1);
+          connectorStore.putLong(lastSyncPageKey, currentPage + 1);
           continue;
         }
         log.info("No new processes found. Last case ID synced: {}",
             storedLastSyncedCaseId.map(String::valueOf).orElse("None"));
         // if we got and empty page (this also includes the second empty page, if we had no new cases)
         // revert to the last page we got results on, because it could contain more cases in the future
-        connectorStore.putLong(ALLISA_LAST_SYNC_PAGE, currentPage - 1);
-        return;
+        connectorStore.putLong(lastSyncPageKey, currentPage - 1);
+        return new SyncProgress(syncedCases, true);
       }
 
       log.info("Detected {} new {}: {}",
@@ -270,32 +963,203 @@ public class AllisaConnector implements WiseTimeConnector {
           newAllisaCases.size() > 1 ? "tags" : "tag",
           newAllisaCases.stream().map(AllisaCase::getCaseId).map(Object::toString).collect(Collectors.joining(", ")));
 
-      upsertWiseTimeTags(newAllisaCases);
+      upsertNewCaseTags(caseType, newAllisaCases);
+      syncedCases += newAllisaCases.size();
+      syncedPages++;
 
       final long lastSyncedCaseId = newAllisaCases.get(newAllisaCases.size() - 1).getCaseId();
-      connectorStore.putLong(ALLISA_LAST_SYNC_KEY, lastSyncedCaseId);
-      connectorStore.putLong(ALLISA_LAST_SYNC_PAGE, currentPage + 1);
+      connectorStore.putLong(lastSyncKey, lastSyncedCaseId);
+      connectorStore.putLong(lastSyncPageKey, currentPage + 1);
       // if the first page returned a result, no need to continue checking once we got an empty page
       shouldCheckNextPage = false;
       log.info("Last synced case ID: {} on page {}", lastSyncedCaseId, currentPage);
     }
   }
 
-  @VisibleForTesting
-  void refreshCases() {
-    final Optional<Long> storedLastRefreshedCaseId = connectorStore.getLong(ALLISA_LAST_REFRESHED_KEY);
-    final Optional<Long> storedLastRefreshedPage = connectorStore.getLong(ALLISA_LAST_REFRESHED_PAGE);
+  /**
+   * Syncs several pages of new cases at once. The cursors only advance past pages that were synced without a gap
+   * before them, so a failure or a crash never skips cases. Pages synced after a gap are synced again the next time.
+   */
+  private SyncProgress syncNewCasesInParallel(String caseType, int syncWorkers, Deadline deadline, int maxPages) {
+    final String lastSyncKey = storeKey(ALLISA_LAST_SYNC_KEY, caseType);
+    final String lastSyncPageKey = storeKey(ALLISA_LAST_SYNC_PAGE, caseType);
+    // same as in syncNewCasesInSequence: if the stored page has no new cases, the next page might have
+    boolean shouldCheckNextPage = true;
+    long syncedCases = 0;
+    int syncedPages = 0;
+    while (true) {
+      if (budgetUsedUp(syncedPages, maxPages, deadline)) {
+        return new SyncProgress(syncedCases, false);
+      }
+      final long storedLastSyncedCaseId = connectorStore.getLong(lastSyncKey).orElse(0L);
+      final long firstPage = connectorStore.getLong(lastSyncPageKey).orElse(1L);
+      final int pageSize = tagUpsertBatchSize();
+
+      final List<CompletableFuture<List<AllisaCase>>> pages = LongStream
+          .range(firstPage, firstPage + Math.min(syncWorkers, maxPages - syncedPages))
+          .mapToObj(page -> CompletableFuture.supplyAsync(
+              () -> syncPage(caseType, storedLastSyncedCaseId, page, pageSize), syncExecutor(syncWorkers)))
+          .collect(Collectors.toList());
+      // wait for every page, so that no upsert is still running when the cursors are updated or the sync fails
+      CompletableFuture.allOf(pages.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+
+      long nextPage = firstPage;
+      Optional<Long> lastSyncedCaseId = Optional.empty();
+      RuntimeException failure = null;
+      boolean reachedEnd = false;
+      for (CompletableFuture<List<AllisaCase>> page : pages) {
+        final List<AllisaCase> newAllisaCases;
+        try {
+          newAllisaCases = page.join();
+        } catch (CompletionException e) {
+          failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+          break;
+        }
+        if (newAllisaCases.isEmpty() && !shouldCheckNextPage) {
+          reachedEnd = true;
+          break;
+        }
+        shouldCheckNextPage = false;
+        syncedCases += newAllisaCases.size();
+        if (!newAllisaCases.isEmpty()) {
+          lastSyncedCaseId = Optional.of(newAllisaCases.get(newAllisaCases.size() - 1).getCaseId());
+        }
+        nextPage++;
+      }
+
+      lastSyncedCaseId.ifPresent(caseId -> connectorStore.putLong(lastSyncKey, caseId));
+      if (failure != null) {
+        if (nextPage > firstPage) {
+          connectorStore.putLong(lastSyncPageKey, nextPage);
+        }
+        throw failure;
+      }
+      if (reachedEnd) {
+        log.info("No new processes found. Last case ID synced: {}",
+            lastSyncedCaseId.orElse(storedLastSyncedCaseId));
+        // revert to the last page we got results on, because it could contain more cases in the future
+        connectorStore.putLong(lastSyncPageKey, nextPage - 1);
+        return new SyncProgress(syncedCases, true);
+      }
+      syncedPages += nextPage - firstPage;
+      connectorStore.putLong(lastSyncPageKey, nextPage);
+      log.info("Synced pages {} to {}", firstPage, nextPage - 1);
+    }
+  }
+
+  /**
+   * Moves the page cursor to the page of the first case that hasn't been synced, if cases before it were deleted.
+   */
+  private void recoverPageCursor(String caseType) {
+    final String lastSyncKey = storeKey(ALLISA_LAST_SYNC_KEY, caseType);
+    final String lastSyncPageKey = storeKey(ALLISA_LAST_SYNC_PAGE, caseType);
+    final Optional<Long> lastSyncedCaseId = connectorStore.getLong(lastSyncKey);
+    if (pageCursorRecovery == null || !lastSyncedCaseId.isPresent()) {
+      return;
+    }
+    final long storedPage = connectorStore.getLong(lastSyncPageKey).orElse(1L);
+    try {
+      final long page = pageCursorRecovery.recoverPage(caseType, lastSyncedCaseId.get(), storedPage,
+          tagUpsertBatchSize());
+      if (page != storedPage) {
+        connectorStore.putLong(lastSyncPageKey, page);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to check the tag sync page cursor, continuing on page {}", storedPage, e);
+    }
+  }
+
+  private boolean budgetUsedUp(int syncedPages, int maxPages, Deadline deadline) {
+    if (inFlight.isClosed()) {
+      // shutting down, the pages synced so far have been saved
+      return true;
+    }
+    if (!isTagSyncLeader()) {
+      // another replica may have taken over the sync, the pages synced so far have been saved
+      throw new LeaseLostException("This replica no longer holds the leader lease");
+    }
+    // every sync makes progress, however small the budget
+    return syncedPages > 0 && (syncedPages >= maxPages || deadline.isExpired());
+  }
 
+  /**
+   * Estimates how many cases are left to sync from the size of the case listing. The pages before the page cursor
+   * have been synced.
+   */
+  private void reportSyncBacklog(String caseType) {
+    final String lastSyncPageKey = storeKey(ALLISA_LAST_SYNC_PAGE, caseType);
+    try {
+      final long pagedCases = (connectorStore.getLong(lastSyncPageKey).orElse(1L) - 1) * tagUpsertBatchSize();
+      final long listingSize = NewCaseProbe.findListingSize(allisaApiService, caseType, pagedCases + 1);
+      final long backlog = Math.max(0, listingSize - pagedCases);
+      metrics.setGauge(syncBacklogGauge(caseType), backlog);
+      log.info("Tag sync budget used up, continuing with the remaining {} cases of type {} on the next run",
+          backlog, caseType);
+    } catch (RuntimeException e) {
+      log.warn("Tag sync budget used up, failed to count the remaining cases", e);
+    }
+  }
+
+  private List<AllisaCase> syncPage(String caseType, long lastSyncedCaseId, long page, int pageSize) {
     final List<AllisaCase> newAllisaCases = allisaApiService.getNewAllisaCases(
+        caseType, lastSyncedCaseId, page, pageSize);
+    if (!newAllisaCases.isEmpty()) {
+      log.info("Detected {} new {} on page {}: {}",
+          newAllisaCases.size(),
+          newAllisaCases.size() > 1 ? "tags" : "tag",
+          page,
+          newAllisaCases.stream().map(AllisaCase::getCaseId).map(Object::toString).collect(Collectors.joining(", ")));
+      upsertNewCaseTags(caseType, newAllisaCases);
+    }
+    return newAllisaCases;
+  }
+
+  private synchronized ExecutorService caseTypeExecutor(int caseTypes) {
+    if (caseTypeExecutor == null) {
+      caseTypeExecutor = Executors.newFixedThreadPool(caseTypes,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-case-type-%d").build());
+    }
+    return caseTypeExecutor;
+  }
+
+  private synchronized ExecutorService syncExecutor(int syncWorkers) {
+    if (syncExecutor == null) {
+      syncExecutor = Executors.newFixedThreadPool(syncWorkers,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-sync-%d").build());
+    }
+    return syncExecutor;
+  }
+
+  @VisibleForTesting
+  void refreshCases(String caseType) {
+    final String lastRefreshedKey = storeKey(ALLISA_LAST_REFRESHED_KEY, caseType);
+    final String lastRefreshedPageKey = storeKey(ALLISA_LAST_REFRESHED_PAGE, caseType);
+    final Optional<Long> storedLastRefreshedCaseId = connectorStore.getLong(lastRefreshedKey);
+    final long page = connectorStore.getLong(lastRefreshedPageKey).orElse(0L) + 1;
+    final String pageValidatorKey = storeKey(ALLISA_REFRESHED_PAGE_VALIDATOR + page, caseType);
+
+    final CasePage casePage = allisaApiService.getChangedAllisaCases(
+        caseType,
         storedLastRefreshedCaseId.orElse(0L),
-        storedLastRefreshedPage.orElse(0L) + 1,
-        tagUpsertBatchSize()
+        page,
+        tagUpsertBatchSize(),
+        config.getBoolean(AllisaConnectorConfigKey.ALLISA_REFRESH_SKIP_UNCHANGED).orElse(true)
+            ? connectorStore.getString(pageValidatorKey).orElse(null)
+            : null
     );
 
+    if (casePage.isUnchanged()) {
+      // the tags of the page are up to date since its last refresh
+      connectorStore.putLong(lastRefreshedPageKey, page);
+      log.info("Page {} is unchanged since its last refresh", page);
+      return;
+    }
+
+    final List<AllisaCase> newAllisaCases = casePage.getCases();
     if (newAllisaCases.isEmpty()) {
       // start over the next time
-      connectorStore.putLong(ALLISA_LAST_REFRESHED_KEY, 0);
-      connectorStore.putLong(ALLISA_LAST_REFRESHED_PAGE, 0);
+      connectorStore.putLong(lastRefreshedKey, 0);
+      connectorStore.putLong(lastRefreshedPageKey, 0);
       return;
     }
 
@@ -304,25 +1168,209 @@ public class AllisaConnector implements WiseTimeConnector {
         newAllisaCases.size() > 1 ? "tags" : "tag",
         newAllisaCases.stream().map(AllisaCase::getCaseId).map(Object::toString).collect(Collectors.joining(", ")));
 
-    upsertWiseTimeTags(newAllisaCases);
+    upsertWiseTimeTags(caseType, newAllisaCases, true);
 
     final long lastSyncedCaseId = newAllisaCases.get(newAllisaCases.size() - 1).getCaseId();
-    connectorStore.putLong(ALLISA_LAST_REFRESHED_KEY, lastSyncedCaseId);
-    connectorStore.putLong(ALLISA_LAST_REFRESHED_PAGE, storedLastRefreshedPage.orElse(0L) + 1);
-    log.info("Last refreshed case ID: {} on page {}", lastSyncedCaseId, storedLastRefreshedPage.orElse(0L) + 1);
+    connectorStore.putString(pageValidatorKey, casePage.getValidator());
+    connectorStore.putLong(lastRefreshedKey, lastSyncedCaseId);
+    connectorStore.putLong(lastRefreshedPageKey, page);
+    log.info("Last refreshed case ID: {} on page {}", lastSyncedCaseId, page);
   }
 
-  private void upsertWiseTimeTags(final List<AllisaCase> cases) {
-    try {
-      final List<UpsertTagRequest> upsertRequests = cases
-          .stream()
-          .map(item -> item.toUpsertTagRequest(tagUpsertPath(), getBaseUrl() + "projekt/show/ID/"))
-          .collect(Collectors.toList());
 
-      apiClient.tagUpsertBatch(upsertRequests);
+  /**
+   * Upserts the tags of cases found by the new case sync, except the ones a notification already upserted unchanged.
+   * The refresh upserts all cases, so that it still catches changes made after a notification.
+   */
+  private void upsertNewCaseTags(final String caseType, final List<AllisaCase> cases) {
+    upsertWiseTimeTags(caseType, cases.stream()
+        .filter(allisaCase -> notifiedUpserts.getIfPresent(toUpsertTagRequest(caseType, allisaCase)) == null)
+        .collect(Collectors.toList()), true);
+  }
+
+  /**
+   * Upserts tags for the cases in sub-batches, sent concurrently. Sub-batches that fail are retried, the others are
+   * not sent again. Upserts of the tag sync stop as soon as this replica loses the leader lease.
+   */
+  private void upsertWiseTimeTags(final String caseType, final List<AllisaCase> cases, final boolean tagSync) {
+    final List<UpsertTagRequest> upsertRequests = cases
+        .stream()
+        .map(allisaCase -> toUpsertTagRequest(caseType, allisaCase))
+        // the same case often shows up on consecutive pages or in both the sync and the refresh
+        .filter(request -> recentUpserts.getIfPresent(request) == null)
+        .distinct()
+        .collect(Collectors.toList());
+    if (upsertRequests.size() < cases.size()) {
+      log.debug("Skipping {} tags that were upserted unchanged recently", cases.size() - upsertRequests.size());
+    }
+    upsertTags(upsertRequests, tagSync);
+  }
+
+  /**
+   * Upserts the tags in concurrent sub-batches. Sub-batches that fail transiently, e.g. on timeouts, 429 or 5xx
+   * responses, are retried with a backoff. If they keep failing while other sub-batches got through, they are requeued
+   * for the next tag sync run, so that the progress of the run is kept. The run stops if no sub-batch got through, or
+   * as soon as a sub-batch fails permanently, i.e. with any other 4xx response.
+   */
+  private void upsertTags(final List<UpsertTagRequest> upsertRequests, final boolean tagSync) {
+    if (upsertRequests.isEmpty()) {
+      return;
+    }
+    final List<List<UpsertTagRequest>> subBatches = Lists.partition(upsertRequests, tagUpsertSubBatchSize());
+    List<List<UpsertTagRequest>> pendingSubBatches = subBatches;
+    for (int attempt = 1; ; attempt++) {
+      final List<Pair<List<UpsertTagRequest>, IOException>> failures = upsertSubBatches(pendingSubBatches, tagSync);
+      if (failures.isEmpty()) {
+        return;
+      }
+      final Optional<IOException> permanentError = failures.stream()
+          .map(Pair::getRight)
+          .filter(AllisaConnector::isPermanentUpsertFailure)
+          .findFirst();
+      if (permanentError.isPresent()) {
+        throw new ConnectorException("WiseTime rejected the tag upserts: " + permanentError.get().getMessage(),
+            permanentError.get());
+      }
+      final IOException error = failures.get(0).getRight();
+      if (attempt >= TAG_UPSERT_ATTEMPTS) {
+        if (failures.size() == subBatches.size()) {
+          throw new RuntimeException(error);
+        }
+        requeueUpserts(failures, error);
+        return;
+      }
+      log.warn("Failed to upsert {} of {} tag batches, retrying: {}",
+          failures.size(), pendingSubBatches.size(), error.getMessage());
+      pendingSubBatches = failures.stream().map(Pair::getLeft).collect(Collectors.toList());
+      backOff(attempt);
+    }
+  }
+
+  private void requeueUpserts(List<Pair<List<UpsertTagRequest>, IOException>> failures, IOException error) {
+    final List<UpsertTagRequest> failedRequests = failures.stream()
+        .flatMap(failure -> failure.getLeft().stream())
+        .collect(Collectors.toList());
+    if (requeuedUpserts.size() + failedRequests.size() > MAX_REQUEUED_UPSERTS) {
+      throw new RuntimeException("Too many tag upserts are waiting to be retried", error);
+    }
+    requeuedUpserts.addAll(failedRequests);
+    log.warn("Failed to upsert {} tags, retrying them on the next tag sync run: {}",
+        failedRequests.size(), error.getMessage());
+  }
+
+  /**
+   * Upserts the tags that failed transiently in an earlier run. Tags that fail again are requeued. If the retry fails
+   * as a whole, e.g. because WiseTime is still unavailable or the leader lease was lost, all its tags are put back, as
+   * upserting a tag again does no harm.
+   */
+  private void retryRequeuedUpserts() {
+    final List<UpsertTagRequest> requeued = new ArrayList<>();
+    for (UpsertTagRequest request = requeuedUpserts.poll(); request != null; request = requeuedUpserts.poll()) {
+      requeued.add(request);
+    }
+    if (!requeued.isEmpty()) {
+      log.info("Retrying {} tag upserts that failed on the last run", requeued.size());
+      try {
+        upsertTags(requeued, true);
+      } catch (RuntimeException e) {
+        requeuedUpserts.addAll(requeued);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Whether the WiseTime API rejected the upsert, as opposed to a network failure or an overloaded server. The
+   * connector library doesn't expose the response status in its API, so it is read from the
+   * {@link HttpResponseException} its HTTP client throws for error responses.
+   */
+  @VisibleForTesting
+  static boolean isPermanentUpsertFailure(IOException error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpResponseException) {
+        final int code = ((HttpResponseException) cause).getStatusCode();
+        return code >= 400 && code < 500 && code != HttpStatus.SC_REQUEST_TIMEOUT
+            && code != HTTP_TOO_MANY_REQUESTS;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the sub-batches that failed, with their errors.
+   */
+  private List<Pair<List<UpsertTagRequest>, IOException>> upsertSubBatches(List<List<UpsertTagRequest>> subBatches,
+                                                                          boolean tagSync) {
+    if (subBatches.size() == 1) {
+      // nothing to parallelise
+      return tryUpsert(subBatches.get(0), tagSync)
+          .map(error -> Collections.singletonList(Pair.of(subBatches.get(0), error)))
+          .orElse(Collections.emptyList());
+    }
+    final List<CompletableFuture<Optional<IOException>>> results = subBatches.stream()
+        .map(subBatch -> CompletableFuture.supplyAsync(() -> tryUpsert(subBatch, tagSync), upsertExecutor()))
+        .collect(Collectors.toList());
+
+    final List<Pair<List<UpsertTagRequest>, IOException>> failures = new ArrayList<>();
+    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+    for (int i = 0; i < subBatches.size(); i++) {
+      final List<UpsertTagRequest> subBatch = subBatches.get(i);
+      try {
+        results.get(i).join().ifPresent(error -> failures.add(Pair.of(subBatch, error)));
+      } catch (CompletionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw e;
+      }
+    }
+    return failures;
+  }
+
+  private UpsertTagRequest toUpsertTagRequest(String caseType, AllisaCase allisaCase) {
+    return allisaCase.toUpsertTagRequest(tagPath(caseType), getBaseUrl() + "projekt/show/ID/");
+  }
+
+  private Optional<IOException> tryUpsert(List<UpsertTagRequest> subBatch, boolean tagSync) {
+    if (tagSync && !isTagSyncLeader()) {
+      throw new LeaseLostException("This replica no longer holds the leader lease");
+    }
+    try {
+      apiClient.tagUpsertBatch(subBatch);
+      subBatch.forEach(request -> recentUpserts.put(request, Boolean.TRUE));
+      return Optional.empty();
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      return Optional.of(e);
+    }
+  }
+
+  private static void backOff(int attempt) {
+    try {
+      Thread.sleep(TAG_UPSERT_RETRY_DELAY.toMillis() << (attempt - 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting to retry tag upserts", e);
+    }
+  }
+
+  private synchronized Executor upsertExecutor() {
+    if (sharedUpsertExecutor != null) {
+      return sharedUpsertExecutor;
     }
+    if (upsertExecutor == null) {
+      upsertExecutor = Executors.newFixedThreadPool(tagUpsertParallelism(),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-tag-upsert-%d").build());
+    }
+    return upsertExecutor;
+  }
+
+  /**
+   * Outcome of a new case sync.
+   */
+  @Value
+  @VisibleForTesting
+  static class SyncProgress {
+    long syncedCases;
+    // false if the sync budget was used up before all cases were synced
+    boolean complete;
   }
 
   @Override
@@ -331,13 +1379,13 @@ public class AllisaConnector implements WiseTimeConnector {
   }
 
   private String tagUpsertPath() {
-    return RuntimeConfig
+    return config
         .getString(AllisaConnectorConfigKey.TAG_UPSERT_PATH)
         .orElse("/Allisa/");
   }
 
-  private void executeCreateTimeAndChargeRecord(TimePostData params) {
-    allisaApiService.postTime(params);
+  private void executeCreateTimeAndChargeRecord(Deadline deadline, TimePostData params) {
+    allisaApiService.postTime(params, deadline);
 
     log.info("Posted time to Allisa case {} on behalf of {}", params.getTagId(), params.getUserId());
   }
@@ -349,14 +1397,11 @@ public class AllisaConnector implements WiseTimeConnector {
   }
 
   private ZoneId getTimeZoneId() {
-    return ZoneId.of(RuntimeConfig.getString(AllisaConnectorConfigKey.TIMEZONE).orElse("UTC"));
+    return ZoneId.of(config.getString(AllisaConnectorConfigKey.TIMEZONE).orElse("UTC"));
   }
 
-  private String getTimeGroupActivityCode(TimeGroup timeGroup) {
-    final List<String> activityCodes = timeGroup.getTimeRows().stream()
-        .map(TimeRow::getActivityTypeCode)
-        .distinct()
-        .collect(Collectors.toList());
+  private String getTimeGroupActivityCode(TimeGroup timeGroup, TimeGroupAnalysis analysis) {
+    final List<String> activityCodes = analysis.getActivityCodes();
     if (activityCodes.isEmpty()) {
       return "";
     }
@@ -371,8 +1416,8 @@ public class AllisaConnector implements WiseTimeConnector {
   @VisibleForTesting
   TimeGroup convertToZone(TimeGroup timeGroupUtc, ZoneId zoneId) {
     try {
-      final String timeGroupUtcJson = OBJECT_MAPPER.writeValueAsString(timeGroupUtc);
-      final TimeGroup timeGroupCopy = OBJECT_MAPPER.readValue(timeGroupUtcJson, TimeGroup.class);
+      final String timeGroupUtcJson = JsonCodec.MAPPER.writeValueAsString(timeGroupUtc);
+      final TimeGroup timeGroupCopy = JsonCodec.MAPPER.readValue(timeGroupUtcJson, TimeGroup.class);
       timeGroupCopy.getTimeRows()
           .forEach(tr -> convertToZone(tr, zoneId));
       return timeGroupCopy;
@@ -423,25 +1468,168 @@ public class AllisaConnector implements WiseTimeConnector {
     return Long.parseLong(submittedDateConverted);
   }
 
-  private boolean createdByConnector(Tag tag) {
-    return tag.getPath().equals(tagUpsertPath())
-        || tag.getPath().equals(StringUtils.strip(tagUpsertPath(), "/"));
+  /**
+   * Returns the case type of a tag created by the connector, or empty if the connector didn't create the tag. Tags
+   * in the folder of a case type are routed to it even if it is now the first case type, whose tags are created in
+   * the tag upsert path itself.
+   */
+  private Optional<String> caseTypeOfTag(Tag tag) {
+    return caseTypes().stream()
+        .filter(caseType -> isInFolder(tag, tagPath(caseType)) || isInFolder(tag, tagUpsertPath() + caseType + "/"))
+        .findFirst();
+  }
+
+  private boolean isInTagUpsertPath(Tag tag) {
+    final String folder = StringUtils.strip(tagUpsertPath(), "/");
+    final String path = StringUtils.strip(tag.getPath(), "/");
+    return path != null && (path.equals(folder) || path.startsWith(folder + "/"));
   }
 
-  private boolean wasTotalDurationEdited(TimeGroup userPostedTimeGroup) {
-    // check if user edited the total time by comparing the total time to the sum of the time on each row
-    return !userPostedTimeGroup.getTotalDurationSecs()
-        .equals(userPostedTimeGroup.getTimeRows().stream().mapToInt(TimeRow::getDurationSecs).sum());
+  private static boolean isInFolder(Tag tag, String folder) {
+    return tag.getPath().equals(folder) || tag.getPath().equals(StringUtils.strip(folder, "/"));
+  }
+
+  /**
+   * Tags of a single case type are searched in the listing of the post type, as before there were several case types.
+   * Tags of several case types are searched in the listing of their own case type.
+   */
+  private Map<String, AllisaCase> findAllisaCases(List<Tag> tags, Deadline deadline) {
+    if (caseTypes().size() == 1) {
+      return allisaApiService.getAllisaCasesByTagNames(
+          tags.stream().map(Tag::getName).collect(Collectors.toList()), deadline);
+    }
+    final Map<String, List<String>> tagNamesByCaseType = tags.stream().collect(Collectors.groupingBy(
+        tag -> caseTypeOfTag(tag).orElseThrow(IllegalStateException::new),
+        LinkedHashMap::new,
+        Collectors.mapping(Tag::getName, Collectors.toList())));
+    final Map<String, AllisaCase> allisaCases = new HashMap<>();
+    tagNamesByCaseType.forEach((caseType, tagNames) ->
+        allisaCases.putAll(allisaApiService.getAllisaCasesByTagNames(caseType, tagNames, deadline)));
+    return allisaCases;
+  }
+
+  private List<String> caseTypes() {
+    return config
+        .getString(AllisaConnectorConfigKey.ALLISA_CASE_TYPE)
+        .map(caseTypes -> Splitter.on(',').trimResults().omitEmptyStrings().splitToList(caseTypes))
+        .filter(caseTypes -> !caseTypes.isEmpty())
+        .orElseThrow(() -> new IllegalArgumentException("ALLISA_CASE_TYPE needs to be set"));
+  }
+
+  /**
+   * Connector store keys are kept per case type. The keys of the first case type have no suffix, so that it keeps the
+   * sync progress it had as a single case type when more case types are added.
+   */
+  private String keySuffix(String caseType) {
+    return isFirstCaseType(caseType) ? "" : "_" + caseType;
+  }
+
+  private String storeKey(String key, String caseType) {
+    return key + keySuffix(caseType);
+  }
+
+  /**
+   * Tags of the case types after the first are kept in a folder per case type, so that posted time can be routed to
+   * its type. Tags of the first case type stay in the tag upsert path, where they were as a single case type.
+   */
+  private String tagPath(String caseType) {
+    return isFirstCaseType(caseType) ? tagUpsertPath() : tagUpsertPath() + caseType + "/";
+  }
+
+  private boolean isFirstCaseType(String caseType) {
+    return caseTypes().get(0).equals(caseType);
+  }
+
+  private String syncBacklogGauge(String caseType) {
+    return ConnectorMetrics.SYNC_BACKLOG + (caseTypes().size() > 1 ? "." + caseType : "");
   }
 
   private String getBaseUrl() {
-    return RuntimeConfig
+    return config
         .getString(ALLISA_BASE_URL)
         .orElseThrow(() -> new IllegalArgumentException("ALLISA_BASE_URL needs to be set"));
   }
 
+  private Duration postTimeBudget() {
+    return Duration.ofSeconds(config
+        .getInt(AllisaConnectorConfigKey.ALLISA_POST_TIME_BUDGET_SECONDS)
+        .orElse(60));
+  }
+
+  /**
+   * @return the limit of posts in flight, null unless ALLISA_POST_MAX_CONCURRENCY is set. The limit starts at that
+   *     maximum, so that it only holds posts back once Allisa slows down.
+   */
+  private AdaptiveLimit createPostLimit() {
+    final int maxLimit = config.getInt(AllisaConnectorConfigKey.ALLISA_POST_MAX_CONCURRENCY).orElse(0);
+    if (maxLimit <= 0) {
+      return null;
+    }
+    return new AdaptiveLimit(Math.min(2, maxLimit), maxLimit, maxLimit);
+  }
+
+  private Duration shutdownTimeout() {
+    return Duration.ofSeconds(config
+        .getInt(AllisaConnectorConfigKey.ALLISA_SHUTDOWN_TIMEOUT_SECONDS)
+        .orElse(8));
+  }
+
+  private String replicaId() {
+    return config.getString(AllisaConnectorConfigKey.ALLISA_REPLICA_ID).orElseGet(() -> {
+      try {
+        return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+      } catch (UnknownHostException e) {
+        return UUID.randomUUID().toString();
+      }
+    });
+  }
+
+  private Duration leaderLeaseTtl() {
+    return Duration.ofSeconds(config
+        .getInt(AllisaConnectorConfigKey.ALLISA_LEADER_LEASE_SECONDS)
+        .orElse(60));
+  }
+
+  private Duration webhookSyncInterval() {
+    return Duration.ofMinutes(config
+        .getInt(AllisaConnectorConfigKey.ALLISA_WEBHOOK_SYNC_INTERVAL_MINUTES)
+        .orElse(10));
+  }
+
+  private Duration syncTimeBudget() {
+    return Duration.ofSeconds(config
+        .getInt(AllisaConnectorConfigKey.ALLISA_SYNC_TIME_BUDGET_SECONDS)
+        .orElse(300));
+  }
+
+  private int syncMaxPages() {
+    return config
+        .getInt(AllisaConnectorConfigKey.ALLISA_SYNC_MAX_PAGES)
+        .map(maxPages -> Math.max(1, maxPages))
+        // no limit
+        .orElse(Integer.MAX_VALUE);
+  }
+
+  private int syncWorkers() {
+    return config
+        .getInt(AllisaConnectorConfigKey.ALLISA_SYNC_WORKERS)
+        .orElse(1);
+  }
+
+  private int tagUpsertSubBatchSize() {
+    return config
+        .getInt(AllisaConnectorConfigKey.TAG_UPSERT_SUB_BATCH_SIZE)
+        .orElse(100);
+  }
+
+  private int tagUpsertParallelism() {
+    return config
+        .getInt(AllisaConnectorConfigKey.TAG_UPSERT_PARALLELISM)
+        .orElse(4);
+  }
+
   private int tagUpsertBatchSize() {
-    return RuntimeConfig
+    return config
         .getInt(TAG_UPSERT_BATCH_SIZE)
         // A large batch mitigates query round trip latency
         .orElse(500);
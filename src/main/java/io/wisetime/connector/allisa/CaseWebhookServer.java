@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP endpoint for Allisa to notify the connector of created or updated cases, so that their tags are upserted
+ * right away instead of on the next sync.
+ *
+ * Notifications are POST requests with the webhook secret in the {@value #SECRET_HEADER} header. The body is a case,
+ * an array of cases or a case listing response of the Allisa API, using the same fields as the API, e.g. `ID`, `az`
+ * and `prname`. If the connector syncs several case types, the {@value #CASE_TYPE_PARAMETER} query parameter tells
+ * which type the cases have. Bodies larger than {@value #MAX_BODY_BYTES} bytes are rejected; Allisa should split
+ * larger notifications.
+ */
+class CaseWebhookServer {
+
+  static final String PATH = "/allisa/cases";
+  static final String SECRET_HEADER = "X-Allisa-Webhook-Secret";
+  static final String CASE_TYPE_PARAMETER = "caseType";
+  static final int MAX_BODY_BYTES = 64 * 1024;
+
+  private static final Logger log = LoggerFactory.getLogger(CaseWebhookServer.class);
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final byte[] secret;
+  private final List<String> caseTypes;
+  private final BiConsumer<String, List<AllisaCase>> caseConsumer;
+
+  /**
+   * @param caseConsumer receives the case type and the cases of valid notifications. If it throws, Allisa is asked to
+   *     retry.
+   */
+  CaseWebhookServer(int port, String secret, List<String> caseTypes,
+                    BiConsumer<String, List<AllisaCase>> caseConsumer) throws IOException {
+    this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    this.caseTypes = caseTypes;
+    this.caseConsumer = caseConsumer;
+    this.executor = Executors.newFixedThreadPool(2,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-webhook-%d").build());
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(executor);
+    server.createContext(PATH, this::handle);
+  }
+
+  void start() {
+    server.start();
+    log.info("Listening for Allisa case notifications on port {}", getPort());
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, "Method not allowed");
+        return;
+      }
+      final String providedSecret = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+      if (providedSecret == null
+          || !MessageDigest.isEqual(secret, providedSecret.getBytes(StandardCharsets.UTF_8))) {
+        respond(exchange, 401, "Invalid webhook secret");
+        return;
+      }
+
+      final Optional<byte[]> body = readBody(exchange);
+      if (!body.isPresent()) {
+        log.warn("Rejected Allisa case notification larger than {} bytes", MAX_BODY_BYTES);
+        respond(exchange, 413, "Notification too large, the limit is " + MAX_BODY_BYTES + " bytes");
+        return;
+      }
+
+      final String caseType;
+      final List<AllisaCase> cases;
+      try {
+        caseType = parseCaseType(exchange.getRequestURI().getRawQuery());
+        cases = parseCases(new String(body.get(), StandardCharsets.UTF_8));
+      } catch (JsonProcessingException | IllegalArgumentException e) {
+        log.warn("Rejected invalid Allisa case notification: {}", e.getMessage());
+        respond(exchange, 400, e.getMessage());
+        return;
+      }
+
+      try {
+        caseConsumer.accept(caseType, cases);
+      } catch (RuntimeException e) {
+        log.warn("Failed to upsert tags for notified Allisa cases", e);
+        respond(exchange, 503, "Failed to upsert tags, please retry");
+        return;
+      }
+      respond(exchange, 202, "Accepted " + cases.size() + " cases");
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * @return the request body, or empty if it is larger than {@value #MAX_BODY_BYTES} bytes
+   */
+  private static Optional<byte[]> readBody(HttpExchange exchange) throws IOException {
+    final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (contentLength != null && contentLength.matches("\\d{1,18}") && Long.parseLong(contentLength) > MAX_BODY_BYTES) {
+      return Optional.empty();
+    }
+    // chunked bodies have no length, read one byte over the limit to tell whether they exceed it
+    final byte[] body = ByteStreams.toByteArray(ByteStreams.limit(exchange.getRequestBody(), MAX_BODY_BYTES + 1));
+    return body.length > MAX_BODY_BYTES ? Optional.empty() : Optional.of(body);
+  }
+
+  private String parseCaseType(String query) {
+    final Optional<String> caseType = Optional.ofNullable(query)
+        .flatMap(parameters -> Splitter.on('&').withKeyValueSeparator('=').split(parameters).entrySet().stream()
+            .filter(parameter -> CASE_TYPE_PARAMETER.equals(parameter.getKey()))
+            .map(parameter -> decode(parameter.getValue()))
+            .findFirst());
+    if (!caseType.isPresent()) {
+      if (caseTypes.size() > 1) {
+        throw new IllegalArgumentException("Query parameter " + CASE_TYPE_PARAMETER + " is required");
+      }
+      return caseTypes.get(0);
+    }
+    if (!caseTypes.contains(caseType.get())) {
+      throw new IllegalArgumentException("Case type " + caseType.get() + " is not synced by the connector");
+    }
+    return caseType.get();
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<AllisaCase> parseCases(String body) throws JsonProcessingException {
+    JsonNode json = JsonCodec.MAPPER.readTree(body);
+    if (json.isObject() && json.has("result")) {
+      json = json.get("result");
+    }
+    if (json.isObject() && json.has("data")) {
+      json = json.get("data");
+    }
+
+    final List<AllisaCase> cases = new ArrayList<>();
+    if (json.isArray()) {
+      for (JsonNode element : json) {
+        cases.add(toAllisaCase(element));
+      }
+    } else {
+      cases.add(toAllisaCase(json));
+    }
+    if (cases.isEmpty()) {
+      throw new IllegalArgumentException("Notification contains no cases");
+    }
+    return cases;
+  }
+
+  private static AllisaCase toAllisaCase(JsonNode element) throws JsonProcessingException {
+    if (!element.isObject()) {
+      throw new IllegalArgumentException("Expected a case object, but got: " + element);
+    }
+    final AllisaCase allisaCase = JsonCodec.MAPPER.treeToValue(element, AllisaCase.class);
+    if (allisaCase.getCaseId() <= 0) {
+      throw new IllegalArgumentException("Case ID is missing");
+    }
+    if (StringUtils.isBlank(allisaCase.getCaseReference())) {
+      throw new IllegalArgumentException("Case reference is missing for case " + allisaCase.getCaseId());
+    }
+    return allisaCase;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+    final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
@@ -4,51 +4,203 @@
 
 package io.wisetime.connector.allisa;
 
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
+import com.google.inject.name.Names;
 import io.wisetime.connector.ConnectorController;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.FairExecutor;
+import io.wisetime.connector.allisa.util.NativeImage;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.config.RuntimeConfigKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
  * Connector application entry point.
  *
+ * If `ALLISA_TENANTS` is set, the process runs a connector per tenant, see {@link TenantConfig}.
+ *
  * @author pascal
  */
 public class ConnectorLauncher {
 
+  private static final Logger log = LoggerFactory.getLogger(ConnectorLauncher.class);
+
+  /**
+   * Runs {@link AllisaConnector#check()} instead of the connector, and exits with 0 if it passed.
+   */
+  static final String CHECK_ARG = "--check";
+
   public static void main(final String... args) throws Exception {
-    ConnectorController connectorController = buildConnectorController();
-    connectorController.start();
+    if (NativeImage.isRuntime()) {
+      // a native image can't define classes at run time, Guice has to use reflection instead
+      System.setProperty("guice_bytecode_gen_option", "DISABLED");
+    }
+    if (args.length > 0 && CHECK_ARG.equals(args[0])) {
+      final TenantConfig config = new TenantConfig();
+      System.exit(createConnector(config, newLaneClients(config), null).check() ? 0 : 1);
+    }
+    final List<String> tenantIds = getTenantIds();
+    if (tenantIds.isEmpty()) {
+      final TenantConfig config = new TenantConfig();
+      final Map<HttpLane, OkHttpClient> laneClients = newLaneClients(config);
+      final AllisaConnector connector = createConnector(config, laneClients, null);
+      ConnectorController connectorController = buildConnectorController(config, connector);
+      stopOnShutdown(Collections.singletonList(connector), Collections.singletonList(connectorController),
+          laneClients.values());
+      connectorController.start();
+    } else {
+      startTenants(tenantIds);
+    }
   }
 
   public static ConnectorController buildConnectorController() {
-    return ConnectorController.newBuilder()
-        .withWiseTimeConnector(Guice.createInjector(binder -> {
-          // Build api client here to be able to inject it into AllisaApiService for better testability
-          OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-
-          // API key interceptor
-          httpClient.addInterceptor(chain -> {
-            Request newRequest  = chain.request().newBuilder()
-                .addHeader("Authorization", getAllisaApiKey())
-                .build();
-            return chain.proceed(newRequest);
-          });
-
-          Retrofit retrofit = new Retrofit.Builder()
-              .client(httpClient.build())
-              .baseUrl(getBaseUrl())
-              .addConverterFactory(GsonConverterFactory.create())
-              .build();
-
-          binder.bind(AllisaApiService.AllisaApi.class)
-              .toInstance(retrofit.create(AllisaApiService.AllisaApi.class));
-        }).getInstance(AllisaConnector.class))
+    final TenantConfig config = new TenantConfig();
+    return buildConnectorController(config, createConnector(config, newLaneClients(config), null));
+  }
+
+  static ConnectorController buildConnectorController(TenantConfig config, AllisaConnector connector) {
+    final ConnectorController.Builder builder = ConnectorController.newBuilder()
+        .withWiseTimeConnector(connector);
+    if (config.getTenantId().isPresent()) {
+      // each tenant posts to its own WiseTime team
+      builder.withApiKey(config.getString(TenantConfig.API_KEY)
+          .orElseThrow(() -> new IllegalArgumentException(config.keyName(TenantConfig.API_KEY) + " needs to be set")));
+    }
+    return builder.build();
+  }
+
+  private static Map<HttpLane, OkHttpClient> newLaneClients(TenantConfig config) {
+    return HttpLane.newClients(lane -> lane.maxRequests(config));
+  }
+
+  /**
+   * Builds the connector of a tenant. The connection pools and dispatchers of the lane clients, and the tag upsert
+   * workers, are shared with the other tenants.
+   */
+  static AllisaConnector createConnector(TenantConfig config, Map<HttpLane, OkHttpClient> laneClients,
+                                         Executor sharedUpsertExecutor) {
+    return Guice.createInjector(binder -> {
+      // Build api clients here to be able to inject them into AllisaApiService for better testability
+      final ConnectorMetrics metrics = new ConnectorMetrics();
+      binder.bind(AllisaApiService.AllisaApi.class)
+          .toInstance(createAllisaApi(config, HttpLane.SYNC, laneClients.get(HttpLane.SYNC), metrics));
+      binder.bind(AllisaApiService.AllisaApi.class)
+          .annotatedWith(Names.named(AllisaApiService.POST_API))
+          .toInstance(createAllisaApi(config, HttpLane.POST, laneClients.get(HttpLane.POST), metrics));
+      binder.bind(AllisaApiService.AllisaApi.class)
+          .annotatedWith(Names.named(AllisaApiService.LOOKUP_API))
+          .toInstance(createAllisaApi(config, HttpLane.LOOKUP, laneClients.get(HttpLane.LOOKUP), metrics));
+      binder.bind(TenantConfig.class).toInstance(config);
+      binder.bind(ConnectorMetrics.class).toInstance(metrics);
+      if (sharedUpsertExecutor != null) {
+        binder.bind(Executor.class)
+            .annotatedWith(Names.named(AllisaConnector.SHARED_UPSERT_WORKERS))
+            .toInstance(sharedUpsertExecutor);
+      }
+    }).getInstance(AllisaConnector.class);
+  }
+
+  private static AllisaApiService.AllisaApi createAllisaApi(TenantConfig config, HttpLane lane,
+                                                            OkHttpClient laneClient, ConnectorMetrics metrics) {
+    OkHttpClient.Builder httpClient = laneClient.newBuilder();
+
+    // API key interceptor
+    final String allisaApiKey = getAllisaApiKey(config);
+    httpClient.addInterceptor(chain -> {
+      Request newRequest  = chain.request().newBuilder()
+          .addHeader("Authorization", allisaApiKey)
+          .build();
+      return chain.proceed(newRequest);
+    });
+    httpClient.addInterceptor(new HttpLaneInterceptor(lane, lane.maxRequests(config), metrics));
+
+    // OkHttp asks for gzip compressed responses and decompresses them transparently, as long as no
+    // Accept-Encoding header is set here
+    Retrofit retrofit = new Retrofit.Builder()
+        .client(httpClient.build())
+        .baseUrl(getBaseUrl(config))
+        .addConverterFactory(new JsonConverterFactory())
         .build();
+    return retrofit.create(AllisaApiService.AllisaApi.class);
+  }
+
+  /**
+   * Runs the connectors of all tenants in this process until they stop.
+   */
+  private static void startTenants(List<String> tenantIds) throws InterruptedException {
+    final int workers = RuntimeConfig.getInt(AllisaConnectorConfigKey.ALLISA_TENANT_WORKERS).orElse(8);
+    final FairExecutor sharedUpsertExecutor = new FairExecutor(Executors.newFixedThreadPool(workers,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-shared-upsert-%d").build()));
+    // requests to one Allisa instance can't take up the connections of the other tenants
+    final int maxRequestsPerHost = RuntimeConfig.getInt(AllisaConnectorConfigKey.ALLISA_TENANT_MAX_REQUESTS).orElse(5);
+    final Map<HttpLane, OkHttpClient> laneClients = HttpLane.newClients(lane -> maxRequestsPerHost);
+
+    // build all connectors first, so that a configuration error stops the process before any tenant has started
+    final List<AllisaConnector> connectors = new ArrayList<>();
+    final Map<String, ConnectorController> controllers = new LinkedHashMap<>();
+    tenantIds.forEach(tenantId -> {
+      final TenantConfig config = TenantConfig.forTenant(tenantId);
+      final AllisaConnector connector = createConnector(config, laneClients, sharedUpsertExecutor.lane(tenantId));
+      connectors.add(connector);
+      controllers.put(tenantId, buildConnectorController(config, connector));
+    });
+    stopOnShutdown(connectors, controllers.values(), laneClients.values());
+
+    final ExecutorService runners = Executors.newFixedThreadPool(controllers.size(),
+        new ThreadFactoryBuilder().setNameFormat("allisa-tenant-%d").build());
+    controllers.forEach((tenantId, controller) -> runners.execute(() -> {
+      log.info("Starting connector of tenant {}", tenantId);
+      try {
+        controller.start();
+      } catch (Exception e) {
+        log.error("Connector of tenant {} failed", tenantId, e);
+      }
+    }));
+    runners.shutdown();
+    runners.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    sharedUpsertExecutor.shutdown();
+  }
+
+  /**
+   * Stops the connectors in order when the process is asked to terminate, e.g. when its container is stopped. The
+   * connectors first finish their posts and tag sync pages in flight, concurrently, so that they share the shutdown
+   * timeout. Then the controllers stop and the HTTP connections of all lanes are closed.
+   */
+  private static void stopOnShutdown(List<AllisaConnector> connectors, Collection<ConnectorController> controllers,
+                                     Collection<OkHttpClient> httpClients) {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      CompletableFuture.allOf(connectors.stream()
+          .map(connector -> CompletableFuture.runAsync(connector::shutdown)
+              .exceptionally(e -> {
+                log.warn("Failed to shut down connector", e);
+                return null;
+              }))
+          .toArray(CompletableFuture[]::new))
+          .join();
+      controllers.forEach(ConnectorController::stop);
+      httpClients.forEach(httpClient -> {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+      });
+      log.info("Connector stopped");
+    }, "allisa-shutdown"));
   }
 
   /**
@@ -66,8 +218,40 @@ public class ConnectorLauncher {
 
     //optional
     ALLISA_POST_FIELD_MAPPING("ALLISA_POST_FIELD_MAPPING"),
+    ALLISA_CASE_FIELDS_PARAMETER("ALLISA_CASE_FIELDS_PARAMETER"),
+    ALLISA_REFRESH_SKIP_UNCHANGED("ALLISA_REFRESH_SKIP_UNCHANGED"),
+    ALLISA_PAGE_CACHE_SECONDS("ALLISA_PAGE_CACHE_SECONDS"),
+    ALLISA_FAST_START("ALLISA_FAST_START"),
+    ALLISA_SHUTDOWN_TIMEOUT_SECONDS("ALLISA_SHUTDOWN_TIMEOUT_SECONDS"),
+    ALLISA_POST_MAX_REQUESTS("ALLISA_POST_MAX_REQUESTS"),
+    ALLISA_LOOKUP_MAX_REQUESTS("ALLISA_LOOKUP_MAX_REQUESTS"),
+    ALLISA_SYNC_MAX_REQUESTS("ALLISA_SYNC_MAX_REQUESTS"),
+    ALLISA_POST_TIME_BUDGET_SECONDS("ALLISA_POST_TIME_BUDGET_SECONDS"),
+    ALLISA_POST_MAX_CONCURRENCY("ALLISA_POST_MAX_CONCURRENCY"),
+    ALLISA_HEDGE_CASE_SEARCH("ALLISA_HEDGE_CASE_SEARCH"),
+    ALLISA_HEDGE_MAX_PERCENT("ALLISA_HEDGE_MAX_PERCENT"),
     TAG_UPSERT_PATH("TAG_UPSERT_PATH"),
     TAG_UPSERT_BATCH_SIZE("TAG_UPSERT_BATCH_SIZE"),
+    TAG_UPSERT_SUB_BATCH_SIZE("TAG_UPSERT_SUB_BATCH_SIZE"),
+    TAG_UPSERT_PARALLELISM("TAG_UPSERT_PARALLELISM"),
+    TAG_UPSERT_DEDUP_WINDOW_SECONDS("TAG_UPSERT_DEDUP_WINDOW_SECONDS"),
+    ALLISA_SYNC_WORKERS("ALLISA_SYNC_WORKERS"),
+    ALLISA_SYNC_PROBE("ALLISA_SYNC_PROBE"),
+    ALLISA_SYNC_MAX_IDLE_SKIPS("ALLISA_SYNC_MAX_IDLE_SKIPS"),
+    ALLISA_SYNC_CURSOR_CHECK("ALLISA_SYNC_CURSOR_CHECK"),
+    ALLISA_SYNC_TIME_BUDGET_SECONDS("ALLISA_SYNC_TIME_BUDGET_SECONDS"),
+    ALLISA_SYNC_MAX_PAGES("ALLISA_SYNC_MAX_PAGES"),
+    ALLISA_BOOTSTRAP_FILE("ALLISA_BOOTSTRAP_FILE"),
+    ALLISA_LEADER_LEASE_FILE("ALLISA_LEADER_LEASE_FILE"),
+    ALLISA_LEADER_LEASE_SECONDS("ALLISA_LEADER_LEASE_SECONDS"),
+    ALLISA_REPLICA_ID("ALLISA_REPLICA_ID"),
+    ALLISA_WEBHOOK_PORT("ALLISA_WEBHOOK_PORT"),
+    ALLISA_WEBHOOK_SECRET("ALLISA_WEBHOOK_SECRET"),
+    ALLISA_WEBHOOK_SYNC_INTERVAL_MINUTES("ALLISA_WEBHOOK_SYNC_INTERVAL_MINUTES"),
+    ALLISA_TENANTS("ALLISA_TENANTS"),
+    ALLISA_TENANT_WORKERS("ALLISA_TENANT_WORKERS"),
+    ALLISA_TENANT_MAX_REQUESTS("ALLISA_TENANT_MAX_REQUESTS"),
+    ALLISA_METRICS_SUMMARY_MINUTES("ALLISA_METRICS_SUMMARY_MINUTES"),
     TIMEZONE("TIMEZONE"),
     ADD_SUMMARY_TO_NARRATIVE("ADD_SUMMARY_TO_NARRATIVE");
 
@@ -83,16 +267,26 @@ public class ConnectorLauncher {
     }
   }
 
-  private static String getBaseUrl() {
+  static List<String> getTenantIds() {
     return RuntimeConfig
-        .getString(AllisaConnectorConfigKey.ALLISA_BASE_URL)
-        .orElseThrow(() -> new IllegalArgumentException("ALLISA_BASE_URL needs to be set"));
+        .getString(AllisaConnectorConfigKey.ALLISA_TENANTS)
+        .map(tenants -> Splitter.on(',').trimResults().omitEmptyStrings().splitToList(tenants))
+        .orElse(Collections.emptyList());
   }
 
-  private static String getAllisaApiKey() {
-    return RuntimeConfig
-        .getString(AllisaConnectorConfigKey.ALLISA_API_KEY)
+  /**
+   * Tenants must set their own Allisa instance, they don't share the one of the unprefixed config.
+   */
+  private static String getBaseUrl(TenantConfig config) {
+    return config.getString(AllisaConnectorConfigKey.ALLISA_BASE_URL)
+        .orElseThrow(() -> new IllegalArgumentException(
+            config.keyName(AllisaConnectorConfigKey.ALLISA_BASE_URL) + " needs to be set"));
+  }
+
+  private static String getAllisaApiKey(TenantConfig config) {
+    return config.getString(AllisaConnectorConfigKey.ALLISA_API_KEY)
         .map(key -> "apikey " + key)
-        .orElseThrow(() -> new IllegalArgumentException("ALLISA_API_KEY needs to be set"));
+        .orElseThrow(() -> new IllegalArgumentException(
+            config.keyName(AllisaConnectorConfigKey.ALLISA_API_KEY) + " needs to be set"));
   }
 }
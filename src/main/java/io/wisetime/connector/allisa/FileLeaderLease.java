@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Leader lease kept in a file, e.g. on a volume shared by the connector replicas. The file holds the current holder,
+ * the fencing token and renewal count of its lease, the lease duration and the values of the holder. Reads and updates
+ * happen under an exclusive lock of a separate lock file. Updates are written to a temporary file that then replaces
+ * the lease file, so that a crash or a full volume can't leave a partial lease behind. A lease file that can't be read
+ * is an error rather than a free lease, as that would reset the fencing token and the values.
+ *
+ * The file holds no expiry time, as the clocks of the replicas may differ. Instead, a replica considers the lease
+ * expired once it has seen it unchanged for the lease duration, measured on its own monotonic clock. The holder
+ * renews the lease before then, which changes its renewal count.
+ */
+class FileLeaderLease implements LeaderLease {
+
+  private static final String HOLDER = "holder";
+  private static final String FENCING_TOKEN = "fencingToken";
+  private static final String RENEWALS = "renewals";
+  private static final String TTL_MILLIS = "ttlMillis";
+  private static final String VALUE_PREFIX = "value.";
+
+  private final Path leaseFile;
+  private final Path lockFile;
+  private final Path updateFile;
+  private final LongSupplier nanoTime;
+  // the lease as this replica last saw it, and when, guarded by FileLeaderLease.class
+  private Lease observedLease;
+  private long observedAtNanos;
+
+  FileLeaderLease(Path leaseFile) {
+    this(leaseFile, System::nanoTime);
+  }
+
+  FileLeaderLease(Path leaseFile, LongSupplier nanoTime) {
+    this.leaseFile = leaseFile;
+    this.lockFile = leaseFile.resolveSibling(leaseFile.getFileName() + ".lock");
+    this.updateFile = leaseFile.resolveSibling(leaseFile.getFileName() + ".update");
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public OptionalLong tryAcquire(String holder, Duration ttl) {
+    final Lease acquired = update(current -> {
+      if (current.holder.equals(holder)) {
+        return current.renewed(ttl);
+      }
+      if (current.holder.isEmpty() || hasExpired(current)) {
+        return current.takenOverBy(holder, ttl);
+      }
+      return null;
+    });
+    return acquired != null ? OptionalLong.of(acquired.fencingToken) : OptionalLong.empty();
+  }
+
+  @Override
+  public void release(String holder) {
+    update(current -> current.holder.equals(holder) ? current.takenOverBy("", Duration.ZERO) : null);
+  }
+
+  @Override
+  public Optional<String> getValue(String key) {
+    final AtomicReference<Lease> current = new AtomicReference<>();
+    update(lease -> {
+      current.set(lease);
+      return null;
+    });
+    return Optional.ofNullable(current.get().values.get(key));
+  }
+
+  @Override
+  public boolean putValue(String holder, long fencingToken, String key, String value) {
+    return update(current -> current.holder.equals(holder) && current.fencingToken == fencingToken
+        ? current.withValue(key, value)
+        : null) != null;
+  }
+
+  private boolean hasExpired(Lease current) {
+    final long now = nanoTime.getAsLong();
+    if (observedLease == null || !observedLease.isSameRenewal(current)) {
+      observedLease = current;
+      observedAtNanos = now;
+      return false;
+    }
+    return now - observedAtNanos >= TimeUnit.MILLISECONDS.toNanos(current.ttlMillis);
+  }
+
+  /**
+   * Replaces the lease with the result of the update, unless the update returns null. Returns the new lease, or null
+   * if it wasn't replaced.
+   */
+  private Lease update(Function<Lease, Lease> update) {
+    // file locks are held by the JVM, threads of the same JVM need to take turns
+    synchronized (FileLeaderLease.class) {
+      return updateLocked(update);
+    }
+  }
+
+  private Lease updateLocked(Function<Lease, Lease> update) {
+    try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         FileLock ignored = lockChannel.lock()) {
+      final Lease current = Files.exists(leaseFile)
+          ? Lease.parse(new String(Files.readAllBytes(leaseFile), StandardCharsets.UTF_8), leaseFile)
+          : Lease.NONE;
+      final Lease updated = update.apply(current);
+      if (updated == null) {
+        return null;
+      }
+      try (FileChannel channel = FileChannel.open(updateFile,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        final ByteBuffer content = ByteBuffer.wrap(updated.format());
+        while (content.hasRemaining()) {
+          channel.write(content);
+        }
+        channel.force(true);
+      }
+      Files.move(updateFile, leaseFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return updated;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to update leader lease " + leaseFile, e);
+    }
+  }
+
+  private static class Lease {
+    private static final Lease NONE = new Lease("", 0, 0, 0, ImmutableMap.of());
+
+    private final String holder;
+    private final long fencingToken;
+    private final long renewals;
+    private final long ttlMillis;
+    private final Map<String, String> values;
+
+    private Lease(String holder, long fencingToken, long renewals, long ttlMillis, Map<String, String> values) {
+      this.holder = holder;
+      this.fencingToken = fencingToken;
+      this.renewals = renewals;
+      this.ttlMillis = ttlMillis;
+      this.values = ImmutableMap.copyOf(values);
+    }
+
+    private Lease renewed(Duration ttl) {
+      return new Lease(holder, fencingToken, renewals + 1, ttl.toMillis(), values);
+    }
+
+    private Lease takenOverBy(String newHolder, Duration ttl) {
+      return new Lease(newHolder, fencingToken + 1, 0, ttl.toMillis(), values);
+    }
+
+    private Lease withValue(String key, String value) {
+      final Map<String, String> updatedValues = new HashMap<>(values);
+      updatedValues.put(key, value);
+      return new Lease(holder, fencingToken, renewals, ttlMillis, updatedValues);
+    }
+
+    private boolean isSameRenewal(Lease other) {
+      return holder.equals(other.holder) && fencingToken == other.fencingToken && renewals == other.renewals;
+    }
+
+    private static Lease parse(String content, Path leaseFile) {
+      final Properties properties = new Properties();
+      try {
+        properties.load(new StringReader(content));
+        final ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+        properties.stringPropertyNames().stream()
+            .filter(name -> name.startsWith(VALUE_PREFIX))
+            .forEach(name -> values.put(name.substring(VALUE_PREFIX.length()), properties.getProperty(name)));
+        return new Lease(
+            requireProperty(properties, HOLDER),
+            Long.parseLong(requireProperty(properties, FENCING_TOKEN)),
+            Long.parseLong(requireProperty(properties, RENEWALS)),
+            Long.parseLong(requireProperty(properties, TTL_MILLIS)),
+            values.build());
+      } catch (IOException | IllegalArgumentException e) {
+        throw new IllegalStateException("Leader lease " + leaseFile + " is damaged, remove it to reset the lease "
+            + "and the tag sync cursors", e);
+      }
+    }
+
+    private static String requireProperty(Properties properties, String name) {
+      final String value = properties.getProperty(name);
+      if (value == null) {
+        throw new IllegalArgumentException("Missing " + name);
+      }
+      return value;
+    }
+
+    private byte[] format() throws IOException {
+      final Properties properties = new Properties();
+      properties.setProperty(HOLDER, holder);
+      properties.setProperty(FENCING_TOKEN, Long.toString(fencingToken));
+      properties.setProperty(RENEWALS, Long.toString(renewals));
+      properties.setProperty(TTL_MILLIS, Long.toString(ttlMillis));
+      values.forEach((key, value) -> properties.setProperty(VALUE_PREFIX + key, value));
+      final ByteArrayOutputStream content = new ByteArrayOutputStream();
+      properties.store(content, "Allisa connector leader lease");
+      return content.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Lanes of the traffic to Allisa. Each lane has its own connection pool, dispatcher and concurrency cap, so that e.g.
+ * a big tag refresh can't queue the posts of users behind it.
+ */
+enum HttpLane {
+
+  /**
+   * Time posts.
+   */
+  POST(AllisaConnectorConfigKey.ALLISA_POST_MAX_REQUESTS),
+
+  /**
+   * Case lookups of posted time, and the connectivity checks.
+   */
+  LOOKUP(AllisaConnectorConfigKey.ALLISA_LOOKUP_MAX_REQUESTS),
+
+  /**
+   * Case listings of the tag sync and refresh.
+   */
+  SYNC(AllisaConnectorConfigKey.ALLISA_SYNC_MAX_REQUESTS);
+
+  private static final int DEFAULT_MAX_REQUESTS = 5;
+
+  private final AllisaConnectorConfigKey maxRequestsKey;
+
+  HttpLane(AllisaConnectorConfigKey maxRequestsKey) {
+    this.maxRequestsKey = maxRequestsKey;
+  }
+
+  /**
+   * Maximum number of concurrent requests of a connector in this lane.
+   */
+  int maxRequests(TenantConfig config) {
+    return Math.max(1, config.getInt(maxRequestsKey).orElse(DEFAULT_MAX_REQUESTS));
+  }
+
+  String metricName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Creates the base clients of the lanes. Their connection pools and dispatchers are shared by all tenants.
+   *
+   * @param maxRequestsPerHost maximum number of concurrent asynchronous requests to one Allisa instance, by lane
+   */
+  static Map<HttpLane, OkHttpClient> newClients(ToIntFunction<HttpLane> maxRequestsPerHost) {
+    final Map<HttpLane, OkHttpClient> clients = new EnumMap<>(HttpLane.class);
+    for (HttpLane lane : values()) {
+      final Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequestsPerHost(maxRequestsPerHost.applyAsInt(lane));
+      clients.put(lane, new OkHttpClient.Builder()
+          .dispatcher(dispatcher)
+          .connectionPool(new ConnectionPool())
+          .build());
+    }
+    return clients;
+  }
+}
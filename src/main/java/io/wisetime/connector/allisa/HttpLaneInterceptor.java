@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.LatencyTracker;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Caps the concurrent requests of a connector in an {@link HttpLane}. The dispatcher of the lane only caps
+ * asynchronous calls, this also caps the blocking ones. Reports the 95th percentile of the time requests waited for
+ * their turn and of their latency to the {@link ConnectorMetrics}, e.g. `allisa.http.wait.p95.post`.
+ */
+class HttpLaneInterceptor implements Interceptor {
+
+  private static final long CANCEL_CHECK_MILLIS = 100;
+  private static final int REPORT_INTERVAL = 50;
+
+  private final Semaphore permits;
+  private final String waitGauge;
+  private final String latencyGauge;
+  private final ConnectorMetrics metrics;
+  private final LatencyTracker waits = new LatencyTracker(256, 20);
+  private final LatencyTracker latencies = new LatencyTracker(256, 20);
+  private final AtomicLong requests = new AtomicLong();
+
+  HttpLaneInterceptor(HttpLane lane, int maxRequests, ConnectorMetrics metrics) {
+    this.permits = new Semaphore(maxRequests, true);
+    this.waitGauge = ConnectorMetrics.HTTP_WAIT + "." + lane.metricName();
+    this.latencyGauge = ConnectorMetrics.HTTP_LATENCY + "." + lane.metricName();
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    final long queuedAt = System.nanoTime();
+    acquire(chain);
+    final long startedAt = System.nanoTime();
+    try {
+      return chain.proceed(chain.request());
+    } finally {
+      permits.release();
+      record(queuedAt, startedAt, System.nanoTime());
+    }
+  }
+
+  private void acquire(Chain chain) throws IOException {
+    try {
+      // calls are canceled when their deadline expires, they then don't need their turn anymore
+      while (!permits.tryAcquire(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (chain.call().isCanceled()) {
+          throw new IOException("Canceled");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a turn to call Allisa");
+    }
+  }
+
+  private void record(long queuedAt, long startedAt, long finishedAt) {
+    waits.record(TimeUnit.NANOSECONDS.toMillis(startedAt - queuedAt));
+    latencies.record(TimeUnit.NANOSECONDS.toMillis(finishedAt - startedAt));
+    // gauge changes are logged, so they are reported every few requests only
+    if (requests.incrementAndGet() % REPORT_INTERVAL == 0) {
+      waits.percentile(0.95).ifPresent(wait -> metrics.setGauge(waitGauge, wait));
+      latencies.percentile(0.95).ifPresent(latency -> metrics.setGauge(latencyGauge, latency));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.ApiResponse;
+import io.wisetime.connector.allisa.util.NativeImage;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The JSON codec of the connector, for Allisa responses and notifications as well as for copies of WiseTime
+ * entities. Readers are immutable and thread safe, so they are built once per type and shared.
+ */
+final class JsonCodec {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonCodec.class);
+
+  // generates property accessors instead of calling them through reflection, if it is on the class path
+  private static final String BLACKBIRD_MODULE = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+
+  static final ObjectMapper MAPPER = createMapper();
+
+  static final ObjectReader CASES_READER = MAPPER.readerFor(new TypeReference<ApiResponse<AllisaCase>>() { });
+
+  static final ObjectReader CASE_READER = MAPPER.readerFor(AllisaCase.class);
+
+  private static final Map<JavaType, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+  static {
+    READERS.put(CASES_READER.getValueType(), CASES_READER);
+    READERS.put(CASE_READER.getValueType(), CASE_READER);
+  }
+
+  private JsonCodec() {
+  }
+
+  /**
+   * Returns the shared reader for the type, e.g. for a Retrofit response type.
+   */
+  static ObjectReader readerFor(Type type) {
+    return READERS.computeIfAbsent(MAPPER.constructType(type), MAPPER::readerFor);
+  }
+
+  private static ObjectMapper createMapper() {
+    // Allisa lists columns the connector doesn't read
+    final ObjectMapper mapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    if (NativeImage.isRuntime()) {
+      // the accessors Blackbird generates can't be loaded by a native image, which compiles reflection ahead of time
+      return mapper;
+    }
+    try {
+      mapper.registerModule((Module) Class.forName(BLACKBIRD_MODULE).getDeclaredConstructor().newInstance());
+    } catch (ReflectiveOperationException | LinkageError e) {
+      log.info("Jackson Blackbird module is not available, JSON properties are accessed through reflection");
+    }
+    return mapper;
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Decodes Allisa responses with the shared readers of the {@link JsonCodec}. Requests to Allisa are multipart forms,
+ * so there is no request body converter.
+ */
+class JsonConverterFactory extends Converter.Factory {
+
+  @Override
+  public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+    final ObjectReader reader = JsonCodec.readerFor(type);
+    return body -> {
+      try (ResponseBody responseBody = body) {
+        return reader.readValue(responseBody.byteStream());
+      }
+    };
+  }
+}
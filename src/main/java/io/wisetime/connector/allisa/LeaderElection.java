@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Elects one of the connector replicas to run the tag sync, by holding a lease that is renewed in the background.
+ *
+ * The lease is renewed three times per lease duration, so a sync that takes longer than the lease keeps it. If the
+ * leader stops renewing, e.g. because it crashed, another replica takes over once the lease has expired. A replica
+ * stops considering itself the leader when its lease would expire, even if it couldn't reach the lease store, so that
+ * two replicas never sync at the same time. Values the leader keeps in the lease store are fenced by the token of its
+ * lease, so that a leader that missed losing its lease can't overwrite the values of the next leader.
+ */
+class LeaderElection {
+
+  private static final Logger log = LoggerFactory.getLogger(LeaderElection.class);
+
+  private final LeaderLease lease;
+  private final String replicaId;
+  private final Duration ttl;
+  private ScheduledExecutorService renewals;
+  private volatile long leaderUntilNanos;
+  private volatile boolean leader;
+  private volatile long fencingToken;
+
+  LeaderElection(LeaderLease lease, String replicaId, Duration ttl) {
+    this.lease = lease;
+    this.replicaId = replicaId;
+    this.ttl = ttl;
+  }
+
+  void start() {
+    renewals = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("allisa-leader-election-%d").build());
+    final long period = Math.max(1, ttl.toMillis() / 3);
+    renewals.scheduleWithFixedDelay(this::renew, 0, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops renewing the lease and gives it up, so that another replica can take over right away.
+   */
+  void stop() {
+    if (renewals != null) {
+      renewals.shutdownNow();
+      try {
+        // a running renewal must not make this replica the leader again
+        renewals.awaitTermination(ttl.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    leaderUntilNanos = 0;
+    leader = false;
+    try {
+      lease.release(replicaId);
+    } catch (RuntimeException e) {
+      log.warn("Failed to release the leader lease, another replica takes over once it has expired", e);
+    }
+  }
+
+  boolean isLeader() {
+    return leader && System.nanoTime() - leaderUntilNanos < 0;
+  }
+
+  Optional<String> getValue(String key) {
+    return lease.getValue(key);
+  }
+
+  /**
+   * Stores a value in the lease store, for the next leader to continue from.
+   *
+   * @throws LeaseLostException if this replica isn't the leader, or another replica has taken over the lease
+   */
+  void putValue(String key, String value) {
+    final long token = fencingToken;
+    if (!isLeader() || !lease.putValue(replicaId, token, key, value)) {
+      leader = false;
+      throw new LeaseLostException("Replica " + replicaId + " no longer holds the leader lease");
+    }
+  }
+
+  void renew() {
+    // the lease runs from before the request, in case the request was slow
+    final long requestedAt = System.nanoTime();
+    final OptionalLong token;
+    try {
+      token = lease.tryAcquire(replicaId, ttl);
+    } catch (RuntimeException e) {
+      log.warn("Failed to renew the leader lease of replica {}", replicaId, e);
+      return;
+    }
+    if (token.isPresent() != isLeader()) {
+      log.info(token.isPresent()
+          ? "Replica {} is now running the tag sync" : "Replica {} is no longer running the tag sync", replicaId);
+    }
+    fencingToken = token.orElse(0);
+    leaderUntilNanos = requestedAt + ttl.toNanos();
+    leader = token.isPresent();
+  }
+}
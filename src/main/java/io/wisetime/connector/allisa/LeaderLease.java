@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * A lease in a store shared by all connector replicas. At most one replica holds the lease at a time. The fencing
+ * token of the lease grows each time the lease changes hands, so that a replica that lost the lease can't overwrite
+ * the values of the new holder.
+ *
+ * The store also keeps values for the holder, e.g. the tag sync cursors, so that the next holder continues from them.
+ */
+interface LeaderLease {
+
+  /**
+   * Acquires the lease for the holder, or renews it if the holder already has it. Fails if another holder has a lease
+   * that hasn't expired.
+   *
+   * @return the fencing token of the holder's lease, which then lasts for the given time from now, or empty if the
+   *     holder doesn't have the lease
+   */
+  OptionalLong tryAcquire(String holder, Duration ttl);
+
+  /**
+   * Gives up the lease, if the holder has it, so that another replica can take over right away.
+   */
+  void release(String holder);
+
+  Optional<String> getValue(String key);
+
+  /**
+   * Stores the value, if the holder still has the lease with the given fencing token.
+   *
+   * @return whether the value was stored
+   */
+  boolean putValue(String holder, long fencingToken, String key, String value);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the values of the tag sync in the leader lease store, so that every replica continues from the same cursors
+ * when it takes over the sync. Writes are fenced by the lease: a replica that lost the lease gets a
+ * {@link LeaseLostException} instead of overwriting the cursors of the new leader.
+ *
+ * Values only worth caching on the replica stay in its own store. Values the replica saved in its own store before the
+ * leader election was enabled are read from there until the leader saves them to the lease store.
+ */
+class LeaseConnectorStore implements ConnectorStore {
+
+  private final LeaderElection leaderElection;
+  private final ConnectorStore localStore;
+  private final Predicate<String> isLocalKey;
+
+  LeaseConnectorStore(LeaderElection leaderElection, ConnectorStore localStore, Predicate<String> isLocalKey) {
+    this.leaderElection = leaderElection;
+    this.localStore = localStore;
+    this.isLocalKey = isLocalKey;
+  }
+
+  @Override
+  public void putString(String key, String value) {
+    if (isLocalKey.test(key)) {
+      localStore.putString(key, value);
+    } else {
+      leaderElection.putValue(key, value);
+    }
+  }
+
+  @Override
+  public Optional<String> getString(String key) {
+    if (isLocalKey.test(key)) {
+      return localStore.getString(key);
+    }
+    final Optional<String> value = leaderElection.getValue(key);
+    return value.isPresent() ? value : localStore.getString(key);
+  }
+
+  @Override
+  public void putLong(String key, long value) {
+    if (isLocalKey.test(key)) {
+      localStore.putLong(key, value);
+    } else {
+      leaderElection.putValue(key, Long.toString(value));
+    }
+  }
+
+  @Override
+  public Optional<Long> getLong(String key) {
+    if (isLocalKey.test(key)) {
+      return localStore.getLong(key);
+    }
+    final Optional<String> value = leaderElection.getValue(key);
+    return value.isPresent() ? value.map(Long::parseLong) : localStore.getLong(key);
+  }
+}
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+/**
+ * Thrown when a replica finds out during the tag sync that it no longer holds the leader lease. The sync stops, the
+ * new leader continues from the cursors saved so far.
+ */
+class LeaseLostException extends RuntimeException {
+
+  LeaseLostException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks cheaply whether Allisa has new cases, so that the full new case sync only runs when needed.
+ *
+ * The probe remembers the size of the case listing and the ID of its last case, as seen after the last sync. As the
+ * listing is ordered by case ID, new cases are appended to it: if the last case is still at the same position and
+ * there is no case after it, nothing was added. Each probe reads two single row pages. While nothing changes, probes
+ * are skipped for an increasing number of ticks.
+ */
+class NewCaseProbe {
+
+  private static final Logger log = LoggerFactory.getLogger(NewCaseProbe.class);
+
+  private static final String PROBE_LISTING_SIZE = "allisa_probe_listing_size";
+  private static final String PROBE_LAST_CASE_ID = "allisa_probe_last_case_id";
+  private static final long UNKNOWN = -1;
+
+  private final AllisaApiService allisaApiService;
+  private final ConnectorStore connectorStore;
+  private final String caseType;
+  private final String listingSizeKey;
+  private final String lastCaseIdKey;
+  private final int maxIdleSkips;
+  private int idleProbes;
+  private int skipsLeft;
+
+  /**
+   * @param keySuffix appended to the connector store keys of the probe, to keep one baseline per case type
+   */
+  NewCaseProbe(AllisaApiService allisaApiService, ConnectorStore connectorStore, String caseType, String keySuffix,
+               int maxIdleSkips) {
+    this.allisaApiService = allisaApiService;
+    this.connectorStore = connectorStore;
+    this.caseType = caseType;
+    this.listingSizeKey = PROBE_LISTING_SIZE + keySuffix;
+    this.lastCaseIdKey = PROBE_LAST_CASE_ID + keySuffix;
+    this.maxIdleSkips = maxIdleSkips;
+  }
+
+  /**
+   * Whether the new case sync should run on this tick.
+   */
+  boolean shouldSync() {
+    if (skipsLeft > 0) {
+      skipsLeft--;
+      return false;
+    }
+    if (listingChanged()) {
+      idleProbes = 0;
+      return true;
+    }
+    idleProbes++;
+    // back off exponentially while Allisa is idle
+    skipsLeft = Math.min(maxIdleSkips, 1 << Math.min(idleProbes - 1, 16));
+    log.debug("No new cases in Allisa, skipping the next {} tag syncs", skipsLeft);
+    return false;
+  }
+
+  /**
+   * Records the listing after a sync, as the baseline for the next probes.
+   *
+   * @param syncedCases number of new cases the sync found
+   * @param lastSyncedCaseId highest case ID that has been synced
+   * @param absentPosition a listing position that had no case at the end of the sync
+   */
+  void afterSync(long syncedCases, long lastSyncedCaseId, long absentPosition) {
+    try {
+      // unless cases were deleted, the listing grew by the number of synced cases
+      final long storedSize = connectorStore.getLong(listingSizeKey).orElse(UNKNOWN);
+      long listingSize = storedSize + syncedCases;
+      if (storedSize == UNKNOWN || !isListingSize(listingSize)) {
+        listingSize = findListingSize(allisaApiService, caseType, absentPosition);
+      }
+      final long lastCaseId = listingSize == 0
+          ? 0
+          : allisaApiService.getAllisaCaseAt(caseType, listingSize).map(AllisaCase::getCaseId).orElse(Long.MAX_VALUE);
+      if (lastCaseId > lastSyncedCaseId) {
+        // cases were added after the sync read its last page: sync again on the next tick
+        resetBaseline();
+        return;
+      }
+      connectorStore.putLong(listingSizeKey, listingSize);
+      connectorStore.putLong(lastCaseIdKey, lastCaseId);
+    } catch (RuntimeException e) {
+      log.warn("Failed to record the Allisa case listing size, the next tag sync won't be skipped", e);
+      resetBaseline();
+    }
+  }
+
+  private boolean listingChanged() {
+    final long listingSize = connectorStore.getLong(listingSizeKey).orElse(UNKNOWN);
+    final Optional<Long> lastCaseId = connectorStore.getLong(lastCaseIdKey);
+    if (listingSize == UNKNOWN || !lastCaseId.isPresent()) {
+      return true;
+    }
+    try {
+      final boolean sameLastCase = listingSize == 0 || allisaApiService.getAllisaCaseAt(caseType, listingSize)
+          .map(allisaCase -> allisaCase.getCaseId() == lastCaseId.get())
+          .orElse(false);
+      return !sameLastCase || allisaApiService.getAllisaCaseAt(caseType, listingSize + 1).isPresent();
+    } catch (RuntimeException e) {
+      log.warn("Failed to probe Allisa for new cases, running full tag sync", e);
+      return true;
+    }
+  }
+
+  /**
+   * Forgets the baseline, so that the next probe doesn't skip the sync.
+   */
+  void reset() {
+    idleProbes = 0;
+    skipsLeft = 0;
+    resetBaseline();
+  }
+
+  private boolean isListingSize(long size) {
+    return (size == 0 || allisaApiService.getAllisaCaseAt(caseType, size).isPresent())
+        && !allisaApiService.getAllisaCaseAt(caseType, size + 1).isPresent();
+  }
+
+  /**
+   * Binary search for the last position with a case. Positions up to the size have a case, positions after it don't.
+   * Needs O(log n) single row requests.
+   *
+   * @param absentPosition a listing position that is likely to have no case
+   */
+  static long findListingSize(AllisaApiService allisaApiService, String caseType, long absentPosition) {
+    long present = 0;
+    long absent = Math.max(1, absentPosition);
+    while (allisaApiService.getAllisaCaseAt(caseType, absent).isPresent()) {
+      // the listing grew in the meantime
+      present = absent;
+      absent *= 2;
+    }
+    while (absent - present > 1) {
+      final long middle = present + (absent - present) / 2;
+      if (allisaApiService.getAllisaCaseAt(caseType, middle).isPresent()) {
+        present = middle;
+      } else {
+        absent = middle;
+      }
+    }
+    return present;
+  }
+
+  private void resetBaseline() {
+    connectorStore.putLong(listingSizeKey, UNKNOWN);
+  }
+}
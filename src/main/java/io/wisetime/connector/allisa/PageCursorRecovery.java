@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import io.wisetime.connector.allisa.model.AllisaCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the listing page the new case sync should continue from.
+ *
+ * The sync stores the ID of the last synced case and the page it was on. When cases are deleted, the following cases
+ * move to earlier positions in the listing, so the stored page can be past the cases that haven't been synced yet.
+ * As the listing is ordered by case ID, the first case after the last synced one can be found with a binary search
+ * over single row pages.
+ */
+class PageCursorRecovery {
+
+  private static final Logger log = LoggerFactory.getLogger(PageCursorRecovery.class);
+
+  private final AllisaApiService allisaApiService;
+
+  PageCursorRecovery(AllisaApiService allisaApiService) {
+    this.allisaApiService = allisaApiService;
+  }
+
+  /**
+   * Returns the page holding the first case after the last synced case, or the stored page if that page is still a
+   * valid place to continue from. Checking the stored page needs two requests, finding the page O(log n) requests.
+   */
+  long recoverPage(String caseType, long lastSyncedCaseId, long storedPage, int pageSize) {
+    final long pageStart = (storedPage - 1) * pageSize + 1;
+    // cases before the stored page must have been synced, and the page after it must not start with a synced case
+    if ((storedPage <= 1 || isSynced(caseType, pageStart - 1, lastSyncedCaseId))
+        && !isSynced(caseType, pageStart + pageSize, lastSyncedCaseId)) {
+      return storedPage;
+    }
+
+    final long position = findFirstUnsynced(caseType, lastSyncedCaseId, pageStart + pageSize);
+    final long page = (position - 1) / pageSize + 1;
+    log.info("Case {} is no longer on page {}, continuing the tag sync on page {}", lastSyncedCaseId, storedPage, page);
+    return page;
+  }
+
+  /**
+   * Binary search for the first position that has no case or a case that hasn't been synced.
+   */
+  private long findFirstUnsynced(String caseType, long lastSyncedCaseId, long hint) {
+    long synced = 0;
+    long unsynced = Math.max(1, hint);
+    while (isSynced(caseType, unsynced, lastSyncedCaseId)) {
+      synced = unsynced;
+      unsynced *= 2;
+    }
+    while (unsynced - synced > 1) {
+      final long middle = synced + (unsynced - synced) / 2;
+      if (isSynced(caseType, middle, lastSyncedCaseId)) {
+        synced = middle;
+      } else {
+        unsynced = middle;
+      }
+    }
+    return unsynced;
+  }
+
+  private boolean isSynced(String caseType, long position, long lastSyncedCaseId) {
+    return allisaApiService.getAllisaCaseAt(caseType, position)
+        .map(AllisaCase::getCaseId)
+        .map(caseId -> caseId <= lastSyncedCaseId)
+        .orElse(false);
+  }
+}
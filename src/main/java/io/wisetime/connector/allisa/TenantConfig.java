@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.config.RuntimeConfigKey;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+
+/**
+ * Configuration of the connector for one Allisa instance.
+ *
+ * Without tenants, all values are read from {@link RuntimeConfig}. In multi-tenant mode, each tenant reads its values
+ * from config keys prefixed with the upper case tenant ID and {@value #KEY_SEPARATOR}, e.g. `ACME__ALLISA_BASE_URL`.
+ * These are read once when the tenant is set up. Keys a tenant doesn't set fall back to the unprefixed key, which is
+ * shared by all tenants, except for the {@link #TENANT_SCOPED_KEYS}.
+ */
+public class TenantConfig {
+
+  static final String KEY_SEPARATOR = "__";
+
+  /**
+   * The WiseTime API key, which is read by the WiseTime Connector library unless a tenant sets its own.
+   */
+  static final RuntimeConfigKey API_KEY = () -> "API_KEY";
+
+  /**
+   * Keys that each tenant must set itself, as sharing their values would mix up the Allisa instances, notifications or
+   * tag syncs of the tenants. In multi-tenant mode, the unprefixed keys are ignored.
+   */
+  static final Set<String> TENANT_SCOPED_KEYS = Stream.of(
+      API_KEY,
+      AllisaConnectorConfigKey.ALLISA_API_KEY,
+      AllisaConnectorConfigKey.ALLISA_BASE_URL,
+      AllisaConnectorConfigKey.ALLISA_BOOTSTRAP_FILE,
+      AllisaConnectorConfigKey.ALLISA_LEADER_LEASE_FILE,
+      AllisaConnectorConfigKey.ALLISA_WEBHOOK_PORT,
+      AllisaConnectorConfigKey.ALLISA_WEBHOOK_SECRET)
+      .map(RuntimeConfigKey::getConfigKey)
+      .collect(ImmutableSet.toImmutableSet());
+
+  private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+  private final String tenantId;
+  private final Map<String, String> values;
+
+  /**
+   * Configuration of a connector without tenants.
+   */
+  @Inject
+  public TenantConfig() {
+    this(null, ImmutableMap.of());
+  }
+
+  TenantConfig(String tenantId, Map<String, String> values) {
+    this.tenantId = tenantId;
+    this.values = ImmutableMap.copyOf(values);
+  }
+
+  /**
+   * Takes a snapshot of the config values of the tenant.
+   */
+  static TenantConfig forTenant(String tenantId) {
+    Preconditions.checkArgument(TENANT_ID.matcher(tenantId).matches(),
+        "Tenant ID %s may only contain letters, digits, '_' and '-'", tenantId);
+    final ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+    Stream.concat(Stream.of(API_KEY), Stream.of(AllisaConnectorConfigKey.values())).forEach(key ->
+        RuntimeConfig.getString(tenantKey(tenantId, key))
+            .ifPresent(value -> values.put(key.getConfigKey(), value)));
+    return new TenantConfig(tenantId, values.build());
+  }
+
+  /**
+   * Returns the ID of the tenant, or empty if the connector has no tenants.
+   */
+  public Optional<String> getTenantId() {
+    return Optional.ofNullable(tenantId);
+  }
+
+  public Optional<String> getString(RuntimeConfigKey key) {
+    if (tenantId != null && TENANT_SCOPED_KEYS.contains(key.getConfigKey())) {
+      return getOwnString(key);
+    }
+    final String value = values.get(key.getConfigKey());
+    return value != null ? Optional.of(value) : RuntimeConfig.getString(key);
+  }
+
+  public Optional<Integer> getInt(RuntimeConfigKey key) {
+    return getString(key).map(String::trim).map(Integer::parseInt);
+  }
+
+  public Optional<Boolean> getBoolean(RuntimeConfigKey key) {
+    return getString(key).map(String::trim).map(Boolean::parseBoolean);
+  }
+
+  /**
+   * Returns the value the tenant set itself, ignoring the shared value.
+   */
+  Optional<String> getOwnString(RuntimeConfigKey key) {
+    return Optional.ofNullable(values.get(key.getConfigKey()));
+  }
+
+  /**
+   * Returns the name of the key as the tenant sets it, for error messages.
+   */
+  String keyName(RuntimeConfigKey key) {
+    return tenantId != null ? tenantKey(tenantId, key).getConfigKey() : key.getConfigKey();
+  }
+
+  private static RuntimeConfigKey tenantKey(String tenantId, RuntimeConfigKey key) {
+    return () -> tenantId.toUpperCase(Locale.ROOT).replace('-', '_') + KEY_SEPARATOR + key.getConfigKey();
+  }
+}
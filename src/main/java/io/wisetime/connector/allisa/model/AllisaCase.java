@@ -4,7 +4,8 @@
 
 package io.wisetime.connector.allisa.model;
 
-import com.google.gson.annotations.SerializedName;
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.wisetime.generated.connect.UpsertTagRequest;
 import lombok.Getter;
 import lombok.Setter;
@@ -14,13 +15,22 @@ import lombok.experimental.Accessors;
 @Setter
 @Accessors(chain = true)
 public class AllisaCase {
-  @SerializedName(value="caseId", alternate = {"ID"})
+
+  /**
+   * The columns of Allisa's case listing that are read into a case. Other columns are skipped while decoding.
+   */
+  public static final String API_FIELDS = "ID,az,prname";
+
+  @JsonProperty("caseId")
+  @JsonAlias("ID")
   private long caseId;
 
-  @SerializedName(value="caseReference", alternate = {"az"})
+  @JsonProperty("caseReference")
+  @JsonAlias("az")
   private String caseReference;
 
-  @SerializedName(value="caseDescription", alternate = {"prname"})
+  @JsonProperty("caseDescription")
+  @JsonAlias("prname")
   private String caseDescription;
 
   public UpsertTagRequest toUpsertTagRequest(String tagUpsertPath, String prefixUrl) {
@@ -4,7 +4,7 @@
 
 package io.wisetime.connector.allisa.model;
 
-import com.google.gson.annotations.SerializedName;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -13,12 +13,12 @@ import lombok.experimental.Accessors;
 @Setter
 @Accessors(chain = true)
 public class ApiResponse<T> {
-  @SerializedName(value="result")
+  @JsonProperty("result")
   private Result<T> result;
 
-  @SerializedName(value="message")
+  @JsonProperty("message")
   private String message;
 
-  @SerializedName(value="code")
+  @JsonProperty("code")
   private int code;
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.model;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A page of listed cases, together with the validator that tells whether the page changed since it was read.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class CasePage {
+
+  /**
+   * The cases of the page, empty if the page is unchanged, as unchanged pages aren't decoded.
+   */
+  private final List<AllisaCase> cases;
+
+  private final String validator;
+
+  private final boolean unchanged;
+
+  public static CasePage changed(List<AllisaCase> cases, String validator) {
+    return new CasePage(cases, validator, false);
+  }
+
+  public static CasePage unchanged(String validator) {
+    return new CasePage(ImmutableList.of(), validator, true);
+  }
+}
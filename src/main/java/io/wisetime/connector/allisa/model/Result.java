@@ -4,7 +4,7 @@
 
 package io.wisetime.connector.allisa.model;
 
-import com.google.gson.annotations.SerializedName;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
@@ -14,6 +14,6 @@ import lombok.experimental.Accessors;
 @Setter
 @Accessors(chain = true)
 public class Result<T> {
-  @SerializedName(value="data")
+  @JsonProperty("data")
   private List<T> data;
 }
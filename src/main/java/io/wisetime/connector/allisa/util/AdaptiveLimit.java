@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+/**
+ * Limits the calls in flight to a service to what it can take, adapting the limit to the observed latency. The limit
+ * follows the gradient between the long-term average latency and the latency of each call: while calls are about as
+ * fast as usual, the limit grows by its square root, so that a few calls can queue at the service. Once calls slow
+ * down, the limit shrinks in proportion, down to half per call. Calls that time out or fail transiently shrink the
+ * limit by a tenth.
+ *
+ * The long-term average follows lasting latency changes, so a service that stays slower is eventually considered
+ * normal again.
+ */
+public class AdaptiveLimit {
+
+  // calls may take this much longer than the long-term average before the limit shrinks
+  private static final double TOLERANCE = 1.5;
+  private static final double MIN_GRADIENT = 0.5;
+  private static final double BACKOFF_RATIO = 0.9;
+  // share of the new estimate in the limit, so that a single call doesn't swing it
+  private static final double SMOOTHING = 0.2;
+  // number of calls the long-term average latency is taken over
+  private static final int LONG_WINDOW = 600;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private double limit;
+  private double longLatencyNanos;
+  private int inFlight;
+
+  public AdaptiveLimit(int minLimit, int initialLimit, int maxLimit) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = clamp(initialLimit);
+  }
+
+  /**
+   * @return false if the limit is reached, in which case the call must not be made. Otherwise, the call must be
+   *     reported with {@link #onSample(long)} or {@link #onDropped()} when it completes.
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= getLimit()) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Reports a call that completed, successfully or with a permanent failure, after the given latency.
+   */
+  public synchronized void onSample(long latencyNanos) {
+    final int busy = inFlight--;
+    final long latency = Math.max(1, latencyNanos);
+    longLatencyNanos = longLatencyNanos == 0
+        ? latency
+        : longLatencyNanos + (latency - longLatencyNanos) / LONG_WINDOW;
+    final double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longLatencyNanos / latency));
+    if (gradient == 1.0 && busy * 2 < limit) {
+      // the service isn't slow, but the limit isn't used either, it may not hold at full use
+      return;
+    }
+    final double estimate = limit * gradient + Math.sqrt(limit);
+    limit = clamp(limit * (1 - SMOOTHING) + estimate * SMOOTHING);
+  }
+
+  /**
+   * Reports a call that timed out or failed transiently.
+   */
+  public synchronized void onDropped() {
+    inFlight--;
+    limit = clamp(limit * BACKOFF_RATIO);
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  private double clamp(double value) {
+    return Math.max(minLimit, Math.min(maxLimit, value));
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.inject.Singleton;
+
+/**
+ * Latest values of the connector's gauges, by name. The connector logs a {@link #summary()} of all gauges on a
+ * regular schedule, see ALLISA_METRICS_SUMMARY_MINUTES, so that they can be followed in the logs.
+ */
+@Singleton
+public class ConnectorMetrics {
+
+  /**
+   * Estimated number of Allisa cases the new case sync still has to go through.
+   */
+  public static final String SYNC_BACKLOG = "allisa.sync.backlog";
+
+  /**
+   * Decoded size of the latest page of the Allisa case listing, divided by the number of cases it held. Case searches
+   * and single case requests are not measured.
+   */
+  public static final String CASE_BYTES = "allisa.case.bytes";
+
+  /**
+   * 95th percentile of the milliseconds recent Allisa requests waited for their turn, followed by the traffic lane.
+   */
+  public static final String HTTP_WAIT = "allisa.http.wait.p95";
+
+  /**
+   * 95th percentile of the latency of recent Allisa requests in milliseconds, followed by the traffic lane.
+   */
+  public static final String HTTP_LATENCY = "allisa.http.latency.p95";
+
+  /**
+   * Current limit of time posts in flight to Allisa, adapted to its latency.
+   */
+  public static final String POST_LIMIT = "allisa.post.limit";
+
+  /**
+   * Number of time posts rejected since the connector started, because the limit of posts in flight was reached.
+   */
+  public static final String POST_REJECTED = "allisa.post.rejected";
+
+  private final Map<String, Long> gauges = new ConcurrentHashMap<>();
+
+  public void setGauge(String name, long value) {
+    gauges.put(name, value);
+  }
+
+  public OptionalLong getGauge(String name) {
+    final Long value = gauges.get(name);
+    return value == null ? OptionalLong.empty() : OptionalLong.of(value);
+  }
+
+  public Map<String, Long> snapshot() {
+    return Collections.unmodifiableMap(new TreeMap<>(gauges));
+  }
+
+  /**
+   * @return the gauges ordered by name, e.g. `allisa.post.limit=12, allisa.sync.backlog=0`, or empty if none is set
+   */
+  public Optional<String> summary() {
+    if (gauges.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(snapshot().entrySet().stream()
+        .map(gauge -> gauge.getKey() + "=" + gauge.getValue())
+        .collect(Collectors.joining(", ")));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.time.Duration;
+
+/**
+ * A point in time by which an operation should be completed. Used to derive the timeouts of individual Allisa requests
+ * from the time budget of the whole operation.
+ */
+public final class Deadline {
+
+  private final long deadlineNanos;
+
+  private Deadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static Deadline after(Duration timeout) {
+    return new Deadline(System.nanoTime() + timeout.toNanos());
+  }
+
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+  }
+
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  /**
+   * Returns a deadline that leaves the given share of the remaining time to this operation, so that the rest of the
+   * budget remains available for subsequent steps.
+   */
+  public Deadline share(double fraction) {
+    return new Deadline(System.nanoTime() + (long) (remaining().toNanos() * fraction));
+  }
+
+  /**
+   * Returns this deadline, extended to be at least the given duration from now.
+   */
+  public Deadline atLeast(Duration minimum) {
+    final long minimumDeadline = System.nanoTime() + minimum.toNanos();
+    return minimumDeadline - deadlineNanos > 0 ? new Deadline(minimumDeadline) : this;
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline[remaining=" + remaining().toMillis() + "ms]";
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Shares a pool of worker threads between several lanes, e.g. one per tenant. Every lane has its own queue, and free
+ * workers take the next task from the lanes in turn. A lane with a long queue therefore can't hold up the tasks of
+ * the other lanes for longer than one task per lane.
+ */
+public class FairExecutor {
+
+  private final ExecutorService workers;
+  // guarded by this
+  private final Map<String, Queue<Runnable>> queues = new HashMap<>();
+  // lanes with queued tasks, in the order of their turns; guarded by this
+  private final Queue<String> turns = new ArrayDeque<>();
+
+  public FairExecutor(ExecutorService workers) {
+    this.workers = workers;
+  }
+
+  /**
+   * Returns an executor that runs its tasks on the shared workers, in turn with the tasks of the other lanes.
+   */
+  public Executor lane(String name) {
+    return task -> submit(name, task);
+  }
+
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  private void submit(String lane, Runnable task) {
+    synchronized (this) {
+      final Queue<Runnable> queue = queues.computeIfAbsent(lane, name -> new ArrayDeque<>());
+      queue.add(task);
+      if (queue.size() == 1) {
+        turns.add(lane);
+      }
+    }
+    // every submitted task schedules one run, which takes the task of whichever lane's turn it is
+    workers.execute(this::runNext);
+  }
+
+  private void runNext() {
+    final Runnable task;
+    synchronized (this) {
+      final String lane = turns.poll();
+      if (lane == null) {
+        return;
+      }
+      final Queue<Runnable> queue = queues.get(lane);
+      task = queue.poll();
+      if (!queue.isEmpty()) {
+        turns.add(lane);
+      }
+    }
+    task.run();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for idempotent reads: if a request has not answered by the observed p95 latency, a second identical
+ * request is sent and whichever answers first wins. The number of hedges is capped with a token bucket, so that hedging
+ * never adds more than the configured percentage of extra load, even when the server slows down as a whole.
+ */
+public class Hedging {
+
+  private static final double HEDGE_PERCENTILE = 0.95;
+  private static final double MAX_TOKENS = 10;
+
+  private final ScheduledExecutorService timer;
+  private final LatencyTracker latencyTracker;
+  private final double tokensPerRequest;
+  private double tokens;
+
+  public Hedging(ScheduledExecutorService timer, int maxHedgePercent) {
+    this.timer = timer;
+    this.latencyTracker = new LatencyTracker(256, 20);
+    this.tokensPerRequest = maxHedgePercent / 100.0;
+  }
+
+  /**
+   * Executes the attempt, and a hedge attempt if the first one is slow. The supplier must create a new request on each
+   * invocation. Attempts that lose the race are cancelled.
+   */
+  public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+    addToken();
+    final OptionalLong hedgeDelayMillis = latencyTracker.percentile(HEDGE_PERCENTILE);
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+    final AtomicInteger pendingAttempts = new AtomicInteger(1);
+    startAttempt(attempt, result, attempts, pendingAttempts);
+
+    if (hedgeDelayMillis.isPresent()) {
+      final ScheduledFuture<?> hedge = timer.schedule(() -> {
+        if (!result.isDone() && tryAcquireToken()) {
+          pendingAttempts.incrementAndGet();
+          startAttempt(attempt, result, attempts, pendingAttempts);
+        }
+      }, hedgeDelayMillis.getAsLong(), TimeUnit.MILLISECONDS);
+      result.whenComplete((value, error) -> hedge.cancel(false));
+    }
+    result.whenComplete((value, error) -> attempts.forEach(running -> running.cancel(true)));
+    return result;
+  }
+
+  private <T> void startAttempt(Supplier<CompletableFuture<T>> attempt, CompletableFuture<T> result,
+                                List<CompletableFuture<T>> attempts, AtomicInteger pendingAttempts) {
+    final long start = System.nanoTime();
+    final CompletableFuture<T> running;
+    try {
+      running = attempt.get();
+    } catch (RuntimeException e) {
+      if (pendingAttempts.decrementAndGet() == 0) {
+        result.completeExceptionally(e);
+      }
+      return;
+    }
+    attempts.add(running);
+    running.whenComplete((value, error) -> {
+      if (error == null) {
+        latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        result.complete(value);
+      } else if (pendingAttempts.decrementAndGet() == 0) {
+        result.completeExceptionally(error);
+      }
+    });
+    if (result.isDone()) {
+      running.cancel(true);
+    }
+  }
+
+  private synchronized void addToken() {
+    tokens = Math.min(MAX_TOKENS, tokens + tokensPerRequest);
+  }
+
+  private synchronized boolean tryAcquireToken() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+}
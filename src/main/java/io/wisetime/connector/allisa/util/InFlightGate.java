@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+/**
+ * Tracks the operations in flight, so that a shutdown can let them finish. Once the gate is closed, no operation can
+ * enter anymore, and {@link #closeAndAwait(Deadline)} blocks until the operations that entered before have left.
+ */
+public class InFlightGate {
+
+  private int inFlight;
+  private boolean closed;
+
+  /**
+   * @return false if the gate is closed, in which case the operation must not run and must not call {@link #leave()}
+   */
+  public synchronized boolean tryEnter() {
+    if (closed) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void leave() {
+    if (--inFlight == 0) {
+      notifyAll();
+    }
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the gate, then waits for the operations in flight to leave, or until the deadline expires.
+   *
+   * @return whether all operations left before the deadline
+   */
+  public synchronized boolean closeAndAwait(Deadline deadline) throws InterruptedException {
+    closed = true;
+    while (inFlight > 0) {
+      final long remainingMillis = deadline.remaining().toMillis();
+      if (remainingMillis <= 0) {
+        return false;
+      }
+      wait(remainingMillis);
+    }
+    return true;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Keeps the latencies of the most recent requests to estimate latency percentiles.
+ */
+public class LatencyTracker {
+
+  private final long[] samplesMillis;
+  private final int minSamples;
+  private int next;
+  private int count;
+
+  public LatencyTracker(int windowSize, int minSamples) {
+    this.samplesMillis = new long[windowSize];
+    this.minSamples = minSamples;
+  }
+
+  public synchronized void record(long latencyMillis) {
+    samplesMillis[next] = latencyMillis;
+    next = (next + 1) % samplesMillis.length;
+    count = Math.min(count + 1, samplesMillis.length);
+  }
+
+  /**
+   * Returns the latency percentile (0 < percentile <= 1) over the recorded window, or empty if there are not enough
+   * samples yet to make a meaningful estimate.
+   */
+  public OptionalLong percentile(double percentile) {
+    final long[] sorted;
+    synchronized (this) {
+      if (count < minSamples) {
+        return OptionalLong.empty();
+      }
+      sorted = Arrays.copyOf(samplesMillis, count);
+    }
+    Arrays.sort(sorted);
+    final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return OptionalLong.of(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.util.Optional;
+
+/**
+ * Prefixes the keys of a connector store, so that several connectors can share the store without overwriting each
+ * other's values.
+ */
+public class NamespacedConnectorStore implements ConnectorStore {
+
+  private final ConnectorStore store;
+  private final String prefix;
+
+  public NamespacedConnectorStore(ConnectorStore store, String namespace) {
+    this.store = store;
+    this.prefix = namespace + "/";
+  }
+
+  @Override
+  public void putString(String key, String value) {
+    store.putString(prefix + key, value);
+  }
+
+  @Override
+  public Optional<String> getString(String key) {
+    return store.getString(prefix + key);
+  }
+
+  @Override
+  public void putLong(String key, long value) {
+    store.putLong(prefix + key, value);
+  }
+
+  @Override
+  public Optional<Long> getLong(String key) {
+    return store.getLong(prefix + key);
+  }
+}
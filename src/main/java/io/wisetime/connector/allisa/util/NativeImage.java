@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+/**
+ * Tells whether the connector runs as an ahead-of-time compiled native image, which can't generate classes at run
+ * time.
+ */
+public final class NativeImage {
+
+  // set by GraalVM native-image, to "buildtime" while building the image and to "runtime" when it runs
+  private static final String IMAGE_CODE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+  private NativeImage() {
+  }
+
+  public static boolean isRuntime() {
+    return "runtime".equals(System.getProperty(IMAGE_CODE_PROPERTY));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls. While a call for a key is in flight, further callers for the same key wait for
+ * and share its result instead of issuing the same call again. Nothing is cached: once the call completes, the next
+ * caller for the key triggers a new call.
+ *
+ * @param <K> type of the key identifying identical calls
+ */
+public class SingleFlight<K> {
+
+  private final ConcurrentMap<K, Flight> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the call on the calling thread, unless an identical call is already in flight, in which case the calling
+   * thread blocks until the result of that call is available. Exceptions are rethrown unchanged to every caller.
+   */
+  @SuppressWarnings("unchecked")
+  public <V> V execute(K key, Supplier<V> call) {
+    final Flight flight = new Flight();
+    final CompletableFuture<Object> shared = join(key, flight);
+    if (shared != null) {
+      try {
+        return (V) shared.join();
+      } catch (CompletionException e) {
+        throw asRuntimeException(e.getCause());
+      }
+    }
+
+    // the blocking call can't be cancelled, it keeps the flight until it completes
+    flight.hold();
+    try {
+      final V result = call.get();
+      land(key, flight, result, null);
+      return result;
+    } catch (RuntimeException | Error e) {
+      land(key, flight, null, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Starts the asynchronous call, unless an identical call is already in flight, in which case its result is shared.
+   * Cancelling a returned future does not cancel the shared call while other callers still wait for it. Once all
+   * callers have cancelled their futures, the call is cancelled as well.
+   */
+  @SuppressWarnings("unchecked")
+  public <V> CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+    final Flight flight = new Flight();
+    final CompletableFuture<Object> shared = join(key, flight);
+    if (shared != null) {
+      return (CompletableFuture<V>) shared;
+    }
+
+    final CompletableFuture<Object> result = watchCancel(key, flight, flight.hold());
+    try {
+      final CompletableFuture<V> started = call.get();
+      flight.start(started);
+      started.whenComplete((value, error) -> land(key, flight, value, error));
+    } catch (RuntimeException e) {
+      land(key, flight, null, e);
+    }
+    return (CompletableFuture<V>) result;
+  }
+
+  /**
+   * Number of distinct calls currently in flight.
+   */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Registers the new flight for the key, or joins the flight already in flight for it.
+   *
+   * @return the result of the joined flight, or null if the new flight was registered and its call must be made
+   */
+  private CompletableFuture<Object> join(K key, Flight flight) {
+    while (true) {
+      final Flight existing = inFlight.putIfAbsent(key, flight);
+      if (existing == null) {
+        return null;
+      }
+      final CompletableFuture<Object> shared = existing.hold();
+      if (shared != null) {
+        return watchCancel(key, existing, shared);
+      }
+      // all callers of the existing flight cancelled, its call is being cancelled
+      inFlight.remove(key, existing);
+    }
+  }
+
+  private CompletableFuture<Object> watchCancel(K key, Flight flight, CompletableFuture<Object> result) {
+    result.whenComplete((value, error) -> {
+      if (result.isCancelled() && flight.release()) {
+        // nobody waits for the call anymore, callers arriving now start a new one
+        inFlight.remove(key, flight);
+      }
+    });
+    return result;
+  }
+
+  private void land(K key, Flight flight, Object result, Throwable error) {
+    // deregister first, so that callers arriving after completion don't get a stale result
+    inFlight.remove(key, flight);
+    if (error != null) {
+      flight.result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+          ? error.getCause()
+          : error);
+    } else {
+      flight.result.complete(result);
+    }
+  }
+
+  private static RuntimeException asRuntimeException(Throwable throwable) {
+    if (throwable instanceof RuntimeException) {
+      return (RuntimeException) throwable;
+    }
+    if (throwable instanceof Error) {
+      throw (Error) throwable;
+    }
+    return new RuntimeException(throwable);
+  }
+
+  /**
+   * A call in flight and the number of callers waiting for it.
+   */
+  private static final class Flight {
+
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+    // guarded by this, null until an asynchronous call is started
+    private CompletableFuture<?> call;
+    // guarded by this
+    private int waiters;
+    // guarded by this, true once all callers have cancelled
+    private boolean abandoned;
+
+    /**
+     * @return the result for a new caller, or null if the flight has been abandoned
+     */
+    synchronized CompletableFuture<Object> hold() {
+      if (abandoned) {
+        return null;
+      }
+      waiters++;
+      return result.copy();
+    }
+
+    /**
+     * @return true if the caller was the last one waiting, in which case the call has been cancelled
+     */
+    synchronized boolean release() {
+      if (--waiters > 0) {
+        return false;
+      }
+      abandoned = true;
+      if (call != null) {
+        call.cancel(true);
+      }
+      return true;
+    }
+
+    synchronized void start(CompletableFuture<?> started) {
+      call = started;
+      if (waiters == 0) {
+        started.cancel(true);
+      }
+    }
+  }
+}
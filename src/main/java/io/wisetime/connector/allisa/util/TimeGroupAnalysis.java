@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import io.wisetime.generated.connect.TimeGroup;
+import io.wisetime.generated.connect.TimeGroup.DurationSplitStrategyEnum;
+import io.wisetime.generated.connect.TimeRow;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Figures of a time group that are needed to post it, collected in one traversal of the time rows. The durations per
+ * case follow the {@link io.wisetime.connector.utils.DurationCalculator} of the connector library: the experience
+ * weighting applies unless the user edited the total duration, and the split strategy may divide the time between
+ * the tags.
+ */
+public final class TimeGroupAnalysis {
+
+  private final int rowCount;
+  private final int rowDurationSecs;
+  private final boolean totalDurationEdited;
+  private final long chargeableSecsPerCase;
+  private final long actualSecsPerCase;
+  private final List<String> activityCodes;
+  private final int earliestActivityHour;
+  private final int earliestFirstObservedInHour;
+
+  private TimeGroupAnalysis(TimeGroup timeGroup, int rowCount, int rowDurationSecs, List<String> activityCodes,
+                            int earliestActivityHour, int earliestFirstObservedInHour) {
+    this.rowCount = rowCount;
+    this.rowDurationSecs = rowDurationSecs;
+    this.activityCodes = activityCodes;
+    this.earliestActivityHour = earliestActivityHour;
+    this.earliestFirstObservedInHour = earliestFirstObservedInHour;
+
+    totalDurationEdited = timeGroup.getTotalDurationSecs() != rowDurationSecs;
+    final int caseCount = timeGroup.getDurationSplitStrategy() == DurationSplitStrategyEnum.DIVIDE_BETWEEN_TAGS
+        ? timeGroup.getTags().size()
+        : 1;
+    double chargeableSecs = timeGroup.getTotalDurationSecs();
+    if (!totalDurationEdited) {
+      chargeableSecs = chargeableSecs * timeGroup.getUser().getExperienceWeightingPercent() / 100.0;
+    }
+    chargeableSecsPerCase = Math.round(chargeableSecs / caseCount);
+    actualSecsPerCase = Math.round((double) rowDurationSecs / caseCount);
+  }
+
+  public static TimeGroupAnalysis of(TimeGroup timeGroup) {
+    int rowCount = 0;
+    int rowDurationSecs = 0;
+    // time rows of a group share one activity code, so this rarely holds more than one entry
+    final List<String> activityCodes = new ArrayList<>(1);
+    int earliestActivityHour = Integer.MAX_VALUE;
+    int earliestFirstObservedInHour = Integer.MAX_VALUE;
+
+    for (TimeRow timeRow : timeGroup.getTimeRows()) {
+      rowCount++;
+      rowDurationSecs += timeRow.getDurationSecs();
+
+      final String activityCode = timeRow.getActivityTypeCode();
+      if (!activityCodes.contains(activityCode)) {
+        activityCodes.add(activityCode);
+      }
+
+      final int activityHour = timeRow.getActivityHour();
+      final int firstObservedInHour = timeRow.getFirstObservedInHour();
+      if (activityHour < earliestActivityHour
+          || activityHour == earliestActivityHour && firstObservedInHour < earliestFirstObservedInHour) {
+        earliestActivityHour = activityHour;
+        earliestFirstObservedInHour = firstObservedInHour;
+      }
+    }
+    return new TimeGroupAnalysis(timeGroup, rowCount, rowDurationSecs, Collections.unmodifiableList(activityCodes),
+        earliestActivityHour, earliestFirstObservedInHour);
+  }
+
+  /**
+   * Sum of the durations of the time rows.
+   */
+  public int getRowDurationSecs() {
+    return rowDurationSecs;
+  }
+
+  /**
+   * Whether the user edited the total duration, i.e. it differs from the sum of the time rows.
+   */
+  public boolean isTotalDurationEdited() {
+    return totalDurationEdited;
+  }
+
+  /**
+   * Chargeable time per case. Edited time is used as is, otherwise the experience weighting of the user applies.
+   */
+  public long getChargeableSecsPerCase() {
+    return chargeableSecsPerCase;
+  }
+
+  /**
+   * Actual time per case, based on the time rows.
+   */
+  public long getActualSecsPerCase() {
+    return actualSecsPerCase;
+  }
+
+  /**
+   * Distinct activity type codes of the time rows, in order of appearance.
+   */
+  public List<String> getActivityCodes() {
+    return activityCodes;
+  }
+
+  /**
+   * Start time of the earliest time row, in the zone of the analysed time group.
+   */
+  public Optional<LocalDateTime> getStartTime() {
+    if (rowCount == 0) {
+      return Optional.empty();
+    }
+    // activity hour is in 'yyyyMMddHH' format
+    return Optional.of(LocalDateTime.of(
+        earliestActivityHour / 1_000_000,
+        earliestActivityHour / 10_000 % 100,
+        earliestActivityHour / 100 % 100,
+        earliestActivityHour % 100,
+        0)
+        .plusMinutes(earliestFirstObservedInHour));
+  }
+}
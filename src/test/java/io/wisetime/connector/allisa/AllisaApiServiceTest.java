@@ -4,37 +4,60 @@
 
 package io.wisetime.connector.allisa;
 
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_FIELDS_PARAMETER;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_PAGE_CACHE_SECONDS;
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_POST_TYPE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.javafaker.Faker;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.inject.Guice;
+import com.google.inject.name.Names;
 import io.wisetime.connector.allisa.model.AllisaCase;
 import io.wisetime.connector.allisa.model.ApiResponse;
+import io.wisetime.connector.allisa.model.CasePage;
 import io.wisetime.connector.allisa.model.Result;
 import io.wisetime.connector.allisa.model.TimePostData;
 import io.wisetime.connector.allisa.util.ConnectorException;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.Deadline;
 import io.wisetime.connector.config.RuntimeConfig;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.ResponseBody;
 import okio.Buffer;
@@ -43,6 +66,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 
 /**
@@ -66,7 +90,17 @@ public class AllisaApiServiceTest {
     RuntimeConfig
         .setProperty(ALLISA_POST_TYPE, WISETIME);
     allisaApiMock = mock(AllisaApiService.AllisaApi.class);
-    allisaApiService = Guice.createInjector(binder ->
+    // every test lists its pages afresh
+    RuntimeConfig.setProperty(ALLISA_PAGE_CACHE_SECONDS, "0");
+    try {
+      allisaApiService = newAllisaApiService();
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_PAGE_CACHE_SECONDS);
+    }
+  }
+
+  private static AllisaApiService newAllisaApiService() {
+    return Guice.createInjector(binder ->
         binder.bind(AllisaApiService.AllisaApi.class).toInstance(allisaApiMock))
         .getInstance(AllisaApiService.class);
   }
@@ -116,6 +150,88 @@ public class AllisaApiServiceTest {
         .isEqualToComparingFieldByField(new ConnectorException("Unable to post time to Allisa: " + errorMessage));
   }
 
+  @Test
+  void executeCallAsync() throws Exception {
+    Call<String> mockCall = mock(Call.class);
+    String fakeResponse = faker.gameOfThrones().character();
+    answerEnqueue(mockCall, callback -> callback.onResponse(mockCall, Response.success(fakeResponse)));
+
+    assertThat(allisaApiService.executeCallAsync(mockCall).get()).isEqualTo(fakeResponse);
+    verify(mockCall, never()).execute();
+  }
+
+  @Test
+  void executeCallAsync_error() {
+    Call<String> mockCall = mock(Call.class);
+    String errorMessage = faker.gameOfThrones().quote();
+    int errorCode = faker.number().numberBetween(400, 500);
+
+    when(mockCall.request()).thenReturn(new Request.Builder().url("http://fake.url").build());
+    answerEnqueue(mockCall, callback -> callback.onResponse(mockCall, Response.error(errorCode, ResponseBody.create(
+        MediaType.get("application/json"),
+        new Gson().toJson(new ApiResponse<>().setCode(errorCode).setMessage(errorMessage))))));
+
+    assertThatThrownBy(() -> allisaApiService.executeCallAsync(mockCall).join())
+        .hasCauseInstanceOf(ConnectorException.class)
+        .hasMessageContaining(errorMessage);
+  }
+
+  @Test
+  void executeCallAsync_io_failure() {
+    Call<String> mockCall = mock(Call.class);
+    IOException ioException = new IOException("Expected exception");
+    answerEnqueue(mockCall, callback -> callback.onFailure(mockCall, ioException));
+
+    assertThatThrownBy(() -> allisaApiService.executeCallAsync(mockCall).join())
+        .isInstanceOf(CompletionException.class)
+        .satisfies(e -> assertThat(AllisaApiService.unwrap(e))
+            .isInstanceOf(RuntimeException.class)
+            .hasCause(ioException));
+  }
+
+  @Test
+  void executeCallAsync_cancel() {
+    Call<String> mockCall = mock(Call.class);
+
+    allisaApiService.executeCallAsync(mockCall).cancel(true);
+
+    verify(mockCall, times(1)).cancel();
+  }
+
+  @Test
+  void executeCall_deadline_exceeded() throws Exception {
+    Call<String> mockCall = mock(Call.class);
+    CountDownLatch cancelled = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      cancelled.countDown();
+      return null;
+    }).when(mockCall).cancel();
+    when(mockCall.execute()).thenAnswer(invocation -> {
+      cancelled.await(5, TimeUnit.SECONDS);
+      throw new IOException("Canceled");
+    });
+
+    assertThatThrownBy(() -> allisaApiService.executeCall(mockCall, Deadline.after(Duration.ofMillis(50))))
+        .isInstanceOf(RuntimeException.class)
+        .hasMessage("Allisa request did not complete within its deadline");
+    verify(mockCall, times(1)).cancel();
+  }
+
+  @Test
+  void getAllisaCaseByTagNameAsync_deadline_exceeded() {
+    Call<ApiResponse<AllisaCase>> mockCall = mock(Call.class);
+    when(allisaApiMock.getCase(WISETIME, "P-1", ImmutableMap.of())).thenReturn(mockCall);
+
+    CompletableFuture<Optional<AllisaCase>> lookup =
+        allisaApiService.getAllisaCaseByTagNameAsync("P-1", Deadline.after(Duration.ofMillis(50)));
+
+    assertThatThrownBy(lookup::join)
+        .isInstanceOf(CompletionException.class)
+        .satisfies(e -> assertThat(AllisaApiService.unwrap(e))
+            .hasMessage("Allisa request did not complete within its deadline"));
+    verify(mockCall, timeout(1000)).cancel();
+  }
+
   @Test
   void postTimeTest() {
     AllisaApiService serviceSpy = spy(allisaApiService);
@@ -143,6 +259,32 @@ public class AllisaApiServiceTest {
     );
   }
 
+  @Test
+  void posts_and_lookups_use_their_lanes() {
+    final AllisaApiService.AllisaApi postApiMock = mock(AllisaApiService.AllisaApi.class);
+    final AllisaApiService.AllisaApi lookupApiMock = mock(AllisaApiService.AllisaApi.class);
+    final AllisaApiService laneService = spy(Guice.createInjector(binder -> {
+      binder.bind(AllisaApiService.AllisaApi.class).toInstance(allisaApiMock);
+      binder.bind(AllisaApiService.AllisaApi.class)
+          .annotatedWith(Names.named(AllisaApiService.POST_API))
+          .toInstance(postApiMock);
+      binder.bind(AllisaApiService.AllisaApi.class)
+          .annotatedWith(Names.named(AllisaApiService.LOOKUP_API))
+          .toInstance(lookupApiMock);
+    }).getInstance(AllisaApiService.class));
+    doReturn(new ApiResponse<AllisaCase>().setCode(200).setResult(new Result<AllisaCase>().setData(ImmutableList.of())))
+        .when(laneService).executeCall(any());
+
+    laneService.postTime(dataGenerator.randomTimePostData());
+    laneService.getAllisaCaseByTagName("P-1");
+    laneService.canConnect();
+
+    verify(postApiMock).postTime(eq(WISETIME), any());
+    verify(lookupApiMock).getCase(WISETIME, "P-1", ImmutableMap.of());
+    verify(lookupApiMock).getCases(WISETIME_CASES, 1, 1, ImmutableMap.of());
+    verifyZeroInteractions(allisaApiMock);
+  }
+
   @Test
   void getAllisaCaseByTagNameTest() {
     AllisaApiService serviceSpy = spy(allisaApiService);
@@ -164,34 +306,306 @@ public class AllisaApiServiceTest {
 
     assertThat(result).contains(expectedCase);
 
-    verify(allisaApiMock, times(1)).getCase(WISETIME, tagName);
+    verify(allisaApiMock, times(1)).getCase(WISETIME, tagName, ImmutableMap.of());
   }
 
   @Test
-  void getNewAllisaCasesTest() {
+  void getAllisaCaseByTagNameAsyncTest() throws Exception {
     AllisaApiService serviceSpy = spy(allisaApiService);
 
     String tagName = faker.lorem().word();
-    AllisaCase expectedCase1 = new AllisaCase().setCaseReference(tagName).setCaseId(6);
-    AllisaCase expectedCase2 = new AllisaCase().setCaseReference(tagName).setCaseId(7);
-    AllisaCase expectedCase3 = new AllisaCase().setCaseReference(tagName).setCaseId(8);
-
-    AllisaCase filteredCase1 = new AllisaCase().setCaseReference(tagName).setCaseId(1);
-    AllisaCase filteredCase2 = new AllisaCase().setCaseReference(tagName).setCaseId(5);
+    AllisaCase expectedCase = new AllisaCase().setCaseReference(tagName);
 
-    doReturn(new ApiResponse<AllisaCase>()
+    doReturn(CompletableFuture.completedFuture(new ApiResponse<AllisaCase>()
         .setCode(200)
         .setResult(new Result<AllisaCase>()
             .setData(ImmutableList.of(
-                expectedCase1, expectedCase2, expectedCase3, filteredCase1, filteredCase2
-            ))))
+                new AllisaCase().setCaseReference(faker.lorem().word()),
+                expectedCase
+            )))))
+        .when(serviceSpy).executeCallAsync(any());
+
+    assertThat(serviceSpy.getAllisaCaseByTagNameAsync(tagName).get()).contains(expectedCase);
+
+    verify(allisaApiMock, times(1)).getCase(WISETIME, tagName, ImmutableMap.of());
+    verify(serviceSpy, never()).executeCall(any());
+  }
+
+  @Test
+  void getAllisaCaseByTagNameAsync_concurrent_lookups_are_coalesced() throws Exception {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+
+    String tagName = faker.lorem().word();
+    AllisaCase expectedCase = new AllisaCase().setCaseReference(tagName);
+    CompletableFuture<ApiResponse<AllisaCase>> response = new CompletableFuture<>();
+    doReturn(response).when(serviceSpy).executeCallAsync(any());
+
+    CompletableFuture<Optional<AllisaCase>> first = serviceSpy.getAllisaCaseByTagNameAsync(tagName);
+    CompletableFuture<Optional<AllisaCase>> second = serviceSpy.getAllisaCaseByTagNameAsync(tagName);
+    response.complete(new ApiResponse<AllisaCase>()
+        .setCode(200)
+        .setResult(new Result<AllisaCase>().setData(ImmutableList.of(expectedCase))));
+
+    assertThat(first.get()).contains(expectedCase);
+    assertThat(second.get()).contains(expectedCase);
+    verify(allisaApiMock, times(1)).getCase(WISETIME, tagName, ImmutableMap.of());
+  }
+
+  @Test
+  void getAllisaCasesByTagNamesTest() {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+
+    AllisaCase case1 = new AllisaCase().setCaseReference("P-1").setCaseId(1);
+    AllisaCase case2 = new AllisaCase().setCaseReference("P-2").setCaseId(2);
+    doReturn(CompletableFuture.completedFuture(Optional.of(case1)))
+        .when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-1"), any(Deadline.class));
+    doReturn(CompletableFuture.completedFuture(Optional.of(case2)))
+        .when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-2"), any(Deadline.class));
+    doReturn(CompletableFuture.completedFuture(Optional.empty()))
+        .when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-3"), any(Deadline.class));
+
+    Map<String, AllisaCase> result = serviceSpy.getAllisaCasesByTagNames(ImmutableList.of("P-1", "P-2", "p-1", "P-3"));
+
+    assertThat(result)
+        .as("unknown tags are absent, tag names that only differ by case share the lookup")
+        .containsOnly(entry("P-1", case1), entry("P-2", case2), entry("p-1", case1));
+    verify(serviceSpy, times(1)).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-1"), any(Deadline.class));
+    verify(serviceSpy, never()).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("p-1"), any(Deadline.class));
+  }
+
+  @Test
+  void getAllisaCasesByTagNames_lookup_failed() {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+
+    CompletableFuture<Optional<AllisaCase>> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new ConnectorException("Error"));
+    CompletableFuture<Optional<AllisaCase>> pending = new CompletableFuture<>();
+    doReturn(failed).when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-1"), any(Deadline.class));
+    doReturn(pending).when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-2"), any(Deadline.class));
+    pending.complete(Optional.empty());
+
+    assertThatThrownBy(() -> serviceSpy.getAllisaCasesByTagNames(ImmutableList.of("P-1", "P-2")))
+        .isInstanceOf(ConnectorException.class)
+        .hasMessage("Error");
+  }
+
+  @Test
+  void getAllisaCasesByTagNames_failure_cancels_pending_lookups() {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+
+    CompletableFuture<Optional<AllisaCase>> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new ConnectorException("Error"));
+    CompletableFuture<Optional<AllisaCase>> pending = new CompletableFuture<>();
+    doReturn(pending).when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-1"), any(Deadline.class));
+    doReturn(failed).when(serviceSpy).getAllisaCaseByTagNameAsync(eq(WISETIME), eq("P-2"), any(Deadline.class));
+
+    assertThatThrownBy(() -> serviceSpy.getAllisaCasesByTagNames(ImmutableList.of("P-1", "P-2")))
+        .isInstanceOf(ConnectorException.class);
+    assertThat(pending.isCancelled()).isTrue();
+  }
+
+  @Test
+  void getAllisaCaseByTagNameAsync_cancel_cancels_the_search() {
+    Call<ApiResponse<AllisaCase>> mockCall = mock(Call.class);
+    when(allisaApiMock.getCase(WISETIME, "P-1", ImmutableMap.of())).thenReturn(mockCall);
+
+    allisaApiService.getAllisaCaseByTagNameAsync("P-1").cancel(true);
+
+    verify(mockCall, times(1)).cancel();
+  }
+
+  @Test
+  void getNewAllisaCasesTest() throws IOException {
+    mockCasePage(10, 10, null, null, Response.success(casesBody(6, 7, 8, 1, 5)));
+
+    List<AllisaCase> result = allisaApiService.getNewAllisaCases(WISETIME_CASES, 5, 10, 10);
+
+    assertThat(result).extracting(AllisaCase::getCaseId).containsExactlyInAnyOrder(6L, 7L, 8L);
+
+    verify(allisaApiMock, times(1)).getCasePage(WISETIME_CASES, 10, 10, ImmutableMap.of(), null, null);
+  }
+
+  @Test
+  void getNewAllisaCases_selects_case_fields() throws IOException {
+    final Call<ResponseBody> mockCall = mock(Call.class);
+    when(mockCall.execute()).thenReturn(Response.success(casesBody()));
+    when(allisaApiMock.getCasePage(any(), anyLong(), anyLong(), any(), any(), any())).thenReturn(mockCall);
+
+    RuntimeConfig.setProperty(ALLISA_CASE_FIELDS_PARAMETER, "fields");
+    try {
+      allisaApiService.getNewAllisaCases(WISETIME_CASES, 5, 10, 10);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_CASE_FIELDS_PARAMETER);
+    }
+
+    verify(allisaApiMock, times(1))
+        .getCasePage(WISETIME_CASES, 10, 10, ImmutableMap.of("fields", "ID,az,prname"), null, null);
+  }
+
+  @Test
+  void getNewAllisaCases_measures_case_size() throws IOException {
+    final ConnectorMetrics metrics = new ConnectorMetrics();
+    final AllisaApiService measuringService = Guice.createInjector(binder -> {
+      binder.bind(AllisaApiService.AllisaApi.class).toInstance(allisaApiMock);
+      binder.bind(ConnectorMetrics.class).toInstance(metrics);
+    }).getInstance(AllisaApiService.class);
+    final ResponseBody body = casesBody(6, 7);
+    final long bodyLength = body.contentLength();
+    mockCasePage(3, 2, null, null, Response.success(body));
+
+    measuringService.getNewAllisaCases(WISETIME_CASES, 5, 3, 2);
+
+    assertThat(metrics.getGauge(ConnectorMetrics.CASE_BYTES)).hasValue(bodyLength / 2);
+  }
+
+  @Test
+  void getNewAllisaCases_serves_refreshed_full_page() throws IOException {
+    final AllisaApiService cachingService = newAllisaApiService();
+    mockCasePage(3, 2, null, null, Response.success(casesBody(6, 7)));
+
+    assertThat(cachingService.getChangedAllisaCases(WISETIME_CASES, 0, 3, 2, null).getCases()).hasSize(2);
+    assertThat(cachingService.getNewAllisaCases(WISETIME_CASES, 6, 3, 2))
+        .extracting(AllisaCase::getCaseId)
+        .containsExactly(7L);
+
+    verify(allisaApiMock, times(1)).getCasePage(WISETIME_CASES, 3, 2, ImmutableMap.of(), null, null);
+  }
+
+  @Test
+  void getNewAllisaCases_rereads_last_page() throws IOException {
+    final AllisaApiService cachingService = newAllisaApiService();
+    mockCasePage(3, 2, null, null, Response.success(casesBody(6)));
+
+    cachingService.getChangedAllisaCases(WISETIME_CASES, 0, 3, 2, null);
+    mockCasePage(3, 2, null, null, Response.success(casesBody(6)));
+    cachingService.getNewAllisaCases(WISETIME_CASES, 6, 3, 2);
+
+    // new cases are added to the last page, so it must not be served from the cache
+    verify(allisaApiMock, times(2)).getCasePage(WISETIME_CASES, 3, 2, ImmutableMap.of(), null, null);
+  }
+
+  @Test
+  void getChangedAllisaCases_serves_synced_page() throws IOException {
+    final AllisaApiService cachingService = newAllisaApiService();
+    mockCasePage(3, 2, null, null, Response.success(casesBody(6)));
+
+    cachingService.getNewAllisaCases(WISETIME_CASES, 0, 3, 2);
+    final CasePage page = cachingService.getChangedAllisaCases(WISETIME_CASES, 0, 3, 2, "sha256:outdated");
+
+    assertThat(page.isUnchanged()).isFalse();
+    assertThat(page.getCases()).extracting(AllisaCase::getCaseId).containsExactly(6L);
+    verify(allisaApiMock, times(1)).getCasePage(eq(WISETIME_CASES), eq(3L), eq(2L), any(), any(), any());
+  }
+
+  @Test
+  void getChangedAllisaCases_reads_etag() throws IOException {
+    mockCasesIfChanged(null, null, Response.success(casesBody(6, 7),
+        new okhttp3.Headers.Builder().add("ETag", "\"v2\"").build()));
+
+    final CasePage page = allisaApiService.getChangedAllisaCases(WISETIME_CASES, 6, 10, 10, null);
+
+    assertThat(page.isUnchanged()).isFalse();
+    assertThat(page.getCases()).extracting(AllisaCase::getCaseId).containsExactly(7L);
+    assertThat(page.getValidator()).isEqualTo("etag:\"v2\"");
+  }
+
+  @Test
+  void getChangedAllisaCases_not_modified() throws IOException {
+    mockCasesIfChanged("\"v1\"", null, Response.error(ResponseBody.create(null, ""),
+        new okhttp3.Response.Builder()
+            .code(304)
+            .message("Not Modified")
+            .protocol(Protocol.HTTP_1_1)
+            .request(new Request.Builder().url("http://fake.url").build())
+            .build()));
+
+    final CasePage page = allisaApiService.getChangedAllisaCases(WISETIME_CASES, 0, 10, 10, "etag:\"v1\"");
+
+    assertThat(page.isUnchanged()).isTrue();
+    assertThat(page.getCases()).isEmpty();
+    assertThat(page.getValidator()).isEqualTo("etag:\"v1\"");
+  }
+
+  @Test
+  void getChangedAllisaCases_sends_last_modified() throws IOException {
+    final String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+    mockCasesIfChanged(null, lastModified, Response.success(casesBody(6),
+        new okhttp3.Headers.Builder().add("Last-Modified", lastModified).build()));
+
+    final CasePage page = allisaApiService.getChangedAllisaCases(WISETIME_CASES, 0, 10, 10, "modified:" + lastModified);
+
+    assertThat(page.isUnchanged())
+        .as("the page is unchanged if Allisa ignores the conditional request, but sends the same validator")
+        .isTrue();
+  }
+
+  @Test
+  void getChangedAllisaCases_compares_digests() throws IOException {
+    mockCasesIfChanged(null, null, Response.success(casesBody(6, 7)));
+    final CasePage firstRead = allisaApiService.getChangedAllisaCases(WISETIME_CASES, 0, 10, 10, null);
+    assertThat(firstRead.getValidator()).startsWith("sha256:");
+
+    mockCasesIfChanged(null, null, Response.success(casesBody(6, 7)));
+    assertThat(allisaApiService.getChangedAllisaCases(WISETIME_CASES, 0, 10, 10, firstRead.getValidator())
+        .isUnchanged())
+        .isTrue();
+
+    mockCasesIfChanged(null, null, Response.success(casesBody(6, 8)));
+    final CasePage changed = allisaApiService.getChangedAllisaCases(WISETIME_CASES, 0, 10, 10,
+        firstRead.getValidator());
+    assertThat(changed.isUnchanged()).isFalse();
+    assertThat(changed.getCases()).extracting(AllisaCase::getCaseId).containsExactly(6L, 8L);
+  }
+
+  private static void mockCasesIfChanged(String etag, String lastModified, Response<ResponseBody> response)
+      throws IOException {
+    mockCasePage(10, 10, etag, lastModified, response);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void mockCasePage(long page, long batchSize, String etag, String lastModified,
+                                   Response<ResponseBody> response) throws IOException {
+    final Call<ResponseBody> mockCall = mock(Call.class);
+    when(mockCall.execute()).thenReturn(response);
+    doAnswer(invocation -> {
+      final Callback<ResponseBody> callback = invocation.getArgument(0);
+      callback.onResponse(mockCall, response);
+      return null;
+    }).when(mockCall).enqueue(any());
+    when(allisaApiMock.getCasePage(WISETIME_CASES, page, batchSize, ImmutableMap.of(), etag, lastModified))
+        .thenReturn(mockCall);
+  }
+
+  private static ResponseBody casesBody(long... caseIds) throws JsonProcessingException {
+    final List<AllisaCase> cases = LongStream.of(caseIds)
+        .mapToObj(caseId -> new AllisaCase().setCaseId(caseId).setCaseReference("P-" + caseId))
+        .collect(Collectors.toList());
+    return ResponseBody.create(MediaType.get("application/json"), JsonCodec.MAPPER.writeValueAsString(
+        new ApiResponse<AllisaCase>().setCode(200).setResult(new Result<AllisaCase>().setData(cases))));
+  }
+
+  @Test
+  void getAllisaCaseAtTest() {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+    AllisaCase expectedCase = dataGenerator.randomAllisaCase();
+    doReturn(new ApiResponse<AllisaCase>()
+        .setCode(200)
+        .setResult(new Result<AllisaCase>().setData(ImmutableList.of(expectedCase))))
         .when(serviceSpy).executeCall(any());
 
-    List<AllisaCase> result = serviceSpy.getNewAllisaCases(5, 10, 10);
+    assertThat(serviceSpy.getAllisaCaseAt(WISETIME_CASES, 42)).contains(expectedCase);
+    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 42, 1, ImmutableMap.of());
+  }
 
-    assertThat(result).containsExactlyInAnyOrder(expectedCase1, expectedCase2, expectedCase3);
+  @Test
+  void getAllisaCaseAt_past_end_of_listing() {
+    AllisaApiService serviceSpy = spy(allisaApiService);
+    doReturn(new ApiResponse<AllisaCase>()
+        .setCode(200)
+        .setResult(new Result<AllisaCase>().setData(ImmutableList.of())))
+        .when(serviceSpy).executeCall(any());
 
-    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 10, 10);
+    assertThat(serviceSpy.getAllisaCaseAt(WISETIME_CASES, 42)).isEmpty();
   }
 
   @Test
@@ -208,7 +622,7 @@ public class AllisaApiServiceTest {
 
     assertThat(result).isTrue();
 
-    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1);
+    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1, ImmutableMap.of());
   }
 
   @Test
@@ -225,7 +639,7 @@ public class AllisaApiServiceTest {
 
     assertThat(result).isFalse();
 
-    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1);
+    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1, ImmutableMap.of());
   }
 
   @Test
@@ -239,6 +653,14 @@ public class AllisaApiServiceTest {
 
     assertThat(result).isFalse();
 
-    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1);
+    verify(allisaApiMock, times(1)).getCases(WISETIME_CASES, 1, 1, ImmutableMap.of());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void answerEnqueue(Call<T> call, Consumer<Callback<T>> answer) {
+    doAnswer(invocation -> {
+      answer.accept(invocation.getArgument(0));
+      return null;
+    }).when(call).enqueue(any(Callback.class));
   }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.util.ConnectorException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AllisaCaseExportReaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void forEachBatch_json_array() throws IOException {
+    final Path exportFile = write("export.json",
+        "[{\"ID\": 1, \"az\": \"P-1\", \"prname\": \"First\"},"
+            + "{\"ID\": 2, \"az\": \"P-2\", \"prname\": \"Second\"},"
+            + "{\"caseId\": 3, \"caseReference\": \"P-3\", \"caseDescription\": \"Third\"}]");
+
+    final List<List<AllisaCase>> batches = read(exportFile, 2);
+
+    assertThat(batches).extracting(List::size).containsExactly(2, 1);
+    assertThat(flatten(batches)).extracting(AllisaCase::getCaseId).containsExactly(1L, 2L, 3L);
+    assertThat(flatten(batches)).extracting(AllisaCase::getCaseReference).containsExactly("P-1", "P-2", "P-3");
+    assertThat(flatten(batches)).extracting(AllisaCase::getCaseDescription).containsExactly("First", "Second", "Third");
+  }
+
+  @Test
+  void forEachBatch_json_api_response() throws IOException {
+    final Path exportFile = write("export.json",
+        "{\"code\": 200, \"result\": {\"total\": 2, \"data\": ["
+            + "{\"ID\": 1, \"az\": \"P-1\"}, {\"ID\": 2, \"az\": \"P-2\"}]}}");
+
+    assertThat(flatten(read(exportFile, 10))).extracting(AllisaCase::getCaseReference).containsExactly("P-1", "P-2");
+  }
+
+  @Test
+  void forEachBatch_json_without_cases() throws IOException {
+    final Path exportFile = write("export.json", "{\"code\": 200, \"result\": {\"total\": 0}}");
+
+    assertThatThrownBy(() -> read(exportFile, 10))
+        .isInstanceOf(ConnectorException.class)
+        .hasMessage("Allisa export contains no list of cases");
+  }
+
+  @Test
+  void forEachBatch_csv() throws IOException {
+    final Path exportFile = write("export.csv",
+        "\uFEFFID,az,other,prname\n"
+            + "1,P-1,x,First\n"
+            + "\n"
+            + "2,P-2,y,\"Second, with \"\"quotes\"\"\nand a line break\"\n");
+
+    final List<AllisaCase> cases = flatten(read(exportFile, 10));
+
+    assertThat(cases).extracting(AllisaCase::getCaseId).containsExactly(1L, 2L);
+    assertThat(cases).extracting(AllisaCase::getCaseReference).containsExactly("P-1", "P-2");
+    assertThat(cases).extracting(AllisaCase::getCaseDescription)
+        .containsExactly("First", "Second, with \"quotes\"\nand a line break");
+  }
+
+  @Test
+  void forEachBatch_json_skips_invalid_records() throws IOException {
+    final Path exportFile = write("export.json",
+        "[{\"ID\": 1, \"az\": \"P-1\"},"
+            + "{\"az\": \"P-2\"},"
+            + "{\"ID\": 3},"
+            + "{\"ID\": \"four\", \"az\": \"P-4\"},"
+            + "{\"ID\": 5, \"az\": \"P-5\"}]");
+
+    assertThat(flatten(read(exportFile, 10))).extracting(AllisaCase::getCaseId).containsExactly(1L, 5L);
+  }
+
+  @Test
+  void forEachBatch_csv_skips_invalid_records() throws IOException {
+    final Path exportFile = write("export.csv",
+        "ID,az\n"
+            + "1,P-1\n"
+            + "x2,P-2\n"
+            + ",P-3\n"
+            + "4,\n"
+            + "5,P-5\n");
+
+    assertThat(flatten(read(exportFile, 10))).extracting(AllisaCase::getCaseId).containsExactly(1L, 5L);
+  }
+
+  private Path write(String fileName, String content) throws IOException {
+    return Files.write(tempDir.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<List<AllisaCase>> read(Path exportFile, int batchSize) throws IOException {
+    final List<List<AllisaCase>> batches = new ArrayList<>();
+    new AllisaCaseExportReader(batchSize).forEachBatch(exportFile, batches::add);
+    return batches;
+  }
+
+  private static List<AllisaCase> flatten(List<List<AllisaCase>> batches) {
+    return batches.stream().flatMap(List::stream).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.AllisaConnectorExtension.BASE_URL;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_PROBE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_WEBHOOK_PORT;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_WEBHOOK_SECRET;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_PATH;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TIMEZONE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.util.Deadline;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.api_client.PostResult.PostResultStatus;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.generated.connect.Tag;
+import io.wisetime.generated.connect.TimeGroup;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+
+class AllisaConnectorCaseTypesTest {
+
+  private static final String SECRET = "webhook-secret";
+  private static final MediaType JSON = MediaType.parse("application/json");
+  private static final FakeEntities FAKE_ENTITIES = new FakeEntities();
+
+  private static RandomDataGenerator randomDataGenerator = new RandomDataGenerator();
+  @RegisterExtension
+  static final AllisaConnectorExtension CONNECTOR = new AllisaConnectorExtension();
+
+  private static AllisaApiService allisaApiServiceMock = CONNECTOR.getAllisaApiServiceMock();
+  private static ApiClient apiClientMock = CONNECTOR.getApiClientMock();
+  private static ConnectorStore connectorStoreMock = CONNECTOR.getConnectorStoreMock();
+  private static OkHttpClient httpClient = new OkHttpClient();
+  private static AllisaConnector connector;
+
+  @BeforeAll
+  static void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, "patents, trademarks");
+    RuntimeConfig.setProperty(TAG_UPSERT_PATH, "/Allisa/");
+    RuntimeConfig.setProperty(TIMEZONE, "Asia/Manila");
+    RuntimeConfig.setProperty(ALLISA_SYNC_PROBE, "false");
+    // any free port
+    RuntimeConfig.setProperty(ALLISA_WEBHOOK_PORT, "0");
+    RuntimeConfig.setProperty(ALLISA_WEBHOOK_SECRET, SECRET);
+
+    connector = CONNECTOR.initConnector();
+  }
+
+  @Test
+  void performTagUpdate_syncs_every_case_type() throws IOException {
+    final AllisaCase patent = randomDataGenerator.randomAllisaCase();
+    final AllisaCase trademark = randomDataGenerator.randomAllisaCase();
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(eq("patents"), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of(patent))
+        .thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getNewAllisaCases(eq("trademarks"), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of(trademark))
+        .thenReturn(ImmutableList.of());
+
+    connector.performTagUpdate();
+
+    ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+    verify(apiClientMock, times(2)).tagUpsertBatch(upsertRequests.capture());
+    assertThat(upsertRequests.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList()))
+        .as("the first case type keeps the tag upsert path, the others have their own tag folder")
+        .containsExactlyInAnyOrder(
+            patent.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/"),
+            trademark.toUpsertTagRequest("/Allisa/trademarks/", BASE_URL + "projekt/show/ID/"));
+    // the first case type keeps the sync progress it had as a single case type
+    verify(connectorStoreMock).putLong("allisa_last_sync_id", patent.getCaseId());
+    verify(connectorStoreMock).putLong("allisa_last_sync_id_trademarks", trademark.getCaseId());
+    verify(connectorStoreMock, never()).putLong(eq("allisa_last_sync_id_patents"), anyLong());
+  }
+
+  @Test
+  void postTime_tags_are_searched_in_their_case_type() {
+    final Tag patentTag = FAKE_ENTITIES.randomTag("/Allisa/", "P-1");
+    final Tag trademarkTag = FAKE_ENTITIES.randomTag("/Allisa/trademarks/", "T-1");
+    final TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
+        .tags(ImmutableList.of(patentTag, trademarkTag));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(eq("patents"), eq(ImmutableList.of("P-1")), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of("P-1", randomDataGenerator.randomAllisaCase("P-1")));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(eq("trademarks"), eq(ImmutableList.of("T-1")), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of("T-1", randomDataGenerator.randomAllisaCase("T-1")));
+
+    assertThat(connector.postTime(mock(spark.Request.class), timeGroup).getStatus())
+        .isEqualTo(PostResultStatus.SUCCESS);
+    verify(allisaApiServiceMock, times(2)).postTime(any(), any(Deadline.class));
+  }
+
+  @Test
+  void postTime_tag_in_folder_of_first_case_type() {
+    final TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
+        .tags(ImmutableList.of(FAKE_ENTITIES.randomTag("/Allisa/patents/", "P-2")));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(eq("patents"), eq(ImmutableList.of("P-2")), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of("P-2", randomDataGenerator.randomAllisaCase("P-2")));
+
+    assertThat(connector.postTime(mock(spark.Request.class), timeGroup).getStatus())
+        .as("the tag was created while patents wasn't the first case type")
+        .isEqualTo(PostResultStatus.SUCCESS);
+    verify(allisaApiServiceMock).postTime(any(), any(Deadline.class));
+  }
+
+  @Test
+  void postTime_tag_of_unsynced_case_type() {
+    final TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
+        .tags(ImmutableList.of(FAKE_ENTITIES.randomTag("/Allisa/designs/", "D-1")));
+
+    assertThat(connector.postTime(mock(spark.Request.class), timeGroup).getStatus())
+        .as("the time must not be dropped silently")
+        .isEqualTo(PostResultStatus.PERMANENT_FAILURE);
+    verifyZeroInteractions(allisaApiServiceMock);
+  }
+
+  @Test
+  void postTime_tag_of_unsynced_case_type_is_skipped() {
+    final TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
+        .tags(ImmutableList.of(
+            FAKE_ENTITIES.randomTag("/Allisa/designs/", "D-1"),
+            FAKE_ENTITIES.randomTag("/Allisa/", "P-1")));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(eq("patents"), eq(ImmutableList.of("P-1")), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of("P-1", randomDataGenerator.randomAllisaCase("P-1")));
+
+    assertThat(connector.postTime(mock(spark.Request.class), timeGroup).getStatus())
+        .as("the time of the other tags is posted")
+        .isEqualTo(PostResultStatus.SUCCESS);
+    verify(allisaApiServiceMock).postTime(any(), any(Deadline.class));
+    verify(allisaApiServiceMock, never()).getAllisaCasesByTagNames(eq("designs"), anyList(), any(Deadline.class));
+  }
+
+  @Test
+  void postTime_tag_outside_tag_upsert_path() {
+    final TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
+        .tags(ImmutableList.of(FAKE_ENTITIES.randomTag("/Other/", "O-1")));
+
+    assertThat(connector.postTime(mock(spark.Request.class), timeGroup).getStatus())
+        .as("the tag wasn't created by the connector")
+        .isEqualTo(PostResultStatus.SUCCESS);
+    verifyZeroInteractions(allisaApiServiceMock);
+  }
+
+  @Test
+  void notification_with_case_type() throws IOException {
+    final AllisaCase allisaCase = randomDataGenerator.randomAllisaCase();
+
+    try (Response response = notify("?caseType=trademarks", String.format(
+        "{\"ID\": %d, \"az\": \"%s\", \"prname\": \"%s\"}",
+        allisaCase.getCaseId(), allisaCase.getCaseReference(), allisaCase.getCaseDescription()))) {
+      assertThat(response.code()).isEqualTo(202);
+    }
+
+    ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+    verify(apiClientMock).tagUpsertBatch(upsertRequests.capture());
+    assertThat(upsertRequests.getValue())
+        .containsExactly(allisaCase.toUpsertTagRequest("/Allisa/trademarks/", BASE_URL + "projekt/show/ID/"));
+  }
+
+  @Test
+  void notification_without_case_type() throws IOException {
+    try (Response response = notify("", "{\"ID\": 1, \"az\": \"P-1\"}")) {
+      assertThat(response.code()).isEqualTo(400);
+      assertThat(response.body().string()).isEqualTo("Query parameter caseType is required");
+    }
+    try (Response response = notify("?caseType=designs", "{\"ID\": 1, \"az\": \"P-1\"}")) {
+      assertThat(response.code()).isEqualTo(400);
+    }
+    verify(apiClientMock, never()).tagUpsertBatch(anyList());
+  }
+
+  private static Response notify(String query, String body) throws IOException {
+    return httpClient.newCall(new Request.Builder()
+        .url("http://localhost:" + connector.getCaseWebhookPort().get() + CaseWebhookServer.PATH + query)
+        .header(CaseWebhookServer.SECRET_HEADER, SECRET)
+        .post(RequestBody.create(JSON, body))
+        .build())
+        .execute();
+  }
+}
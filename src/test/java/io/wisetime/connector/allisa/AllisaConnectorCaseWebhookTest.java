@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.AllisaConnectorExtension.BASE_URL;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_PROBE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_WEBHOOK_PORT;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_WEBHOOK_SECRET;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_DEDUP_WINDOW_SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.CasePage;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+
+class AllisaConnectorCaseWebhookTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+  private static final String SECRET = "webhook-secret";
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private static RandomDataGenerator randomDataGenerator = new RandomDataGenerator();
+  @RegisterExtension
+  static final AllisaConnectorExtension CONNECTOR = new AllisaConnectorExtension();
+
+  private static AllisaApiService allisaApiServiceMock = CONNECTOR.getAllisaApiServiceMock();
+  private static ApiClient apiClientMock = CONNECTOR.getApiClientMock();
+  private static ConnectorStore connectorStoreMock = CONNECTOR.getConnectorStoreMock();
+  private static OkHttpClient httpClient = new OkHttpClient();
+  private static AllisaConnector connector;
+
+  @BeforeAll
+  static void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
+    RuntimeConfig.setProperty(ALLISA_SYNC_PROBE, "false");
+    // any free port
+    RuntimeConfig.setProperty(ALLISA_WEBHOOK_PORT, "0");
+    RuntimeConfig.setProperty(ALLISA_WEBHOOK_SECRET, SECRET);
+    // only notified upserts are deduplicated
+    RuntimeConfig.setProperty(TAG_UPSERT_DEDUP_WINDOW_SECONDS, "0");
+
+    connector = CONNECTOR.initConnector();
+  }
+
+  @Test
+  void notification_upserts_tags() throws IOException {
+    final AllisaCase allisaCase = randomDataGenerator.randomAllisaCase();
+
+    try (Response response = notify(SECRET, String.format("{\"ID\": %d, \"az\": \"%s\", \"prname\": \"%s\"}",
+        allisaCase.getCaseId(), allisaCase.getCaseReference(), allisaCase.getCaseDescription()))) {
+      assertThat(response.code()).isEqualTo(202);
+    }
+
+    ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+    verify(apiClientMock).tagUpsertBatch(upsertRequests.capture());
+    assertThat(upsertRequests.getValue())
+        .containsExactly(allisaCase.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/"));
+    verifyZeroInteractions(connectorStoreMock);
+  }
+
+  @Test
+  void notification_wrong_secret() throws IOException {
+    try (Response response = notify("wrong", "{\"ID\": 1, \"az\": \"P-1\"}")) {
+      assertThat(response.code()).isEqualTo(401);
+    }
+    verifyZeroInteractions(apiClientMock);
+  }
+
+  @Test
+  void notification_invalid_case() throws IOException {
+    try (Response response = notify(SECRET, "[{\"ID\": 1, \"az\": \"P-1\"}, {\"ID\": 2}]")) {
+      assertThat(response.code()).isEqualTo(400);
+      assertThat(response.body().string()).isEqualTo("Case reference is missing for case 2");
+    }
+    try (Response response = notify(SECRET, "not json")) {
+      assertThat(response.code()).isEqualTo(400);
+    }
+    verifyZeroInteractions(apiClientMock);
+  }
+
+  @Test
+  void notification_too_large() throws IOException {
+    final String description = StringUtils.repeat('x', CaseWebhookServer.MAX_BODY_BYTES);
+
+    try (Response response = notify(SECRET, "{\"ID\": 1, \"az\": \"P-1\", \"prname\": \"" + description + "\"}")) {
+      assertThat(response.code()).isEqualTo(413);
+    }
+    verifyZeroInteractions(apiClientMock);
+  }
+
+  @Test
+  void notification_upsert_failed() throws IOException {
+    doThrow(new IOException("Expected exception")).when(apiClientMock).tagUpsertBatch(anyList());
+
+    try (Response response = notify(SECRET, "{\"result\": {\"data\": [{\"ID\": 5, \"az\": \"P-5\"}]}}")) {
+      assertThat(response.code())
+          .as("Allisa should retry the notification")
+          .isEqualTo(503);
+    }
+  }
+
+  @Test
+  void syncNewCases_notified_cases_are_not_upserted_again() throws IOException {
+    final AllisaCase notifiedCase = randomDataGenerator.randomAllisaCase();
+    final AllisaCase missedCase = randomDataGenerator.randomAllisaCase();
+    connector.upsertNotifiedCases(CASE_TYPE, ImmutableList.of(notifiedCase));
+
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of(notifiedCase, missedCase))
+        .thenReturn(ImmutableList.of());
+    connector.syncNewCases(CASE_TYPE);
+
+    ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+    verify(apiClientMock, times(2)).tagUpsertBatch(upsertRequests.capture());
+    assertThat(upsertRequests.getAllValues().get(1))
+        .containsExactly(missedCase.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/"));
+    verify(connectorStoreMock).putLong("allisa_last_sync_id", missedCase.getCaseId());
+  }
+
+  @Test
+  void refreshCases_notified_cases_are_upserted_again() throws IOException {
+    final AllisaCase notifiedCase = randomDataGenerator.randomAllisaCase();
+    connector.upsertNotifiedCases(CASE_TYPE, ImmutableList.of(notifiedCase));
+
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(connectorStoreMock.getString(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.changed(ImmutableList.of(notifiedCase), "validator"));
+    connector.refreshCases(CASE_TYPE);
+
+    // the tag may have been changed in WiseTime since the notification
+    verify(apiClientMock, times(2))
+        .tagUpsertBatch(ImmutableList.of(notifiedCase.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/")));
+  }
+
+  @Test
+  void performTagUpdate_sync_runs_at_sync_interval() {
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of());
+
+    connector.performTagUpdate();
+    connector.performTagUpdate();
+
+    // the second tag update is within the sync interval
+    verify(allisaApiServiceMock, times(2)).getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong());
+  }
+
+  private static Response notify(String secret, String body) throws IOException {
+    return httpClient.newCall(new Request.Builder()
+        .url("http://localhost:" + connector.getCaseWebhookPort().get() + CaseWebhookServer.PATH)
+        .header(CaseWebhookServer.SECRET_HEADER, secret)
+        .post(RequestBody.create(JSON, body))
+        .build())
+        .execute();
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BASE_URL;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import io.wisetime.connector.ConnectorModule;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * Sets up connectors against mocked Allisa, WiseTime and store clients, with a fresh runtime config.
+ *
+ * Registered on a static field, the config and connectors are shared by the tests of the class, and the mocks are
+ * reset before each test. Registered on an instance field, each test gets its own config and connectors. Connectors
+ * are shut down and the config is cleared afterwards.
+ */
+class AllisaConnectorExtension implements BeforeAllCallback, AfterAllCallback, BeforeEachCallback, AfterEachCallback {
+
+  static final String BASE_URL = "https://allisa.cloud/demo/";
+
+  private final AllisaApiService allisaApiServiceMock = mock(AllisaApiService.class);
+  private final ApiClient apiClientMock = mock(ApiClient.class);
+  private final ConnectorStore connectorStoreMock = mock(ConnectorStore.class);
+  private final List<AllisaConnector> connectors = new ArrayList<>();
+  private boolean sharedByClass;
+
+  @Override
+  public void beforeAll(ExtensionContext context) {
+    sharedByClass = true;
+    start();
+  }
+
+  @Override
+  public void afterAll(ExtensionContext context) {
+    stop();
+  }
+
+  @Override
+  public void beforeEach(ExtensionContext context) {
+    if (sharedByClass) {
+      reset(allisaApiServiceMock, apiClientMock, connectorStoreMock);
+      doReturn(true).when(allisaApiServiceMock).canConnect();
+    } else {
+      start();
+    }
+  }
+
+  @Override
+  public void afterEach(ExtensionContext context) {
+    if (!sharedByClass) {
+      stop();
+    }
+  }
+
+  AllisaApiService getAllisaApiServiceMock() {
+    return allisaApiServiceMock;
+  }
+
+  ApiClient getApiClientMock() {
+    return apiClientMock;
+  }
+
+  ConnectorStore getConnectorStoreMock() {
+    return connectorStoreMock;
+  }
+
+  /**
+   * Creates an injector that provides the Allisa API mock.
+   */
+  Injector createInjector() {
+    return Guice.createInjector(binder -> binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock));
+  }
+
+  AllisaConnector newConnector() {
+    return newConnector(createInjector());
+  }
+
+  AllisaConnector newConnector(Injector injector) {
+    final AllisaConnector connector = injector.getInstance(AllisaConnector.class);
+    connectors.add(connector);
+    return connector;
+  }
+
+  AllisaConnector initConnector() {
+    final AllisaConnector connector = newConnector();
+    connector.init(connectorModule());
+    return connector;
+  }
+
+  ConnectorModule connectorModule() {
+    return new ConnectorModule(apiClientMock, connectorStoreMock, 5);
+  }
+
+  private void start() {
+    RuntimeConfig.rebuild();
+    RuntimeConfig.setProperty(ALLISA_BASE_URL, BASE_URL);
+    doReturn(true).when(allisaApiServiceMock).canConnect();
+  }
+
+  private void stop() {
+    connectors.forEach(AllisaConnector::shutdown);
+    connectors.clear();
+    RuntimeConfig.rebuild();
+  }
+}
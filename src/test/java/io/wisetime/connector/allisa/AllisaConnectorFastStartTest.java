@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_FAST_START;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class AllisaConnectorFastStartTest {
+
+  @RegisterExtension
+  final AllisaConnectorExtension connectorExtension = new AllisaConnectorExtension();
+
+  private final AllisaApiService allisaApiServiceMock = connectorExtension.getAllisaApiServiceMock();
+  private final ApiClient apiClientMock = connectorExtension.getApiClientMock();
+  private AllisaConnector connector;
+
+  @BeforeEach
+  void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, "wisetime_cases");
+    connector = connectorExtension.newConnector();
+  }
+
+  @Test
+  void init_fails_if_allisa_is_unreachable() {
+    when(allisaApiServiceMock.canConnect()).thenReturn(false);
+
+    assertThatThrownBy(() -> connector.init(connectorExtension.connectorModule()))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void fast_start_while_allisa_is_unreachable() {
+    RuntimeConfig.setProperty(ALLISA_FAST_START, "true");
+    when(allisaApiServiceMock.canConnect()).thenReturn(false);
+
+    connector.init(connectorExtension.connectorModule());
+
+    verify(allisaApiServiceMock, timeout(1000)).canConnect();
+    assertThat(connector.isConnectorHealthy()).isFalse();
+    connector.performTagUpdate();
+    connector.performTagUpdateSlowLoop();
+    verify(allisaApiServiceMock, never()).getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong());
+    verifyZeroInteractions(apiClientMock);
+  }
+
+  @Test
+  void fast_start_becomes_healthy_once_allisa_is_reachable() throws InterruptedException {
+    RuntimeConfig.setProperty(ALLISA_FAST_START, "true");
+    when(allisaApiServiceMock.canConnect()).thenReturn(true);
+
+    connector.init(connectorExtension.connectorModule());
+
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (!connector.isConnectorHealthy() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(connector.isConnectorHealthy()).isTrue();
+  }
+
+  @Test
+  void warmUp_formats_a_synthetic_time_group() {
+    RuntimeConfig.setProperty(ALLISA_FAST_START, "true");
+    when(allisaApiServiceMock.canConnect()).thenReturn(false);
+    connector.init(connectorExtension.connectorModule());
+    verify(allisaApiServiceMock, timeout(1000)).canConnect();
+
+    assertThat(connector.warmUp()).isTrue();
+
+    verify(allisaApiServiceMock, never()).postTime(any());
+    verifyZeroInteractions(apiClientMock);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_LEADER_LEASE_FILE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_LEADER_LEASE_SECONDS;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_REPLICA_ID;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_CURSOR_CHECK;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_PROBE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+class AllisaConnectorLeaderElectionTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+
+  @RegisterExtension
+  final AllisaConnectorExtension connectorExtension = new AllisaConnectorExtension();
+
+  private final AllisaApiService allisaApiServiceMock = connectorExtension.getAllisaApiServiceMock();
+  private final ApiClient apiClientMock = connectorExtension.getApiClientMock();
+  private final ConnectorStore connectorStoreMock = connectorExtension.getConnectorStoreMock();
+  private AllisaConnector replica1;
+  private AllisaConnector replica2;
+
+  @TempDir
+  Path tempDir;
+
+  @BeforeEach
+  void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
+    RuntimeConfig.setProperty(ALLISA_LEADER_LEASE_FILE, tempDir.resolve("lease").toString());
+    RuntimeConfig.setProperty(ALLISA_LEADER_LEASE_SECONDS, "1");
+    RuntimeConfig.setProperty(ALLISA_SYNC_PROBE, "false");
+    RuntimeConfig.setProperty(ALLISA_SYNC_CURSOR_CHECK, "false");
+
+    replica1 = startReplica("replica-1");
+  }
+
+  @Test
+  void only_the_leader_syncs_tags() throws InterruptedException {
+    assertThat(eventually(replica1::isTagSyncLeader)).isTrue();
+    replica2 = startReplica("replica-2");
+    Thread.sleep(100);
+
+    assertThat(replica2.isTagSyncLeader()).isFalse();
+    replica2.performTagUpdate();
+    replica2.performTagUpdateSlowLoop();
+    verify(allisaApiServiceMock, never()).getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong());
+    verify(allisaApiServiceMock, never()).getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any());
+    verifyZeroInteractions(apiClientMock, connectorStoreMock);
+  }
+
+  @Test
+  void failover_after_shutdown() throws InterruptedException {
+    assertThat(eventually(replica1::isTagSyncLeader)).isTrue();
+    replica2 = startReplica("replica-2");
+
+    replica1.shutdown();
+
+    assertThat(eventually(replica2::isTagSyncLeader))
+        .as("replica 2 takes over on its next lease renewal")
+        .isTrue();
+  }
+
+  @Test
+  void leader_keeps_the_sync_cursors_in_the_lease_file() throws Exception {
+    assertThat(eventually(replica1::isTagSyncLeader)).isTrue();
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(1L), anyLong()))
+        .thenReturn(ImmutableList.of(new RandomDataGenerator().randomAllisaCase()));
+
+    replica1.performTagUpdate();
+
+    assertThat(leaseValues()).containsKeys("value.allisa_last_sync_id", "value.allisa_last_sync_page");
+    verify(connectorStoreMock, never()).putLong(anyString(), anyLong());
+  }
+
+  @Test
+  void sync_stops_when_the_lease_is_lost() throws Exception {
+    assertThat(eventually(replica1::isTagSyncLeader)).isTrue();
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenAnswer(invocation -> {
+          // replica 2 takes over while replica 1 syncs the page
+          Files.write(tempDir.resolve("lease"),
+              "holder=replica-2\nfencingToken=99\nrenewals=0\nttlMillis=1000\n".getBytes());
+          return ImmutableList.of(new RandomDataGenerator().randomAllisaCase());
+        });
+
+    replica1.performTagUpdate();
+
+    verify(allisaApiServiceMock).getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong());
+    assertThat(leaseValues())
+        .as("the cursors of the new leader are kept")
+        .doesNotContainKey("value.allisa_last_sync_id");
+    assertThat(replica1.isTagSyncLeader()).isFalse();
+  }
+
+  private Properties leaseValues() throws IOException {
+    final Properties lease = new Properties();
+    try (Reader reader = Files.newBufferedReader(tempDir.resolve("lease"))) {
+      lease.load(reader);
+    }
+    return lease;
+  }
+
+  private AllisaConnector startReplica(String replicaId) {
+    RuntimeConfig.setProperty(ALLISA_REPLICA_ID, replicaId);
+    return connectorExtension.initConnector();
+  }
+
+  private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 40 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(50);
+    }
+    return condition.getAsBoolean();
+  }
+}
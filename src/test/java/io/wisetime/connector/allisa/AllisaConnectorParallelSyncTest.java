@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_WORKERS;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+class AllisaConnectorParallelSyncTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+  private static final String ALLISA_LAST_SYNC_KEY = "allisa_last_sync_id";
+  private static final String ALLISA_LAST_SYNC_PAGE = "allisa_last_sync_page";
+
+  private static RandomDataGenerator randomDataGenerator = new RandomDataGenerator();
+  @RegisterExtension
+  static final AllisaConnectorExtension CONNECTOR = new AllisaConnectorExtension();
+
+  private static AllisaApiService allisaApiServiceMock = CONNECTOR.getAllisaApiServiceMock();
+  private static ApiClient apiClientMock = CONNECTOR.getApiClientMock();
+  private static ConnectorStore connectorStoreMock = CONNECTOR.getConnectorStoreMock();
+  private static AllisaConnector connector;
+
+  @BeforeAll
+  static void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
+    RuntimeConfig.setProperty(ALLISA_SYNC_WORKERS, "3");
+
+    connector = CONNECTOR.initConnector();
+  }
+
+  @Test
+  void syncNewCases_pages_synced_in_parallel() throws IOException {
+    final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case2 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case3 = randomDataGenerator.randomAllisaCase();
+
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(1L), anyLong()))
+        .thenReturn(ImmutableList.of(case1, case2));
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(2L), anyLong()))
+        .thenReturn(ImmutableList.of(case3));
+
+    connector.syncNewCases(CASE_TYPE);
+
+    verify(apiClientMock, times(2)).tagUpsertBatch(anyList());
+    verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_KEY, case3.getCaseId());
+    verify(connectorStoreMock, times(1))
+        .putLong(eq(ALLISA_LAST_SYNC_PAGE), anyLong());
+    // page 3 was empty: keep syncing from the last page with cases, it could get more cases
+    verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_PAGE, 2L);
+  }
+
+  @Test
+  void syncNewCases_cursor_stops_before_failed_page() throws IOException {
+    final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
+    final List<AllisaCase> failingPage = ImmutableList.of(
+        randomDataGenerator.randomAllisaCase(), randomDataGenerator.randomAllisaCase());
+
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(1L), anyLong()))
+        .thenReturn(ImmutableList.of(case1));
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(2L), anyLong())).thenReturn(failingPage);
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), eq(3L), anyLong()))
+        .thenReturn(ImmutableList.of(randomDataGenerator.randomAllisaCase()));
+
+    final IOException causedBy = new IOException("Expected exception");
+    doAnswer(invocation -> {
+      if (invocation.<List<?>>getArgument(0).size() == failingPage.size()) {
+        throw causedBy;
+      }
+      return null;
+    }).when(apiClientMock).tagUpsertBatch(anyList());
+
+    assertThatThrownBy(() -> connector.syncNewCases(CASE_TYPE))
+        .isInstanceOf(RuntimeException.class)
+        .hasCause(causedBy);
+    // pages 1 and 3, and the failing page 2 with its retries
+    verify(apiClientMock, times(5)).tagUpsertBatch(anyList());
+    verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_KEY, case1.getCaseId());
+    verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_PAGE, 2L);
+    verify(connectorStoreMock, never()).putLong(ALLISA_LAST_SYNC_PAGE, 3L);
+  }
+}
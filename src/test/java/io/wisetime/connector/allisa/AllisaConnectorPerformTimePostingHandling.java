@@ -6,7 +6,9 @@ package io.wisetime.connector.allisa;
 
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -17,10 +19,12 @@ import static org.mockito.Mockito.when;
 
 import com.github.javafaker.Faker;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Guice;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.allisa.model.AllisaCase;
 import io.wisetime.connector.allisa.model.TimePostData;
+import io.wisetime.connector.allisa.util.Deadline;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.api_client.PostResult;
 import io.wisetime.connector.api_client.PostResult.PostResultStatus;
@@ -33,7 +37,7 @@ import io.wisetime.generated.connect.User;
 import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -60,6 +64,7 @@ class AllisaConnectorPerformTimePostingHandling {
     RuntimeConfig.rebuild();
     RuntimeConfig.setProperty(AllisaConnectorConfigKey.TAG_UPSERT_PATH, TAG_UPSERT_PATH);
     RuntimeConfig.setProperty(AllisaConnectorConfigKey.TIMEZONE, "Asia/Manila");
+    RuntimeConfig.setProperty(AllisaConnectorConfigKey.ALLISA_CASE_TYPE, "wisetime_cases");
 
     connector = Guice.createInjector(
         binder -> binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock)
@@ -97,8 +102,8 @@ class AllisaConnectorPerformTimePostingHandling {
     Tag tag = FAKE_ENTITIES.randomTag(TAG_UPSERT_PATH, "tag_not_exists");
     TimeGroup timeGroup = FAKE_ENTITIES.randomTimeGroup()
         .tags(ImmutableList.of(tag));
-    when(allisaApiServiceMock.getAllisaCaseByTagName(tag.getName()))
-        .thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(eq(ImmutableList.of(tag.getName())), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of());
 
     assertThat(connector.postTime(fakeRequest(), timeGroup).getStatus())
         .as("tag not found in db")
@@ -160,8 +165,8 @@ class AllisaConnectorPerformTimePostingHandling {
 
     final AllisaCase allisaCase1 = randomDataGenerator.randomAllisaCase(tag1.getName());
 
-    when(allisaApiServiceMock.getAllisaCaseByTagName(anyString()))
-        .thenReturn(Optional.of(allisaCase1));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of(tag1.getName(), allisaCase1));
 
     assertThat(connector.postTime(fakeRequest(), timeGroup).getStatus())
         .as("Valid time group should be posted successfully")
@@ -169,7 +174,7 @@ class AllisaConnectorPerformTimePostingHandling {
 
     // Verify time post creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     List<TimePostData> timeRegistrations = timeRegCaptor.getAllValues();
 
     assertThat(timeRegistrations.get(0).getTagId())
@@ -218,9 +223,8 @@ class AllisaConnectorPerformTimePostingHandling {
     final AllisaCase allisaCase1 = randomDataGenerator.randomAllisaCase(tag1.getName());
     final AllisaCase allisaCase2 = randomDataGenerator.randomAllisaCase(tag2.getName());
 
-    when(allisaApiServiceMock.getAllisaCaseByTagName(anyString()))
-        .thenReturn(Optional.of(allisaCase1))
-        .thenReturn(Optional.of(allisaCase2));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of(tag1.getName(), allisaCase1, tag2.getName(), allisaCase2));
 
     assertThat(connector.postTime(fakeRequest(), timeGroup).getStatus())
         .as("Valid time group should be posted successfully")
@@ -228,7 +232,7 @@ class AllisaConnectorPerformTimePostingHandling {
 
     // Verify time post creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     List<TimePostData> timeRegistrations = timeRegCaptor.getAllValues();
 
     assertThat(timeRegistrations.get(0).getTagId())
@@ -275,8 +279,8 @@ class AllisaConnectorPerformTimePostingHandling {
 
     final AllisaCase allisaCase1 = randomDataGenerator.randomAllisaCase(tag1.getName());
 
-    when(allisaApiServiceMock.getAllisaCaseByTagName(anyString()))
-        .thenReturn(Optional.of(allisaCase1));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenReturn(ImmutableMap.of(tag1.getName(), allisaCase1));
 
     assertThat(connector.postTime(fakeRequest(), timeGroup).getStatus())
         .as("Valid time group should be posted successfully")
@@ -284,7 +288,7 @@ class AllisaConnectorPerformTimePostingHandling {
 
     // Verify time post creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(1)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     List<TimePostData> timeRegistrations = timeRegCaptor.getAllValues();
 
     assertThat(timeRegistrations.get(0).getTagId())
@@ -359,7 +363,7 @@ class AllisaConnectorPerformTimePostingHandling {
         .isEqualTo(PostResultStatus.SUCCESS);
 
     final ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(timeGroup.getTags().size())).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(timeGroup.getTags().size())).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getValue().getUserId())
         .as("should use the external id as login id")
         .isEqualTo(externalId);
@@ -380,8 +384,9 @@ class AllisaConnectorPerformTimePostingHandling {
   }
 
   private void setPrerequisitesForSuccessfulPostTime(TimeGroup timeGroup) {
-    timeGroup.getTags().forEach(tag -> when(allisaApiServiceMock.getAllisaCaseByTagName(tag.getName()))
-        .thenReturn(Optional.of(randomDataGenerator.randomAllisaCase(tag.getName()))));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenReturn(timeGroup.getTags().stream()
+            .collect(Collectors.toMap(Tag::getName, tag -> randomDataGenerator.randomAllisaCase(tag.getName()))));
   }
 
   private Request fakeRequest() {
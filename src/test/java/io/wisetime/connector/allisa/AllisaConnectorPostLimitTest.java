@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_POST_MAX_CONCURRENCY;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_PROBE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Injector;
+import io.wisetime.connector.allisa.model.TimePostData;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import io.wisetime.connector.allisa.util.Deadline;
+import io.wisetime.connector.api_client.PostResult;
+import io.wisetime.connector.api_client.PostResult.PostResultStatus;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.generated.connect.Tag;
+import io.wisetime.generated.connect.TimeGroup;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import spark.Request;
+
+class AllisaConnectorPostLimitTest {
+
+  private static final String TAG_PATH = "/Allisa/";
+
+  @RegisterExtension
+  final AllisaConnectorExtension connectorExtension = new AllisaConnectorExtension();
+
+  private final FakeEntities fakeEntities = new FakeEntities();
+  private final AllisaApiService allisaApiServiceMock = connectorExtension.getAllisaApiServiceMock();
+  private final CountDownLatch lookupStarted = new CountDownLatch(1);
+  private final CountDownLatch releaseLookup = new CountDownLatch(1);
+  private final Tag tag = fakeEntities.randomTag(TAG_PATH, "tag1");
+  private AllisaConnector connector;
+  private ConnectorMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    RuntimeConfig.setProperty(TAG_UPSERT_PATH, TAG_PATH);
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, "wisetime_cases");
+    RuntimeConfig.setProperty(ALLISA_SYNC_PROBE, "false");
+  }
+
+  @AfterEach
+  void tearDown() {
+    releaseLookup.countDown();
+  }
+
+  @Test
+  void posts_over_the_limit_are_rejected() throws Exception {
+    RuntimeConfig.setProperty(ALLISA_POST_MAX_CONCURRENCY, "1");
+    initConnector();
+    blockLookups();
+
+    final CompletableFuture<PostResult> first = CompletableFuture.supplyAsync(() -> postTime());
+    assertThat(lookupStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(postTime().getStatus()).isEqualTo(PostResultStatus.TRANSIENT_FAILURE);
+    assertThat(metrics.getGauge(ConnectorMetrics.POST_REJECTED)).hasValue(1);
+
+    releaseLookup.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(PostResultStatus.SUCCESS);
+    assertThat(postTime().getStatus())
+        .as("the post in flight completed")
+        .isEqualTo(PostResultStatus.SUCCESS);
+    verify(allisaApiServiceMock, times(2)).postTime(any(TimePostData.class), any(Deadline.class));
+    assertThat(metrics.getGauge(ConnectorMetrics.POST_LIMIT)).hasValue(1);
+  }
+
+  @Test
+  void limit_starts_at_the_maximum() {
+    RuntimeConfig.setProperty(ALLISA_POST_MAX_CONCURRENCY, "3");
+    initConnector();
+    releaseLookup.countDown();
+    blockLookups();
+
+    assertThat(postTime().getStatus()).isEqualTo(PostResultStatus.SUCCESS);
+    assertThat(metrics.getGauge(ConnectorMetrics.POST_LIMIT)).hasValue(3);
+  }
+
+  @Test
+  void limit_is_opt_in() throws Exception {
+    initConnector();
+    blockLookups();
+
+    final CompletableFuture<PostResult> first = CompletableFuture.supplyAsync(() -> postTime());
+    assertThat(lookupStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    final CompletableFuture<PostResult> second = CompletableFuture.supplyAsync(() -> postTime());
+    releaseLookup.countDown();
+
+    assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(PostResultStatus.SUCCESS);
+    assertThat(second.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(PostResultStatus.SUCCESS);
+    assertThat(metrics.getGauge(ConnectorMetrics.POST_REJECTED)).isEmpty();
+  }
+
+  private void initConnector() {
+    final Injector injector = connectorExtension.createInjector();
+    connector = connectorExtension.newConnector(injector);
+    metrics = injector.getInstance(ConnectorMetrics.class);
+    connector.init(connectorExtension.connectorModule());
+  }
+
+  private void blockLookups() {
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenAnswer(invocation -> {
+          lookupStarted.countDown();
+          releaseLookup.await(5, TimeUnit.SECONDS);
+          return ImmutableMap.of(tag.getName(), new RandomDataGenerator().randomAllisaCase(tag.getName()));
+        });
+  }
+
+  private PostResult postTime() {
+    final TimeGroup timeGroup = fakeEntities.randomTimeGroup().tags(ImmutableList.of(tag));
+    return connector.postTime(mock(Request.class), timeGroup);
+  }
+}
@@ -5,6 +5,8 @@
 package io.wisetime.connector.allisa;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -17,14 +19,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.allisa.model.TimePostData;
+import io.wisetime.connector.allisa.util.Deadline;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.api_client.PostResult.PostResultStatus;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.generated.connect.Tag;
 import io.wisetime.generated.connect.TimeGroup;
 import io.wisetime.generated.connect.TimeRow;
 import io.wisetime.generated.connect.User;
-import java.util.Optional;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -51,6 +55,7 @@ class AllisaConnectorPostTimeNarrativeTest {
     RuntimeConfig.rebuild();
     RuntimeConfig.setProperty(ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_PATH, TAG_UPSERT_PATH);
     RuntimeConfig.setProperty(ConnectorLauncher.AllisaConnectorConfigKey.TIMEZONE, "Asia/Manila");
+    RuntimeConfig.setProperty(ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE, "wisetime_cases");
 
     // create connector to test for narrative showing row duration
     connector = Guice.createInjector(
@@ -103,7 +108,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     // Verify Time Registration creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getAllValues().get(0).getNarrative())
         .as("should use template")
         .startsWith(timeGroup.getDescription());
@@ -149,7 +154,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     // Verify Time Registration creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getAllValues().get(0).getNarrative())
         .as("should use template")
         .startsWith(timeGroup.getDescription());
@@ -197,7 +202,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     // Verify Time Registration creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getAllValues().get(0).getNarrative())
         .as("should use template")
         .startsWith(timeGroup.getDescription());
@@ -240,7 +245,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     // Verify Time Registration creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getAllValues().get(0).getNarrative())
         .as("should use template if `INVOICE_COMMENT_OVERRIDE` env variable is not set")
         .startsWith(timeGroup.getDescription());
@@ -277,7 +282,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     ArgumentCaptor<TimePostData> timeRegistrationCaptor =
         ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegistrationCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegistrationCaptor.capture(), any(Deadline.class));
     final String budgetLineCommentForCase1 = timeRegistrationCaptor.getAllValues().get(0).getNarrative();
     assertThat(budgetLineCommentForCase1)
         .as("should display narrative only")
@@ -315,7 +320,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     ArgumentCaptor<TimePostData> timeRegistrationCaptor =
         ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegistrationCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegistrationCaptor.capture(), any(Deadline.class));
     final String budgetLineCommentForCase1 = timeRegistrationCaptor.getAllValues().get(0).getNarrative();
     assertThat(budgetLineCommentForCase1)
         .as("should display narrative only")
@@ -358,7 +363,7 @@ class AllisaConnectorPostTimeNarrativeTest {
 
     // Verify Time Registration creation
     ArgumentCaptor<TimePostData> timeRegCaptor = ArgumentCaptor.forClass(TimePostData.class);
-    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture());
+    verify(allisaApiServiceMock, times(2)).postTime(timeRegCaptor.capture(), any(Deadline.class));
     assertThat(timeRegCaptor.getAllValues().get(0).getNarrative())
         .as("should use template if `INVOICE_COMMENT_OVERRIDE` env variable is not set")
         .startsWith(timeGroup.getDescription());
@@ -374,7 +379,8 @@ class AllisaConnectorPostTimeNarrativeTest {
   }
 
   private void setPrerequisitesForSuccessfulPostTime(TimeGroup timeGroup) {
-    timeGroup.getTags().forEach(tag -> when(allisaApiServiceMock.getAllisaCaseByTagName(tag.getName()))
-        .thenReturn(Optional.of(randomDataGenerator.randomAllisaCase(tag.getName()))));
+    when(allisaApiServiceMock.getAllisaCasesByTagNames(anyCollection(), any(Deadline.class)))
+        .thenReturn(timeGroup.getTags().stream()
+            .collect(Collectors.toMap(Tag::getName, tag -> randomDataGenerator.randomAllisaCase(tag.getName()))));
   }
 }
@@ -5,11 +5,16 @@
 package io.wisetime.connector.allisa;
 
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BASE_URL;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_REFRESH_SKIP_UNCHANGED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -24,6 +29,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.CasePage;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.datastore.ConnectorStore;
@@ -41,9 +47,12 @@ import org.mockito.ArgumentCaptor;
  */
 class AllisaConnectorRefreshCasesTest {
 
+  private static final String CASE_TYPE = "wisetime_cases";
   private static final String BASE_URL = "https://allisa.cloud/demo/";
   private static final String ALLISA_LAST_REFRESHED_KEY = "allisa_last_refreshed_id";
   private static final String ALLISA_LAST_REFRESHED_PAGE = "allisa_last_refreshed_page";
+  private static final String ALLISA_REFRESHED_PAGE_VALIDATOR = "allisa_refreshed_page_validator_";
+  private static final String VALIDATOR = "etag:\"v1\"";
 
   private static RandomDataGenerator randomDataGenerator = new RandomDataGenerator();
   private static AllisaApiService allisaApiServiceMock = mock(AllisaApiService.class);
@@ -55,6 +64,7 @@ class AllisaConnectorRefreshCasesTest {
   static void setUp() {
     RuntimeConfig.rebuild();
     RuntimeConfig.setProperty(ALLISA_BASE_URL, BASE_URL);
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
 
     connector = Guice.createInjector(binder ->
         binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock)
@@ -76,9 +86,10 @@ class AllisaConnectorRefreshCasesTest {
 
   @Test
   void refreshCases_no_cases() {
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong())).thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.changed(ImmutableList.of(), VALIDATOR));
 
-    connector.refreshCases();
+    connector.refreshCases(CASE_TYPE);
 
     verifyZeroInteractions(apiClientMock);
 
@@ -88,18 +99,21 @@ class AllisaConnectorRefreshCasesTest {
 
   @Test
   void refreshCases_upsert_error() throws IOException {
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong()))
-        .thenReturn(ImmutableList.of(randomDataGenerator.randomAllisaCase(), randomDataGenerator.randomAllisaCase()));
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.changed(
+            ImmutableList.of(randomDataGenerator.randomAllisaCase(), randomDataGenerator.randomAllisaCase()), VALIDATOR));
 
     IOException casedBy = new IOException("Expected exception");
     doThrow(casedBy)
         .when(apiClientMock).tagUpsertBatch(anyList());
 
-    assertThatThrownBy(() -> connector.refreshCases())
+    assertThatThrownBy(() -> connector.refreshCases(CASE_TYPE))
         .isInstanceOf(RuntimeException.class)
         .hasCause(casedBy);
-    verify(apiClientMock, times(1)).tagUpsertBatch(anyList());
+    // the failed batch is retried
+    verify(apiClientMock, times(3)).tagUpsertBatch(anyList());
     verify(connectorStoreMock, never()).putLong(anyString(), anyLong());
+    verify(connectorStoreMock, never()).putString(anyString(), anyString());
   }
 
   @Test
@@ -110,11 +124,10 @@ class AllisaConnectorRefreshCasesTest {
 
     when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
 
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong()))
-        .thenReturn(ImmutableList.of(case1, case2))
-        .thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.changed(ImmutableList.of(case1, case2), VALIDATOR));
 
-    connector.refreshCases();
+    connector.refreshCases(CASE_TYPE);
 
     ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
     verify(apiClientMock, times(1)).tagUpsertBatch(upsertRequests.capture());
@@ -129,5 +142,41 @@ class AllisaConnectorRefreshCasesTest {
         .putLong(ALLISA_LAST_REFRESHED_KEY, case2.getCaseId());
     verify(connectorStoreMock, times(1))
         .putLong(ALLISA_LAST_REFRESHED_PAGE, 1L);
+    verify(connectorStoreMock, times(1))
+        .putString(ALLISA_REFRESHED_PAGE_VALIDATOR + 1, VALIDATOR);
+  }
+
+  @Test
+  void refreshCases_unchanged_page() {
+    when(connectorStoreMock.getLong(ALLISA_LAST_REFRESHED_PAGE)).thenReturn(Optional.of(2L));
+    when(connectorStoreMock.getString(ALLISA_REFRESHED_PAGE_VALIDATOR + 3)).thenReturn(Optional.of(VALIDATOR));
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.unchanged(VALIDATOR));
+
+    connector.refreshCases(CASE_TYPE);
+
+    verify(allisaApiServiceMock).getChangedAllisaCases(eq(CASE_TYPE), anyLong(), eq(3L), anyLong(), eq(VALIDATOR));
+    verifyZeroInteractions(apiClientMock);
+    verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_REFRESHED_PAGE, 3L);
+    verify(connectorStoreMock, never()).putLong(eq(ALLISA_LAST_REFRESHED_KEY), anyLong());
+    verify(connectorStoreMock, never()).putString(anyString(), anyString());
+  }
+
+  @Test
+  void refreshCases_skip_unchanged_disabled() throws IOException {
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(connectorStoreMock.getString(ALLISA_REFRESHED_PAGE_VALIDATOR + 1)).thenReturn(Optional.of(VALIDATOR));
+    when(allisaApiServiceMock.getChangedAllisaCases(anyString(), anyLong(), anyLong(), anyLong(), any()))
+        .thenReturn(CasePage.changed(ImmutableList.of(randomDataGenerator.randomAllisaCase()), VALIDATOR));
+
+    RuntimeConfig.setProperty(ALLISA_REFRESH_SKIP_UNCHANGED, "false");
+    try {
+      connector.refreshCases(CASE_TYPE);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_REFRESH_SKIP_UNCHANGED);
+    }
+
+    verify(allisaApiServiceMock).getChangedAllisaCases(eq(CASE_TYPE), anyLong(), eq(1L), anyLong(), isNull());
+    verify(apiClientMock, times(1)).tagUpsertBatch(anyList());
   }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SHUTDOWN_TIMEOUT_SECONDS;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_PROBE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.api_client.PostResult.PostResultStatus;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.generated.connect.TimeGroup;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import spark.Request;
+
+class AllisaConnectorShutdownTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+  private static final String ALLISA_LAST_SYNC_PAGE = "allisa_last_sync_page";
+
+  private final FakeEntities fakeEntities = new FakeEntities();
+  @RegisterExtension
+  final AllisaConnectorExtension connectorExtension = new AllisaConnectorExtension();
+
+  private final AllisaApiService allisaApiServiceMock = connectorExtension.getAllisaApiServiceMock();
+  private final ApiClient apiClientMock = connectorExtension.getApiClientMock();
+  private final ConnectorStore connectorStoreMock = connectorExtension.getConnectorStoreMock();
+  private final CountDownLatch pageStarted = new CountDownLatch(1);
+  private final CountDownLatch releasePage = new CountDownLatch(1);
+  private AllisaConnector connector;
+
+  @BeforeEach
+  void setUp() {
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
+    RuntimeConfig.setProperty(ALLISA_SYNC_PROBE, "false");
+    connector = connectorExtension.newConnector();
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+  }
+
+  @AfterEach
+  void tearDown() {
+    releasePage.countDown();
+  }
+
+  @Test
+  void postTime_after_shutdown_is_a_transient_failure() {
+    connector.init(connectorExtension.connectorModule());
+
+    connector.shutdown();
+
+    assertThat(connector.postTime(mock(Request.class), fakeEntities.randomTimeGroup()).getStatus())
+        .isEqualTo(PostResultStatus.TRANSIENT_FAILURE);
+    verify(allisaApiServiceMock, never()).postTime(any());
+  }
+
+  @Test
+  void shutdown_lets_the_current_sync_page_finish() throws Exception {
+    blockFirstPage();
+    connector.init(connectorExtension.connectorModule());
+    final CompletableFuture<Void> tagUpdate = CompletableFuture.runAsync(connector::performTagUpdate);
+    assertThat(pageStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+    final CompletableFuture<Void> shutdown = CompletableFuture.runAsync(connector::shutdown);
+    awaitPostsRejected();
+    assertThat(shutdown).isNotDone();
+    releasePage.countDown();
+
+    shutdown.get(5, TimeUnit.SECONDS);
+    tagUpdate.get(5, TimeUnit.SECONDS);
+    verify(apiClientMock, times(1)).tagUpsertBatch(any());
+    verify(connectorStoreMock).putLong(ALLISA_LAST_SYNC_PAGE, 2L);
+    // the sync stopped after the page
+    verify(allisaApiServiceMock, times(1)).getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong());
+  }
+
+  @Test
+  void shutdown_gives_up_after_the_timeout() throws Exception {
+    RuntimeConfig.setProperty(ALLISA_SHUTDOWN_TIMEOUT_SECONDS, "0");
+    blockFirstPage();
+    connector.init(connectorExtension.connectorModule());
+    CompletableFuture.runAsync(connector::performTagUpdate);
+    assertThat(pageStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+    CompletableFuture.runAsync(connector::shutdown).get(5, TimeUnit.SECONDS);
+
+    verify(connectorStoreMock, never()).putLong(eq(ALLISA_LAST_SYNC_PAGE), anyLong());
+  }
+
+  private void blockFirstPage() {
+    final AllisaCase allisaCase = new RandomDataGenerator().randomAllisaCase();
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenAnswer(invocation -> {
+          pageStarted.countDown();
+          releasePage.await(5, TimeUnit.SECONDS);
+          return ImmutableList.of(allisaCase);
+        });
+  }
+
+  private void awaitPostsRejected() throws InterruptedException {
+    // without tags, posts succeed right away until the shutdown rejects them
+    final TimeGroup timeGroup = fakeEntities.randomTimeGroup().tags(Collections.emptyList());
+    final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+    while (connector.postTime(mock(Request.class), timeGroup).getStatus() != PostResultStatus.TRANSIENT_FAILURE
+        && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+}
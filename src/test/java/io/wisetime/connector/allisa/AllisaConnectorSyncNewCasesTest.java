@@ -5,11 +5,18 @@
 package io.wisetime.connector.allisa;
 
 import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BASE_URL;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BOOTSTRAP_FILE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_MAX_PAGES;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_TIME_BUDGET_SECONDS;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_BATCH_SIZE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.TAG_UPSERT_SUB_BATCH_SIZE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -23,18 +30,25 @@ import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
+import com.google.inject.Injector;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.util.ConnectorException;
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.generated.connect.UpsertTagRequest;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import org.apache.http.client.HttpResponseException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 
 /**
@@ -42,6 +56,7 @@ import org.mockito.ArgumentCaptor;
  */
 class AllisaConnectorSyncNewCasesTest {
 
+  private static final String CASE_TYPE = "wisetime_cases";
   private static final String BASE_URL = "https://allisa.cloud/demo/";
   private static final String ALLISA_LAST_SYNC_PAGE = "allisa_last_sync_page";
 
@@ -50,15 +65,21 @@ class AllisaConnectorSyncNewCasesTest {
   private static ApiClient apiClientMock = mock(ApiClient.class);
   private static ConnectorStore connectorStoreMock = mock(ConnectorStore.class);
   private static AllisaConnector connector;
+  private static ConnectorMetrics metrics;
+
+  @TempDir
+  Path tempDir;
 
   @BeforeAll
   static void setUp() {
     RuntimeConfig.rebuild();
     RuntimeConfig.setProperty(ALLISA_BASE_URL, BASE_URL);
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, CASE_TYPE);
 
-    connector = Guice.createInjector(binder ->
-        binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock))
-        .getInstance(AllisaConnector.class);
+    final Injector injector = Guice.createInjector(binder ->
+        binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock));
+    connector = injector.getInstance(AllisaConnector.class);
+    metrics = injector.getInstance(ConnectorMetrics.class);
 
     // Ensure AllisaConnector#init will not fail
     doReturn(true).when(allisaApiServiceMock).canConnect();
@@ -75,13 +96,14 @@ class AllisaConnectorSyncNewCasesTest {
 
   @Test
   void syncNewCases_no_cases() {
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong())).thenReturn(ImmutableList.of());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of());
 
     when(connectorStoreMock.getLong(eq(ALLISA_LAST_SYNC_PAGE)))
         .thenReturn(Optional.of(1L))
         .thenReturn(Optional.of(2L));
 
-    connector.syncNewCases();
+    connector.syncNewCases(CASE_TYPE);
 
     verifyZeroInteractions(apiClientMock);
     verify(connectorStoreMock, times(1)).putLong(anyString(), eq(2L));
@@ -90,20 +112,106 @@ class AllisaConnectorSyncNewCasesTest {
 
   @Test
   void syncNewCases_upsert_error() throws IOException {
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong()))
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
         .thenReturn(ImmutableList.of(randomDataGenerator.randomAllisaCase(), randomDataGenerator.randomAllisaCase()));
 
     IOException casedBy = new IOException("Expected exception");
     doThrow(casedBy)
         .when(apiClientMock).tagUpsertBatch(anyList());
 
-    assertThatThrownBy(() -> connector.syncNewCases())
+    assertThatThrownBy(() -> connector.syncNewCases(CASE_TYPE))
         .isInstanceOf(RuntimeException.class)
         .hasCause(casedBy);
-    verify(apiClientMock, times(1)).tagUpsertBatch(anyList());
+    // the failed batch is retried
+    verify(apiClientMock, times(3)).tagUpsertBatch(anyList());
     verify(connectorStoreMock, never()).putLong(anyString(), anyLong());
   }
 
+  @Test
+  void syncNewCases_rejected_upsert_is_not_retried() throws IOException {
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of(randomDataGenerator.randomAllisaCase()));
+    doThrow(new HttpResponseException(400, "Bad Request")).when(apiClientMock).tagUpsertBatch(anyList());
+
+    assertThatThrownBy(() -> connector.syncNewCases(CASE_TYPE))
+        .isInstanceOf(ConnectorException.class);
+    verify(apiClientMock, times(1)).tagUpsertBatch(anyList());
+  }
+
+  @Test
+  void syncNewCases_failed_upserts_are_requeued() throws IOException {
+    final AllisaCase failingCase = randomDataGenerator.randomAllisaCase();
+    final AllisaCase otherCase = randomDataGenerator.randomAllisaCase();
+    final UpsertTagRequest failingRequest = failingCase.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/");
+    RuntimeConfig.setProperty(TAG_UPSERT_SUB_BATCH_SIZE, "1");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of(failingCase, otherCase))
+          .thenReturn(ImmutableList.of());
+      doThrow(new HttpResponseException(503, "Service Unavailable"))
+          .when(apiClientMock).tagUpsertBatch(ImmutableList.of(failingRequest));
+
+      assertThat(connector.syncNewCases(CASE_TYPE).isComplete())
+          .as("the sync goes on without the failed tag")
+          .isTrue();
+      verify(apiClientMock, times(3)).tagUpsertBatch(ImmutableList.of(failingRequest));
+      verify(connectorStoreMock).putLong("allisa_last_sync_id", otherCase.getCaseId());
+
+      reset(apiClientMock);
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of());
+      connector.performTagUpdate();
+      verify(apiClientMock, times(1)).tagUpsertBatch(ImmutableList.of(failingRequest));
+    } finally {
+      RuntimeConfig.clearProperty(TAG_UPSERT_SUB_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void retryRequeuedUpserts_failed_retry_is_requeued() throws IOException {
+    final AllisaCase failingCase = randomDataGenerator.randomAllisaCase();
+    final AllisaCase otherCase = randomDataGenerator.randomAllisaCase();
+    final UpsertTagRequest failingRequest = failingCase.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/");
+    RuntimeConfig.setProperty(TAG_UPSERT_SUB_BATCH_SIZE, "1");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of(failingCase, otherCase))
+          .thenReturn(ImmutableList.of());
+      doThrow(new HttpResponseException(503, "Service Unavailable"))
+          .when(apiClientMock).tagUpsertBatch(ImmutableList.of(failingRequest));
+      connector.syncNewCases(CASE_TYPE);
+
+      assertThatThrownBy(() -> connector.performTagUpdate())
+          .as("the retry fails again")
+          .isInstanceOf(RuntimeException.class);
+
+      reset(apiClientMock);
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of());
+      connector.performTagUpdate();
+      verify(apiClientMock, times(1)).tagUpsertBatch(ImmutableList.of(failingRequest));
+    } finally {
+      RuntimeConfig.clearProperty(TAG_UPSERT_SUB_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void isPermanentUpsertFailure() {
+    assertThat(AllisaConnector.isPermanentUpsertFailure(new HttpResponseException(400, "Bad Request"))).isTrue();
+    assertThat(AllisaConnector.isPermanentUpsertFailure(
+        new IOException("Failed to upsert tags", new HttpResponseException(403, "Forbidden"))))
+        .as("the status of a wrapped response error")
+        .isTrue();
+    assertThat(AllisaConnector.isPermanentUpsertFailure(new HttpResponseException(408, "Request Timeout"))).isFalse();
+    assertThat(AllisaConnector.isPermanentUpsertFailure(new HttpResponseException(429, "Too Many Requests"))).isFalse();
+    assertThat(AllisaConnector.isPermanentUpsertFailure(new HttpResponseException(503, "Service Unavailable")))
+        .isFalse();
+    assertThat(AllisaConnector.isPermanentUpsertFailure(new IOException("Connection reset"))).isFalse();
+  }
+
   @Test
   void syncNewCases_new_cases_found() throws IOException {
     final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
@@ -111,11 +219,11 @@ class AllisaConnectorSyncNewCasesTest {
 
     when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
 
-    when(allisaApiServiceMock.getNewAllisaCases(anyLong(), anyLong(), anyLong()))
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
         .thenReturn(ImmutableList.of(case1, case2))
         .thenReturn(ImmutableList.of());
 
-    connector.syncNewCases();
+    connector.syncNewCases(CASE_TYPE);
 
     ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
     verify(apiClientMock, times(1)).tagUpsertBatch(upsertRequests.capture());
@@ -129,4 +237,281 @@ class AllisaConnectorSyncNewCasesTest {
     verify(connectorStoreMock, times(1))
         .putLong("allisa_last_sync_id", case2.getCaseId());
   }
+
+  @Test
+  void syncNewCases_only_failed_sub_batches_are_retried() throws IOException {
+    final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case2 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case3 = randomDataGenerator.randomAllisaCase();
+    RuntimeConfig.setProperty(TAG_UPSERT_SUB_BATCH_SIZE, "1");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of(case1, case2, case3))
+          .thenReturn(ImmutableList.of());
+      final List<UpsertTagRequest> failingSubBatch = ImmutableList.of(
+          case2.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/"));
+      doThrow(new IOException("Expected exception"))
+          .doNothing()
+          .when(apiClientMock).tagUpsertBatch(failingSubBatch);
+
+      connector.syncNewCases(CASE_TYPE);
+
+      verify(apiClientMock, times(4)).tagUpsertBatch(anyList());
+      verify(apiClientMock, times(2)).tagUpsertBatch(failingSubBatch);
+      verify(connectorStoreMock, times(1)).putLong("allisa_last_sync_id", case3.getCaseId());
+    } finally {
+      RuntimeConfig.clearProperty(TAG_UPSERT_SUB_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void syncNewCases_unchanged_cases_are_not_upserted_again() throws IOException {
+    final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case2 = randomDataGenerator.randomAllisaCase();
+    final AllisaCase case2Renamed = randomDataGenerator.randomAllisaCase()
+        .setCaseId(case2.getCaseId())
+        .setCaseReference(case2.getCaseReference());
+
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of(case1, case2))
+        .thenReturn(ImmutableList.of())
+        // the list shifted, the cases show up again
+        .thenReturn(ImmutableList.of(case1, case2Renamed))
+        .thenReturn(ImmutableList.of());
+
+    connector.syncNewCases(CASE_TYPE);
+    connector.syncNewCases(CASE_TYPE);
+
+    ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+    verify(apiClientMock, times(2)).tagUpsertBatch(upsertRequests.capture());
+    assertThat(upsertRequests.getAllValues().get(1))
+        .as("only the changed case is upserted again")
+        .containsExactly(case2Renamed.toUpsertTagRequest("/Allisa/", BASE_URL + "projekt/show/ID/"));
+  }
+
+  @Test
+  void syncNewCases_stops_at_page_budget() throws IOException {
+    RuntimeConfig.setProperty(ALLISA_SYNC_MAX_PAGES, "2");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      when(connectorStoreMock.getLong(ALLISA_LAST_SYNC_PAGE))
+          .thenReturn(Optional.empty())
+          .thenReturn(Optional.of(2L))
+          .thenReturn(Optional.of(3L));
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenAnswer(invocation -> ImmutableList.of(randomDataGenerator.randomAllisaCase()));
+      // 1200 cases in the listing, the first two pages of 500 have been synced
+      when(allisaApiServiceMock.getAllisaCaseAt(anyString(), anyLong())).thenAnswer(invocation ->
+          invocation.<Long>getArgument(1) <= 1200 ? Optional.of(new AllisaCase()) : Optional.empty());
+
+      assertThat(connector.syncNewCases(CASE_TYPE).isComplete()).isFalse();
+
+      verify(apiClientMock, times(2)).tagUpsertBatch(anyList());
+      verify(allisaApiServiceMock, never()).getNewAllisaCases(anyString(), anyLong(), eq(3L), anyLong());
+      verify(connectorStoreMock).putLong(ALLISA_LAST_SYNC_PAGE, 3L);
+      assertThat(metrics.getGauge(ConnectorMetrics.SYNC_BACKLOG)).hasValue(200);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_SYNC_MAX_PAGES);
+    }
+  }
+
+  @Test
+  void syncNewCases_syncs_a_page_when_time_budget_is_used_up() throws IOException {
+    RuntimeConfig.setProperty(ALLISA_SYNC_TIME_BUDGET_SECONDS, "0");
+    try {
+      final AllisaCase case1 = randomDataGenerator.randomAllisaCase();
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+          .thenReturn(ImmutableList.of(case1))
+          .thenReturn(ImmutableList.of(randomDataGenerator.randomAllisaCase()));
+
+      final AllisaConnector.SyncProgress progress = connector.syncNewCases(CASE_TYPE);
+
+      assertThat(progress.isComplete()).isFalse();
+      assertThat(progress.getSyncedCases()).isEqualTo(1);
+      verify(connectorStoreMock).putLong("allisa_last_sync_id", case1.getCaseId());
+      verify(connectorStoreMock).putLong(ALLISA_LAST_SYNC_PAGE, 2L);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_SYNC_TIME_BUDGET_SECONDS);
+    }
+  }
+
+  @Test
+  void syncNewCases_complete_sync_has_no_backlog() {
+    when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+    when(allisaApiServiceMock.getNewAllisaCases(anyString(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(ImmutableList.of());
+
+    assertThat(connector.syncNewCases(CASE_TYPE).isComplete()).isTrue();
+    assertThat(metrics.getGauge(ConnectorMetrics.SYNC_BACKLOG)).hasValue(0);
+  }
+
+  @Test
+  void bootstrapFromExport() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.csv"), ImmutableList.of(
+        "ID,az,prname", "3,P-3,Third", "7,P-7,Seventh", "5,P-5,Fifth"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    RuntimeConfig.setProperty(TAG_UPSERT_BATCH_SIZE, "2");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+
+      connector.bootstrapFromExport();
+
+      ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+      verify(apiClientMock, times(2)).tagUpsertBatch(upsertRequests.capture());
+      assertThat(upsertRequests.getAllValues())
+          .flatExtracting(requests -> requests)
+          .extracting(UpsertTagRequest::getName)
+          .containsExactlyInAnyOrder("P-3", "P-7", "P-5");
+      verify(connectorStoreMock, times(1)).putLong("allisa_last_sync_id", 7L);
+      verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_PAGE, 1L);
+      verify(connectorStoreMock, times(1)).putLong("allisa_bootstrap_attempted", 1L);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+      RuntimeConfig.clearProperty(TAG_UPSERT_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_finds_page_in_listing() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.csv"), ImmutableList.of(
+        "ID,az,prname", "3,L-3,Third", "7,L-7,Seventh", "5,L-5,Fifth"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    RuntimeConfig.setProperty(TAG_UPSERT_BATCH_SIZE, "2");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      // cases 4 and 8 were created after the export, so the first case after the export is on the third page
+      final List<Long> listing = ImmutableList.of(3L, 4L, 5L, 7L, 8L);
+      when(allisaApiServiceMock.getAllisaCaseAt(eq(CASE_TYPE), anyLong())).thenAnswer(invocation -> {
+        final long position = invocation.getArgument(1);
+        return position <= listing.size()
+            ? Optional.of(new AllisaCase().setCaseId(listing.get((int) position - 1)))
+            : Optional.empty();
+      });
+
+      assertThat(connector.bootstrapFromExport()).isTrue();
+
+      verify(connectorStoreMock, times(1)).putLong("allisa_last_sync_id", 7L);
+      verify(connectorStoreMock, times(1)).putLong(ALLISA_LAST_SYNC_PAGE, 3L);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+      RuntimeConfig.clearProperty(TAG_UPSERT_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_continues_after_budget() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.csv"), ImmutableList.of(
+        "ID,az,prname", "3,B-3,Third", "5,B-5,Fifth", "7,B-7,Seventh"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    RuntimeConfig.setProperty(TAG_UPSERT_BATCH_SIZE, "2");
+    RuntimeConfig.setProperty(ALLISA_SYNC_TIME_BUDGET_SECONDS, "0");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+
+      assertThat(connector.bootstrapFromExport())
+          .as("the budget is used up after the first batch")
+          .isFalse();
+      verify(connectorStoreMock, times(1)).putLong("allisa_bootstrap_batches", 1L);
+      verify(connectorStoreMock, never()).putLong(eq("allisa_last_sync_id"), anyLong());
+
+      reset(apiClientMock);
+      when(connectorStoreMock.getLong("allisa_bootstrap_batches")).thenReturn(Optional.of(1L));
+      assertThat(connector.bootstrapFromExport()).isTrue();
+
+      ArgumentCaptor<List<UpsertTagRequest>> upsertRequests = ArgumentCaptor.forClass(List.class);
+      verify(apiClientMock, times(1)).tagUpsertBatch(upsertRequests.capture());
+      assertThat(upsertRequests.getValue())
+          .extracting(UpsertTagRequest::getName)
+          .containsExactly("B-7");
+      verify(connectorStoreMock, times(1)).putLong("allisa_last_sync_id", 7L);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+      RuntimeConfig.clearProperty(TAG_UPSERT_BATCH_SIZE);
+      RuntimeConfig.clearProperty(ALLISA_SYNC_TIME_BUDGET_SECONDS);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_rejected_batch_falls_back_to_the_sync() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.csv"), ImmutableList.of(
+        "ID,az,prname", "3,R-3,Third", "5,R-5,Fifth", "7,R-7,Seventh"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    RuntimeConfig.setProperty(TAG_UPSERT_BATCH_SIZE, "1");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      doThrow(new HttpResponseException(400, "Bad Request")).when(apiClientMock)
+          .tagUpsertBatch(argThat(requests -> requests.get(0).getName().equals("R-5")));
+
+      assertThat(connector.bootstrapFromExport())
+          .as("the new case sync goes through all cases instead")
+          .isTrue();
+
+      verify(connectorStoreMock).putLong("allisa_bootstrap_batches", 1L);
+      verify(connectorStoreMock).putLong("allisa_bootstrap_attempted", 1L);
+      verify(connectorStoreMock, never()).putLong(eq("allisa_last_sync_id"), anyLong());
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+      RuntimeConfig.clearProperty(TAG_UPSERT_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_failed_batch_keeps_progress() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.csv"), ImmutableList.of(
+        "ID,az,prname", "3,T-3,Third", "5,T-5,Fifth", "7,T-7,Seventh"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    RuntimeConfig.setProperty(TAG_UPSERT_BATCH_SIZE, "1");
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+      doThrow(new HttpResponseException(503, "Service Unavailable")).when(apiClientMock)
+          .tagUpsertBatch(argThat(requests -> requests.get(0).getName().equals("T-5")));
+
+      assertThatThrownBy(() -> connector.bootstrapFromExport()).isInstanceOf(RuntimeException.class);
+
+      verify(connectorStoreMock).putLong("allisa_bootstrap_batches", 1L);
+      verify(connectorStoreMock, never()).putLong(eq("allisa_bootstrap_attempted"), anyLong());
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+      RuntimeConfig.clearProperty(TAG_UPSERT_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_unusable_export_is_attempted_once() throws IOException {
+    final Path exportFile = Files.write(tempDir.resolve("export.json"), ImmutableList.of("{\"message\": \"none\"}"));
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, exportFile.toString());
+    try {
+      when(connectorStoreMock.getLong(anyString())).thenReturn(Optional.empty());
+
+      assertThat(connector.bootstrapFromExport()).isTrue();
+      verify(connectorStoreMock, times(1)).putLong("allisa_bootstrap_attempted", 1L);
+
+      when(connectorStoreMock.getLong("allisa_bootstrap_attempted")).thenReturn(Optional.of(1L));
+      Files.delete(exportFile);
+      assertThat(connector.bootstrapFromExport())
+          .as("the export is not read again")
+          .isTrue();
+      verifyZeroInteractions(apiClientMock);
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+    }
+  }
+
+  @Test
+  void bootstrapFromExport_sync_already_started() {
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, tempDir.resolve("export.json").toString());
+    try {
+      when(connectorStoreMock.getLong("allisa_last_sync_id")).thenReturn(Optional.of(100L));
+
+      connector.bootstrapFromExport();
+
+      verifyZeroInteractions(apiClientMock);
+      verify(connectorStoreMock, never()).putLong(anyString(), anyLong());
+    } finally {
+      RuntimeConfig.clearProperty(ALLISA_BOOTSTRAP_FILE);
+    }
+  }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileLeaderLeaseTest {
+
+  private static final Duration TTL = Duration.ofSeconds(60);
+
+  @TempDir
+  Path tempDir;
+
+  // the monotonic clocks of the replicas are unrelated
+  private final AtomicLong nanos1 = new AtomicLong(5_000_000_000L);
+  private final AtomicLong nanos2 = new AtomicLong(-9_000_000_000L);
+  private FileLeaderLease lease1;
+  private FileLeaderLease lease2;
+
+  @BeforeEach
+  void setUp() {
+    final Path leaseFile = tempDir.resolve("lease");
+    lease1 = new FileLeaderLease(leaseFile, nanos1::get);
+    lease2 = new FileLeaderLease(leaseFile, nanos2::get);
+  }
+
+  @Test
+  void tryAcquire_one_holder_at_a_time() {
+    final OptionalLong token = lease1.tryAcquire("replica-1", TTL);
+    assertThat(token).isPresent();
+
+    assertThat(lease2.tryAcquire("replica-2", TTL)).isEmpty();
+    advance(nanos2, 50);
+    advance(nanos1, 50);
+    assertThat(lease1.tryAcquire("replica-1", TTL))
+        .as("the holder renews its lease")
+        .isEqualTo(token);
+    advance(nanos2, 50);
+    assertThat(lease2.tryAcquire("replica-2", TTL))
+        .as("the lease was renewed since replica-2 last saw it")
+        .isEmpty();
+  }
+
+  @Test
+  void tryAcquire_expired_lease() {
+    final long token = lease1.tryAcquire("replica-1", TTL).getAsLong();
+    assertThat(lease2.tryAcquire("replica-2", TTL)).isEmpty();
+
+    advance(nanos2, 60);
+    final OptionalLong takenOver = lease2.tryAcquire("replica-2", TTL);
+    assertThat(takenOver).hasValue(token + 1);
+    assertThat(lease1.tryAcquire("replica-1", TTL)).isEmpty();
+  }
+
+  @Test
+  void tryAcquire_lease_first_seen_late() {
+    lease1.tryAcquire("replica-1", TTL);
+    advance(nanos1, 600);
+
+    assertThat(lease2.tryAcquire("replica-2", TTL))
+        .as("replica-2 can't tell how long ago the lease was renewed")
+        .isEmpty();
+  }
+
+  @Test
+  void release() {
+    final long token = lease1.tryAcquire("replica-1", TTL).getAsLong();
+
+    lease2.release("replica-2");
+    assertThat(lease2.tryAcquire("replica-2", TTL))
+        .as("only the holder can release the lease")
+        .isEmpty();
+
+    lease1.release("replica-1");
+    assertThat(lease2.tryAcquire("replica-2", TTL)).hasValue(token + 2);
+  }
+
+  @Test
+  void tryAcquire_damaged_lease_file() throws IOException {
+    Files.write(tempDir.resolve("lease"), "holder=\nfencingToken=garbage\nrenewals=0\nttlMillis=0\n".getBytes());
+
+    assertThatThrownBy(() -> lease1.tryAcquire("replica-1", TTL))
+        .as("the fencing token and values are lost, the lease isn't free")
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void tryAcquire_partly_written_lease_file() throws IOException {
+    Files.write(tempDir.resolve("lease"), new byte[0]);
+
+    assertThatThrownBy(() -> lease1.tryAcquire("replica-1", TTL)).isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> lease1.getValue("cursor")).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void update_replaces_the_lease_file() throws IOException {
+    final long token = lease1.tryAcquire("replica-1", TTL).getAsLong();
+    lease1.putValue("replica-1", token, "cursor", "1");
+
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files.map(file -> file.getFileName().toString()))
+          .as("no update is left half done")
+          .containsExactlyInAnyOrder("lease", "lease.lock");
+    }
+    assertThat(new String(Files.readAllBytes(tempDir.resolve("lease")), StandardCharsets.UTF_8))
+        .contains("fencingToken=" + token, "value.cursor=1");
+  }
+
+  @Test
+  void putValue_fenced_by_the_lease() {
+    final long token = lease1.tryAcquire("replica-1", TTL).getAsLong();
+    assertThat(lease1.putValue("replica-1", token, "cursor", "1")).isTrue();
+    assertThat(lease2.putValue("replica-2", token, "cursor", "2")).isFalse();
+
+    lease2.tryAcquire("replica-2", TTL);
+    advance(nanos2, 60);
+    final long newToken = lease2.tryAcquire("replica-2", TTL).getAsLong();
+
+    assertThat(lease2.getValue("cursor"))
+        .as("the new holder continues from the values of the previous one")
+        .hasValue("1");
+    assertThat(lease1.putValue("replica-1", token, "cursor", "3"))
+        .as("the previous holder lost the lease")
+        .isFalse();
+    assertThat(lease2.putValue("replica-2", newToken, "cursor", "4")).isTrue();
+    assertThat(lease1.getValue("cursor")).hasValue("4");
+  }
+
+  @Test
+  void values_survive_release() {
+    final long token = lease1.tryAcquire("replica-1", TTL).getAsLong();
+    lease1.putValue("replica-1", token, "cursor", "1");
+
+    lease1.release("replica-1");
+
+    assertThat(lease2.getValue("cursor")).hasValue("1");
+    assertThat(lease2.getValue("other")).isEmpty();
+  }
+
+  private static void advance(AtomicLong nanos, long seconds) {
+    nanos.addAndGet(Duration.ofSeconds(seconds).toNanos());
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.allisa.util.ConnectorMetrics;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+class HttpLaneInterceptorTest {
+
+  private final ConnectorMetrics metrics = new ConnectorMetrics();
+  private final HttpLaneInterceptor interceptor = new HttpLaneInterceptor(HttpLane.SYNC, 1, metrics);
+  private final Request request = new Request.Builder().url("https://allisa.cloud/demo/api/list").build();
+
+  @Test
+  void requests_wait_for_their_turn() throws Exception {
+    final CountDownLatch firstStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final Interceptor.Chain first = chain(() -> {
+      firstStarted.countDown();
+      releaseFirst.await(5, TimeUnit.SECONDS);
+    });
+    final Interceptor.Chain second = chain(() -> { });
+
+    final CompletableFuture<Response> firstResponse = CompletableFuture.supplyAsync(() -> intercept(first));
+    assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    final CompletableFuture<Response> secondResponse = CompletableFuture.supplyAsync(() -> intercept(second));
+    Thread.sleep(200);
+    verify(second, never()).proceed(any());
+
+    releaseFirst.countDown();
+
+    assertThat(firstResponse.get(5, TimeUnit.SECONDS).code()).isEqualTo(200);
+    assertThat(secondResponse.get(5, TimeUnit.SECONDS).code()).isEqualTo(200);
+  }
+
+  @Test
+  void canceled_request_stops_waiting() throws Exception {
+    final CountDownLatch firstStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final Interceptor.Chain first = chain(() -> {
+      firstStarted.countDown();
+      releaseFirst.await(5, TimeUnit.SECONDS);
+    });
+    final CompletableFuture<Response> firstResponse = CompletableFuture.supplyAsync(() -> intercept(first));
+    assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    final Interceptor.Chain canceled = chain(() -> { });
+    when(canceled.call().isCanceled()).thenReturn(true);
+
+    try {
+      assertThatThrownBy(() -> interceptor.intercept(canceled))
+          .isInstanceOf(IOException.class)
+          .hasMessage("Canceled");
+      verify(canceled, never()).proceed(any());
+    } finally {
+      releaseFirst.countDown();
+    }
+    firstResponse.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void reports_lane_metrics() throws IOException {
+    for (int i = 0; i < 50; i++) {
+      interceptor.intercept(chain(() -> { }));
+    }
+
+    assertThat(metrics.getGauge(ConnectorMetrics.HTTP_WAIT + ".sync")).isPresent();
+    assertThat(metrics.getGauge(ConnectorMetrics.HTTP_LATENCY + ".sync")).isPresent();
+  }
+
+  private Response intercept(Interceptor.Chain chain) {
+    try {
+      return interceptor.intercept(chain);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Interceptor.Chain chain(Work work) throws IOException {
+    final Interceptor.Chain chain = mock(Interceptor.Chain.class);
+    when(chain.request()).thenReturn(request);
+    when(chain.call()).thenReturn(mock(Call.class));
+    when(chain.proceed(request)).thenAnswer(invocation -> {
+      work.run();
+      return new Response.Builder()
+          .request(request)
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .build();
+    });
+    return chain;
+  }
+
+  @FunctionalInterface
+  private interface Work {
+    void run() throws Exception;
+  }
+}
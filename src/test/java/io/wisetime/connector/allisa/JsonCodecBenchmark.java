@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.ApiResponse;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares decoding a page of the case listing with the {@link JsonCodec} to decoding it with Gson, as the connector
+ * did before. Run with `./gradlew jsonBenchmark`.
+ */
+public class JsonCodecBenchmark {
+
+  private static final int CASES_PER_PAGE = 500;
+  private static final long WARMUP_MILLIS = 3_000;
+  private static final long MEASURE_MILLIS = 5_000;
+
+  private static final Type CASES_TYPE = new TypeToken<ApiResponse<AllisaCase>>() { }.getType();
+
+  public static void main(String[] args) throws Exception {
+    final byte[] page = casePage();
+    // Gson mapped the Allisa column names with @SerializedName alternates
+    final Gson gson = new GsonBuilder()
+        .setFieldNamingStrategy(field -> {
+          switch (field.getName()) {
+            case "caseId":
+              return "ID";
+            case "caseReference":
+              return "az";
+            case "caseDescription":
+              return "prname";
+            default:
+              return field.getName();
+          }
+        })
+        .create();
+
+    System.out.printf(Locale.ROOT, "Decoding a page of %d cases (%d bytes)%n", CASES_PER_PAGE, page.length);
+    run("gson", () -> gson.<ApiResponse<AllisaCase>>fromJson(
+        new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8), CASES_TYPE));
+    run("jackson", () -> JsonCodec.CASES_READER.<ApiResponse<AllisaCase>>readValue(page));
+  }
+
+  private static void run(String name, Callable<ApiResponse<AllisaCase>> decode) throws Exception {
+    if (decode.call().getResult().getData().get(CASES_PER_PAGE - 1).getCaseReference() == null) {
+      throw new IllegalStateException(name + " did not decode the case columns");
+    }
+    measure(decode, WARMUP_MILLIS);
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    final long start = System.nanoTime();
+    final long pages = measure(decode, MEASURE_MILLIS);
+    final long elapsedNanos = System.nanoTime() - start;
+    final long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+    System.out.printf(Locale.ROOT, "%-8s %10.1f pages/s %12d bytes allocated/page%n",
+        name, pages * 1e9 / elapsedNanos, allocated / pages);
+  }
+
+  private static long measure(Callable<ApiResponse<AllisaCase>> decode, long millis) throws Exception {
+    final long end = System.currentTimeMillis() + millis;
+    long pages = 0;
+    while (System.currentTimeMillis() < end) {
+      decode.call();
+      pages++;
+    }
+    return pages;
+  }
+
+  /**
+   * A page of the case listing without column selection, so it holds columns the connector skips.
+   */
+  private static byte[] casePage() {
+    return IntStream.rangeClosed(1, CASES_PER_PAGE)
+        .mapToObj(id -> String.format(Locale.ROOT, "{\"ID\": %d, \"az\": \"P-%05d\", \"prname\": \"Case %d of a "
+            + "patent family\", \"status\": {\"id\": 3, \"names\": [\"open\", \"pending\"]}, \"created\": "
+            + "\"2021-03-04 10:11:12\", \"notes\": [1, 2, 3], \"owner\": null}", id, id, id))
+        .collect(Collectors.joining(",", "{\"code\": 200, \"message\": \"\", \"result\": {\"data\": [", "]}}"))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+}
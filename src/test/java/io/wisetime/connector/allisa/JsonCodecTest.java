@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.ApiResponse;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class JsonCodecTest {
+
+  @Test
+  void reads_allisa_column_names() throws IOException {
+    final AllisaCase allisaCase = JsonCodec.CASE_READER.readValue(
+        "{\"ID\": \"42\", \"az\": \"P-42\", \"prname\": \"Answer\", \"status\": {\"id\": 3}}");
+
+    assertThat(allisaCase.getCaseId()).isEqualTo(42);
+    assertThat(allisaCase.getCaseReference()).isEqualTo("P-42");
+    assertThat(allisaCase.getCaseDescription()).isEqualTo("Answer");
+  }
+
+  @Test
+  void round_trip() throws IOException {
+    final AllisaCase allisaCase = new RandomDataGenerator().randomAllisaCase();
+
+    final AllisaCase copy = JsonCodec.CASE_READER.readValue(JsonCodec.MAPPER.writeValueAsString(allisaCase));
+
+    assertThat(copy).isEqualToComparingFieldByField(allisaCase);
+  }
+
+  @Test
+  void readerFor_shares_readers() {
+    assertThat(JsonCodec.readerFor(new TypeReference<ApiResponse<AllisaCase>>() { }.getType()))
+        .isSameAs(JsonCodec.CASES_READER);
+    assertThat(JsonCodec.readerFor(ApiResponse.class))
+        .isSameAs(JsonCodec.readerFor(ApiResponse.class));
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.allisa.model.ApiResponse;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+class JsonConverterFactoryTest {
+
+  private final Retrofit retrofit = new Retrofit.Builder()
+      .baseUrl("https://allisa.cloud/demo/")
+      .addConverterFactory(new JsonConverterFactory())
+      .build();
+
+  @Test
+  void case_listing() throws IOException {
+    final String json = "{\"code\": 200, \"result\": {\"data\": ["
+        + "{\"ID\": 1, \"az\": \"P-1\", \"prname\": \"First\", \"status\": {\"id\": 3, \"names\": [\"open\"]}},"
+        + "{\"ID\": 2, \"az\": \"P-2\", \"prname\": \"Second\", \"status\": null, \"notes\": [1, 2, 3]}"
+        + "]}}";
+
+    final ApiResponse<AllisaCase> response = convert(json);
+
+    assertThat(response.getResult().getData())
+        .as("unknown columns are skipped")
+        .extracting(AllisaCase::getCaseReference)
+        .containsExactly("P-1", "P-2");
+  }
+
+  @Test
+  void empty_listing() throws IOException {
+    final ApiResponse<AllisaCase> response = convert("{\"code\": 200, \"result\": {\"data\": []}}");
+
+    assertThat(response.getResult().getData()).isEmpty();
+  }
+
+  @SuppressWarnings("unchecked")
+  private ApiResponse<AllisaCase> convert(String json) throws IOException {
+    final Converter<ResponseBody, ?> converter = retrofit.responseBodyConverter(
+        new TypeReference<ApiResponse<AllisaCase>>() { }.getType(), new Annotation[0]);
+    return (ApiResponse<AllisaCase>) converter.convert(
+        ResponseBody.create(MediaType.parse("application/json"), json));
+  }
+}
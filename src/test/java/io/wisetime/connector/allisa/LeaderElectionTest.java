@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.Test;
+
+class LeaderElectionTest {
+
+  private final LeaderLease leaseMock = mock(LeaderLease.class);
+
+  @Test
+  void renew_lease_acquired() {
+    when(leaseMock.tryAcquire("replica-1", Duration.ofSeconds(60))).thenReturn(OptionalLong.of(1));
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofSeconds(60));
+
+    assertThat(election.isLeader()).isFalse();
+    election.renew();
+    assertThat(election.isLeader()).isTrue();
+  }
+
+  @Test
+  void renew_lease_held_by_another_replica() {
+    when(leaseMock.tryAcquire(anyString(), any())).thenReturn(OptionalLong.of(1)).thenReturn(OptionalLong.empty());
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofSeconds(60));
+
+    election.renew();
+    election.renew();
+    assertThat(election.isLeader()).isFalse();
+  }
+
+  @Test
+  void renew_lease_store_unavailable() throws InterruptedException {
+    when(leaseMock.tryAcquire(anyString(), any()))
+        .thenReturn(OptionalLong.of(1))
+        .thenThrow(new RuntimeException("Expected exception"));
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofMillis(200));
+
+    election.renew();
+    election.renew();
+    assertThat(election.isLeader())
+        .as("the lease is still valid")
+        .isTrue();
+    Thread.sleep(250);
+    assertThat(election.isLeader())
+        .as("another replica may have taken over")
+        .isFalse();
+  }
+
+  @Test
+  void start_and_stop() {
+    when(leaseMock.tryAcquire(anyString(), any())).thenReturn(OptionalLong.of(1));
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofSeconds(60));
+
+    election.start();
+    verify(leaseMock, timeout(1000)).tryAcquire("replica-1", Duration.ofSeconds(60));
+
+    election.stop();
+    assertThat(election.isLeader()).isFalse();
+    verify(leaseMock).release("replica-1");
+  }
+
+  @Test
+  void putValue_fenced_by_the_lease_token() {
+    when(leaseMock.tryAcquire(anyString(), any())).thenReturn(OptionalLong.of(7));
+    when(leaseMock.putValue("replica-1", 7, "cursor", "1")).thenReturn(true);
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofSeconds(60));
+    election.renew();
+
+    election.putValue("cursor", "1");
+
+    assertThatThrownBy(() -> election.putValue("cursor", "2"))
+        .as("another replica took over the lease")
+        .isInstanceOf(LeaseLostException.class);
+    assertThat(election.isLeader()).isFalse();
+  }
+
+  @Test
+  void putValue_not_leader() {
+    final LeaderElection election = new LeaderElection(leaseMock, "replica-1", Duration.ofSeconds(60));
+
+    assertThatThrownBy(() -> election.putValue("cursor", "1")).isInstanceOf(LeaseLostException.class);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Runs the check of the experimental native executable against a local Allisa stub. Run with
+ * `./gradlew -PexperimentalNative nativeSmokeTest`, which builds the executable and passes its path in
+ * {@value #NATIVE_IMAGE_PROPERTY}. The default test run skips it.
+ */
+@EnabledIfSystemProperty(named = NativeImageSmokeTest.NATIVE_IMAGE_PROPERTY, matches = ".+")
+class NativeImageSmokeTest {
+
+  static final String NATIVE_IMAGE_PROPERTY = "allisa.nativeImage";
+
+  private static final String API_KEY = "smoke-test-key";
+  private static final String CASES = "{\"code\": 200, \"message\": \"\", \"result\": {\"data\": ["
+      + "{\"ID\": 1, \"az\": \"P-00001\", \"prname\": \"Smoke test\", \"status\": {\"id\": 3}}]}}";
+
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private HttpServer allisa;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    allisa = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    allisa.createContext("/api/", this::listCases);
+    allisa.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    allisa.stop(0);
+  }
+
+  @Test
+  void check_passes_against_allisa_stub() throws Exception {
+    final ProcessBuilder processBuilder = new ProcessBuilder(
+        System.getProperty(NATIVE_IMAGE_PROPERTY), ConnectorLauncher.CHECK_ARG)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.INHERIT);
+    final Map<String, String> environment = processBuilder.environment();
+    environment.put("ALLISA_BASE_URL", "http://127.0.0.1:" + allisa.getAddress().getPort() + "/");
+    environment.put("ALLISA_API_KEY", API_KEY);
+    environment.put("ALLISA_CASE_TYPE", "wisetime_cases");
+    environment.put("ALLISA_POST_TYPE", "wisetime_time");
+
+    final Process process = processBuilder.start();
+
+    assertThat(process.waitFor(60, TimeUnit.SECONDS))
+        .as("check finished")
+        .isTrue();
+    assertThat(process.exitValue()).isZero();
+    assertThat(requests)
+        .isNotEmpty()
+        .allMatch(request -> request.startsWith("apikey " + API_KEY + " /api/list/type/wisetime_cases/"));
+  }
+
+  private void listCases(HttpExchange exchange) throws IOException {
+    requests.add(exchange.getRequestHeaders().getFirst("Authorization") + " " + exchange.getRequestURI().getPath());
+    final byte[] body = CASES.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.allisa.model.AllisaCase;
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NewCaseProbeTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+  private static final String PROBE_LISTING_SIZE = "allisa_probe_listing_size";
+  private static final String PROBE_LAST_CASE_ID = "allisa_probe_last_case_id";
+
+  private static AllisaApiService allisaApiServiceMock = mock(AllisaApiService.class);
+  private static ConnectorStore connectorStoreMock = mock(ConnectorStore.class);
+
+  private NewCaseProbe probe;
+
+  @BeforeEach
+  void setup() {
+    reset(allisaApiServiceMock, connectorStoreMock);
+    probe = new NewCaseProbe(allisaApiServiceMock, connectorStoreMock, CASE_TYPE, "", 4);
+  }
+
+  @Test
+  void shouldSync_no_baseline() {
+    when(connectorStoreMock.getLong(PROBE_LISTING_SIZE)).thenReturn(Optional.empty());
+
+    assertThat(probe.shouldSync()).isTrue();
+    verify(allisaApiServiceMock, never()).getAllisaCaseAt(anyString(), anyLong());
+  }
+
+  @Test
+  void shouldSync_new_case_appended() {
+    givenBaseline(10, 100);
+    givenListing(10, 100);
+    when(allisaApiServiceMock.getAllisaCaseAt(CASE_TYPE, 11)).thenReturn(Optional.of(new AllisaCase().setCaseId(101)));
+
+    assertThat(probe.shouldSync()).isTrue();
+  }
+
+  @Test
+  void shouldSync_last_case_moved() {
+    givenBaseline(10, 100);
+    givenListing(10, 99);
+
+    assertThat(probe.shouldSync()).isTrue();
+  }
+
+  @Test
+  void shouldSync_backs_off_while_idle() {
+    givenBaseline(10, 100);
+    givenListing(10, 100);
+
+    assertThat(IntStream.range(0, 12).mapToObj(i -> probe.shouldSync()))
+        .as("probes are skipped for 1, 2 and then at most 4 ticks")
+        .containsOnly(false);
+    verify(allisaApiServiceMock, times(4)).getAllisaCaseAt(CASE_TYPE, 10);
+  }
+
+  @Test
+  void shouldSync_probe_failed() {
+    givenBaseline(10, 100);
+    when(allisaApiServiceMock.getAllisaCaseAt(anyString(), anyLong())).thenThrow(new RuntimeException("Expected exception"));
+
+    assertThat(probe.shouldSync()).isTrue();
+  }
+
+  @Test
+  void afterSync_listing_grew_by_synced_cases() {
+    when(connectorStoreMock.getLong(PROBE_LISTING_SIZE)).thenReturn(Optional.of(10L));
+    givenListing(13, 103);
+
+    probe.afterSync(3, 103, 1000);
+
+    verify(connectorStoreMock).putLong(PROBE_LISTING_SIZE, 13);
+    verify(connectorStoreMock).putLong(PROBE_LAST_CASE_ID, 103);
+    verify(allisaApiServiceMock, never()).getAllisaCaseAt(CASE_TYPE, 1000);
+  }
+
+  @Test
+  void afterSync_listing_size_searched() {
+    when(connectorStoreMock.getLong(PROBE_LISTING_SIZE)).thenReturn(Optional.empty());
+    givenListing(1234, 2000);
+
+    probe.afterSync(0, 2000, 1500);
+
+    verify(connectorStoreMock).putLong(PROBE_LISTING_SIZE, 1234);
+    verify(connectorStoreMock).putLong(PROBE_LAST_CASE_ID, 2000);
+  }
+
+  @Test
+  void afterSync_cases_added_during_sync() {
+    when(connectorStoreMock.getLong(PROBE_LISTING_SIZE)).thenReturn(Optional.of(10L));
+    givenListing(13, 105);
+
+    probe.afterSync(2, 103, 1000);
+
+    verify(connectorStoreMock).putLong(PROBE_LISTING_SIZE, -1);
+    verify(connectorStoreMock, never()).putLong(PROBE_LAST_CASE_ID, 105);
+  }
+
+  private static void givenBaseline(long listingSize, long lastCaseId) {
+    when(connectorStoreMock.getLong(PROBE_LISTING_SIZE)).thenReturn(Optional.of(listingSize));
+    when(connectorStoreMock.getLong(PROBE_LAST_CASE_ID)).thenReturn(Optional.of(lastCaseId));
+  }
+
+  /**
+   * A listing of the given size, ending with the given case ID.
+   */
+  private static void givenListing(long listingSize, long lastCaseId) {
+    when(allisaApiServiceMock.getAllisaCaseAt(anyString(), anyLong())).thenAnswer(invocation -> {
+      final long position = invocation.getArgument(1);
+      return position <= listingSize
+          ? Optional.of(new AllisaCase().setCaseId(lastCaseId - listingSize + position))
+          : Optional.empty();
+    });
+  }
+}
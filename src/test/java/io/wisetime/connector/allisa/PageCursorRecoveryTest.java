@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.allisa.model.AllisaCase;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PageCursorRecoveryTest {
+
+  private static final String CASE_TYPE = "wisetime_cases";
+  private static AllisaApiService allisaApiServiceMock = mock(AllisaApiService.class);
+
+  private PageCursorRecovery recovery;
+
+  @BeforeEach
+  void setup() {
+    reset(allisaApiServiceMock);
+    recovery = new PageCursorRecovery(allisaApiServiceMock);
+  }
+
+  @Test
+  void recoverPage_stored_page_is_valid() {
+    // case IDs 1 to 1000, synced up to 250
+    givenListing(LongStream.rangeClosed(1, 1000).toArray());
+
+    assertThat(recovery.recoverPage(CASE_TYPE, 250, 3, 100)).isEqualTo(3);
+    verify(allisaApiServiceMock, times(2)).getAllisaCaseAt(anyString(), anyLong());
+  }
+
+  @Test
+  void recoverPage_first_page() {
+    givenListing(LongStream.rangeClosed(1, 50).toArray());
+
+    assertThat(recovery.recoverPage(CASE_TYPE, 50, 1, 100)).isEqualTo(1);
+  }
+
+  @Test
+  void recoverPage_cases_deleted() {
+    // every other case up to 100000 was deleted, so case 50000 moved from page 500 to page 250
+    givenListing(LongStream.rangeClosed(1, 100_000).filter(id -> id % 2 == 0).toArray());
+
+    assertThat(recovery.recoverPage(CASE_TYPE, 50_000, 500, 100)).isEqualTo(251);
+    verify(allisaApiServiceMock, atMost(40)).getAllisaCaseAt(anyString(), anyLong());
+  }
+
+  @Test
+  void recoverPage_cursor_behind() {
+    givenListing(LongStream.rangeClosed(1, 100_000).toArray());
+
+    // e.g. after a bootstrap from an export that didn't hold every case
+    assertThat(recovery.recoverPage(CASE_TYPE, 12_345, 10, 100)).isEqualTo(124);
+    verify(allisaApiServiceMock, atMost(40)).getAllisaCaseAt(anyString(), anyLong());
+  }
+
+  @Test
+  void recoverPage_all_cases_deleted() {
+    givenListing();
+
+    assertThat(recovery.recoverPage(CASE_TYPE, 500, 5, 100)).isEqualTo(1);
+  }
+
+  /**
+   * A listing of the given case IDs, in ascending order.
+   */
+  private static void givenListing(long... caseIds) {
+    when(allisaApiServiceMock.getAllisaCaseAt(anyString(), anyLong())).thenAnswer(invocation -> {
+      final long position = invocation.getArgument(1);
+      return position >= 1 && position <= caseIds.length
+          ? Optional.of(new AllisaCase().setCaseId(caseIds[(int) position - 1]))
+          : Optional.empty();
+    });
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa;
+
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BASE_URL;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_BOOTSTRAP_FILE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_CASE_TYPE;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_SYNC_WORKERS;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_TENANTS;
+import static io.wisetime.connector.allisa.ConnectorLauncher.AllisaConnectorConfigKey.ALLISA_WEBHOOK_PORT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.inject.Guice;
+import io.wisetime.connector.ConnectorModule;
+import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.config.RuntimeConfigKey;
+import io.wisetime.connector.datastore.ConnectorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TenantConfigTest {
+
+  @BeforeEach
+  void setUp() {
+    RuntimeConfig.rebuild();
+  }
+
+  @AfterEach
+  void tearDown() {
+    RuntimeConfig.rebuild();
+  }
+
+  @Test
+  void forTenant_reads_prefixed_keys() {
+    RuntimeConfig.setProperty(ALLISA_BASE_URL, "https://allisa.cloud/shared/");
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, "patents");
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_BASE_URL"), "https://allisa.cloud/acme/");
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_SYNC_WORKERS"), " 4 ");
+    RuntimeConfig.setProperty(tenantKey("ACME__API_KEY"), "acme-key");
+
+    final TenantConfig config = TenantConfig.forTenant("acme");
+
+    assertThat(config.getTenantId()).contains("acme");
+    assertThat(config.getString(ALLISA_BASE_URL)).contains("https://allisa.cloud/acme/");
+    assertThat(config.getInt(ALLISA_SYNC_WORKERS)).contains(4);
+    assertThat(config.getOwnString(TenantConfig.API_KEY)).contains("acme-key");
+    assertThat(config.getString(ALLISA_CASE_TYPE))
+        .as("unset keys fall back to the shared value")
+        .contains("patents");
+    assertThat(config.getOwnString(ALLISA_CASE_TYPE)).isEmpty();
+    assertThat(config.keyName(ALLISA_CASE_TYPE)).isEqualTo("ACME__ALLISA_CASE_TYPE");
+  }
+
+  @Test
+  void forTenant_tenant_scoped_keys_are_not_shared() {
+    RuntimeConfig.setProperty(ALLISA_BASE_URL, "https://allisa.cloud/shared/");
+    RuntimeConfig.setProperty(ALLISA_BOOTSTRAP_FILE, "/data/export.json");
+    RuntimeConfig.setProperty(ALLISA_WEBHOOK_PORT, "8091");
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_WEBHOOK_PORT"), "8092");
+
+    final TenantConfig config = TenantConfig.forTenant("acme");
+
+    assertThat(config.getString(ALLISA_BASE_URL)).isEmpty();
+    assertThat(config.getString(ALLISA_BOOTSTRAP_FILE)).isEmpty();
+    assertThat(config.getInt(ALLISA_WEBHOOK_PORT)).contains(8092);
+    assertThat(new TenantConfig().getString(ALLISA_BOOTSTRAP_FILE))
+        .as("without tenants, the unprefixed keys apply")
+        .contains("/data/export.json");
+  }
+
+  @Test
+  void forTenant_takes_a_snapshot() {
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_BASE_URL"), "https://allisa.cloud/acme/");
+    final TenantConfig config = TenantConfig.forTenant("acme");
+
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_BASE_URL"), "https://allisa.cloud/changed/");
+    assertThat(config.getString(ALLISA_BASE_URL)).contains("https://allisa.cloud/acme/");
+  }
+
+  @Test
+  void forTenant_invalid_id() {
+    assertThatThrownBy(() -> TenantConfig.forTenant("acme firm"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void without_tenants() {
+    final TenantConfig config = new TenantConfig();
+    RuntimeConfig.setProperty(ALLISA_BASE_URL, "https://allisa.cloud/demo/");
+
+    assertThat(config.getTenantId()).isEmpty();
+    assertThat(config.getString(ALLISA_BASE_URL)).contains("https://allisa.cloud/demo/");
+    assertThat(config.keyName(ALLISA_BASE_URL)).isEqualTo("ALLISA_BASE_URL");
+  }
+
+  @Test
+  void getTenantIds() {
+    assertThat(ConnectorLauncher.getTenantIds()).isEmpty();
+
+    RuntimeConfig.setProperty(ALLISA_TENANTS, "acme, globex,");
+    assertThat(ConnectorLauncher.getTenantIds()).containsExactly("acme", "globex");
+  }
+
+  @Test
+  void connector_store_keys_are_namespaced_by_tenant() {
+    RuntimeConfig.setProperty(tenantKey("ACME__ALLISA_BASE_URL"), "https://allisa.cloud/acme/");
+    RuntimeConfig.setProperty(ALLISA_CASE_TYPE, "patents");
+    final TenantConfig config = TenantConfig.forTenant("acme");
+    final AllisaApiService allisaApiServiceMock = mock(AllisaApiService.class);
+    final ConnectorStore connectorStoreMock = mock(ConnectorStore.class);
+    doReturn(true).when(allisaApiServiceMock).canConnect();
+
+    final AllisaConnector connector = Guice.createInjector(binder -> {
+      binder.bind(AllisaApiService.class).toProvider(() -> allisaApiServiceMock);
+      binder.bind(TenantConfig.class).toInstance(config);
+    }).getInstance(AllisaConnector.class);
+    connector.init(new ConnectorModule(mock(ApiClient.class), connectorStoreMock, 5));
+    connector.syncNewCases("patents");
+
+    verify(connectorStoreMock, atLeastOnce()).getLong("acme/allisa_last_sync_id");
+    verify(connectorStoreMock, never()).getLong("allisa_last_sync_id");
+  }
+
+  private static RuntimeConfigKey tenantKey(String key) {
+    return () -> key;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AdaptiveLimit}.
+ */
+class AdaptiveLimitTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  void tryAcquire_rejects_calls_over_the_limit() {
+    final AdaptiveLimit limit = new AdaptiveLimit(1, 2, 10);
+
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isFalse();
+    assertThat(limit.getInFlight()).isEqualTo(2);
+
+    limit.onSample(FAST);
+    assertThat(limit.tryAcquire()).isTrue();
+  }
+
+  @Test
+  void limit_grows_while_fully_used_at_steady_latency() {
+    final AdaptiveLimit limit = new AdaptiveLimit(1, 2, 10);
+
+    runAtFullUse(limit, FAST, 50);
+
+    assertThat(limit.getLimit()).isEqualTo(10);
+  }
+
+  @Test
+  void limit_does_not_grow_while_barely_used() {
+    final AdaptiveLimit limit = new AdaptiveLimit(1, 4, 10);
+
+    for (int i = 0; i < 50; i++) {
+      limit.tryAcquire();
+      limit.onSample(FAST);
+    }
+
+    assertThat(limit.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  void limit_shrinks_when_latency_rises() {
+    final AdaptiveLimit limit = new AdaptiveLimit(1, 10, 10);
+    runAtFullUse(limit, FAST, 10);
+
+    runAtFullUse(limit, SLOW, 20);
+
+    // a few calls still queue at the service
+    assertThat(limit.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  void dropped_calls_shrink_the_limit() {
+    final AdaptiveLimit limit = new AdaptiveLimit(5, 10, 10);
+
+    limit.tryAcquire();
+    limit.onDropped();
+    assertThat(limit.getLimit()).isEqualTo(9);
+    assertThat(limit.getInFlight()).isZero();
+
+    for (int i = 0; i < 20; i++) {
+      limit.tryAcquire();
+      limit.onDropped();
+    }
+    assertThat(limit.getLimit()).isEqualTo(5);
+  }
+
+  private void runAtFullUse(AdaptiveLimit limit, long latencyNanos, int rounds) {
+    for (int round = 0; round < rounds; round++) {
+      int acquired = 0;
+      while (limit.tryAcquire()) {
+        acquired++;
+      }
+      for (int i = 0; i < acquired; i++) {
+        limit.onSample(latencyNanos);
+      }
+    }
+  }
+}
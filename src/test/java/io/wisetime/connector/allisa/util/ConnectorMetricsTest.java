@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ConnectorMetrics}.
+ */
+class ConnectorMetricsTest {
+
+  @Test
+  void summary_lists_the_latest_values_by_name() {
+    final ConnectorMetrics metrics = new ConnectorMetrics();
+    metrics.setGauge(ConnectorMetrics.SYNC_BACKLOG, 200);
+    metrics.setGauge(ConnectorMetrics.POST_LIMIT, 12);
+    metrics.setGauge(ConnectorMetrics.SYNC_BACKLOG, 0);
+
+    assertThat(metrics.summary()).contains("allisa.post.limit=12, allisa.sync.backlog=0");
+  }
+
+  @Test
+  void summary_no_gauges() {
+    assertThat(new ConnectorMetrics().summary()).isEmpty();
+  }
+}
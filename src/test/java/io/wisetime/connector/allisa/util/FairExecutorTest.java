@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FairExecutor}.
+ */
+class FairExecutorTest {
+
+  @Test
+  void lanes_take_turns() throws InterruptedException {
+    final FairExecutor executor = new FairExecutor(Executors.newSingleThreadExecutor());
+    final Executor busyLane = executor.lane("busy");
+    final Executor quietLane = executor.lane("quiet");
+    final List<String> ran = new CopyOnWriteArrayList<>();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(4);
+    try {
+      // occupies the only worker until all tasks are queued
+      busyLane.execute(() -> {
+        started.countDown();
+        await(release);
+      });
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+      busyLane.execute(() -> run(ran, "busy-1", done));
+      busyLane.execute(() -> run(ran, "busy-2", done));
+      busyLane.execute(() -> run(ran, "busy-3", done));
+      quietLane.execute(() -> run(ran, "quiet-1", done));
+      release.countDown();
+
+      assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(ran)
+          .as("the quiet lane doesn't wait for all tasks of the busy lane")
+          .containsExactly("busy-1", "quiet-1", "busy-2", "busy-3");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void tasks_run_concurrently_on_several_workers() throws InterruptedException {
+    final FairExecutor executor = new FairExecutor(Executors.newFixedThreadPool(2));
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    try {
+      executor.lane("a").execute(() -> {
+        bothRunning.countDown();
+        await(bothRunning);
+      });
+      executor.lane("a").execute(() -> {
+        bothRunning.countDown();
+        await(bothRunning);
+      });
+
+      assertThat(bothRunning.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void run(List<String> ran, String task, CountDownLatch done) {
+    ran.add(task);
+    done.countDown();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
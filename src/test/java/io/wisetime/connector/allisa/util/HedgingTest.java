@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HedgingTest {
+
+  private ScheduledExecutorService timer;
+
+  @BeforeEach
+  void setup() {
+    timer = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    timer.shutdownNow();
+  }
+
+  @Test
+  void execute_no_hedge_without_latency_samples() {
+    Hedging hedging = new Hedging(timer, 100);
+    List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+    CompletableFuture<String> result = hedging.execute(() -> {
+      CompletableFuture<String> attempt = new CompletableFuture<>();
+      attempts.add(attempt);
+      return attempt;
+    });
+
+    assertThat(attempts).hasSize(1);
+    attempts.get(0).complete("first");
+    assertThat(result.join()).isEqualTo("first");
+  }
+
+  @Test
+  void execute_slow_attempt_is_hedged() {
+    Hedging hedging = new Hedging(timer, 100);
+    warmUp(hedging);
+    List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+    CompletableFuture<String> result = hedging.execute(() -> {
+      CompletableFuture<String> attempt = new CompletableFuture<>();
+      synchronized (attempts) {
+        attempts.add(attempt);
+      }
+      return attempt;
+    });
+
+    waitForAttempts(attempts, 2);
+    synchronized (attempts) {
+      attempts.get(1).complete("hedge");
+    }
+    assertThat(result.join()).isEqualTo("hedge");
+    assertThat(attempts.get(0))
+        .as("the losing attempt is cancelled")
+        .isCancelled();
+  }
+
+  @Test
+  void execute_hedges_are_capped() {
+    Hedging hedging = new Hedging(timer, 0);
+    warmUp(hedging);
+    List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+    CompletableFuture<String> result = hedging.execute(() -> {
+      CompletableFuture<String> attempt = new CompletableFuture<>();
+      synchronized (attempts) {
+        attempts.add(attempt);
+      }
+      return attempt;
+    });
+
+    sleep(100);
+    synchronized (attempts) {
+      assertThat(attempts)
+          .as("no hedging budget")
+          .hasSize(1);
+      attempts.get(0).complete("first");
+    }
+    assertThat(result.join()).isEqualTo("first");
+  }
+
+  @Test
+  void execute_fails_when_all_attempts_fail() {
+    Hedging hedging = new Hedging(timer, 100);
+    CompletableFuture<String> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new RuntimeException("Error"));
+
+    assertThat(hedging.execute(() -> failed)).isCompletedExceptionally();
+  }
+
+  private static void warmUp(Hedging hedging) {
+    // fast responses put p95 at about 0ms, so that the next slow attempt gets hedged right away
+    IntStream.range(0, 50).forEach(i -> hedging.execute(() -> CompletableFuture.completedFuture("warm-up")));
+  }
+
+  private static void waitForAttempts(List<?> attempts, int count) {
+    long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < timeout) {
+      synchronized (attempts) {
+        if (attempts.size() >= count) {
+          return;
+        }
+      }
+      sleep(5);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link InFlightGate}.
+ */
+class InFlightGateTest {
+
+  private final InFlightGate gate = new InFlightGate();
+
+  @Test
+  void closed_gate_rejects_operations() throws InterruptedException {
+    assertThat(gate.closeAndAwait(Deadline.after(Duration.ZERO))).isTrue();
+
+    assertThat(gate.isClosed()).isTrue();
+    assertThat(gate.tryEnter()).isFalse();
+    assertThat(gate.getInFlight()).isZero();
+  }
+
+  @Test
+  void closeAndAwait_waits_for_operations_in_flight() throws Exception {
+    assertThat(gate.tryEnter()).isTrue();
+
+    final CompletableFuture<Boolean> drained = CompletableFuture.supplyAsync(() -> {
+      try {
+        return gate.closeAndAwait(Deadline.after(Duration.ofSeconds(5)));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    while (!gate.isClosed()) {
+      Thread.sleep(1);
+    }
+    assertThat(drained).isNotDone();
+    assertThat(gate.tryEnter()).isFalse();
+
+    gate.leave();
+
+    assertThat(drained.get(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void closeAndAwait_gives_up_at_the_deadline() throws InterruptedException {
+    assertThat(gate.tryEnter()).isTrue();
+
+    assertThat(gate.closeAndAwait(Deadline.after(Duration.ofMillis(50)))).isFalse();
+    assertThat(gate.getInFlight()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ */
+class SingleFlightTest {
+
+  private final SingleFlight<String> singleFlight = new SingleFlight<>();
+
+  @Test
+  void execute_concurrent_identical_calls_share_result() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch leaderStarted = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        leaderStarted.countDown();
+        await(release);
+        return "result";
+      }));
+      assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+      final Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        return "other result";
+      }));
+      // give the follower time to join the flight
+      Thread.sleep(100);
+      release.countDown();
+
+      assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+      assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+      assertThat(calls).hasValue(1);
+      assertThat(singleFlight.inFlightCount()).isZero();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void execute_sequential_calls_are_not_cached() {
+    assertThat(singleFlight.execute("key", () -> "first")).isEqualTo("first");
+    assertThat(singleFlight.execute("key", () -> "second")).isEqualTo("second");
+  }
+
+  @Test
+  void execute_exception_is_rethrown() {
+    final IllegalStateException exception = new IllegalStateException("Expected exception");
+    assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+      throw exception;
+    })).isSameAs(exception);
+    assertThat(singleFlight.inFlightCount()).isZero();
+  }
+
+  @Test
+  void executeAsync_identical_calls_share_result() throws Exception {
+    final CompletableFuture<String> call = new CompletableFuture<>();
+    final AtomicInteger calls = new AtomicInteger();
+
+    final CompletableFuture<String> first = singleFlight.executeAsync("key", () -> {
+      calls.incrementAndGet();
+      return call;
+    });
+    final CompletableFuture<String> second = singleFlight.executeAsync("key", () -> {
+      calls.incrementAndGet();
+      return new CompletableFuture<>();
+    });
+    final CompletableFuture<String> otherKey = singleFlight.executeAsync("other", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture("other");
+    });
+
+    second.cancel(true);
+    assertThat(call.isCancelled())
+        .as("cancelling one caller must not cancel the shared call")
+        .isFalse();
+
+    call.complete("result");
+    assertThat(first.get()).isEqualTo("result");
+    assertThat(otherKey.get()).isEqualTo("other");
+    assertThat(calls).hasValue(2);
+    assertThat(singleFlight.inFlightCount()).isZero();
+  }
+
+  @Test
+  void executeAsync_call_is_cancelled_once_all_callers_cancel() {
+    final CompletableFuture<String> call = new CompletableFuture<>();
+    final CompletableFuture<String> first = singleFlight.executeAsync("key", () -> call);
+    final CompletableFuture<String> second = singleFlight.executeAsync("key", CompletableFuture::new);
+
+    first.cancel(true);
+    assertThat(call.isCancelled()).isFalse();
+    second.cancel(true);
+
+    assertThat(call.isCancelled()).isTrue();
+    assertThat(singleFlight.inFlightCount()).isZero();
+    assertThat(singleFlight.executeAsync("key", () -> CompletableFuture.completedFuture("new call")))
+        .as("callers arriving after the cancellation start a new call")
+        .isCompletedWithValue("new call");
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.allisa.util;
+
+import static io.wisetime.connector.utils.ActivityTimeCalculator.startTime;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.utils.DurationCalculator;
+import io.wisetime.connector.utils.DurationSource;
+import io.wisetime.generated.connect.Tag;
+import io.wisetime.generated.connect.TimeGroup;
+import io.wisetime.generated.connect.TimeGroup.DurationSplitStrategyEnum;
+import io.wisetime.generated.connect.TimeRow;
+import io.wisetime.generated.connect.User;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link TimeGroupAnalysis}.
+ */
+class TimeGroupAnalysisTest {
+
+  private static final long SEED = 20210301L;
+
+  @Test
+  void unedited_time_is_weighted_by_experience() {
+    final TimeGroup timeGroup = timeGroup(900, 50, DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG,
+        timeRow(2018110121, 10, 600, "A"), timeRow(2018110122, 0, 300, "A"));
+
+    final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroup);
+
+    assertThat(analysis.getRowDurationSecs()).isEqualTo(900);
+    assertThat(analysis.isTotalDurationEdited()).isFalse();
+    assertThat(analysis.getChargeableSecsPerCase()).isEqualTo(450);
+    assertThat(analysis.getActualSecsPerCase()).isEqualTo(900);
+  }
+
+  @Test
+  void edited_time_is_charged_as_is() {
+    final TimeGroup timeGroup = timeGroup(1200, 50, DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG,
+        timeRow(2018110121, 10, 600, "A"), timeRow(2018110122, 0, 300, "A"));
+
+    final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroup);
+
+    assertThat(analysis.isTotalDurationEdited()).isTrue();
+    assertThat(analysis.getChargeableSecsPerCase()).isEqualTo(1200);
+    assertThat(analysis.getActualSecsPerCase())
+        .as("actual time comes from the time rows")
+        .isEqualTo(900);
+  }
+
+  @Test
+  void time_is_divided_between_tags() {
+    final TimeGroup timeGroup = timeGroup(900, 100, DurationSplitStrategyEnum.DIVIDE_BETWEEN_TAGS,
+        timeRow(2018110121, 10, 900, "A"))
+        .tags(ImmutableList.of(new Tag().name("P-1"), new Tag().name("P-2")));
+
+    final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroup);
+
+    assertThat(analysis.getChargeableSecsPerCase()).isEqualTo(450);
+    assertThat(analysis.getActualSecsPerCase()).isEqualTo(450);
+  }
+
+  @Test
+  void activity_codes_are_distinct_in_order_of_appearance() {
+    final TimeGroup timeGroup = timeGroup(300, 100, DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG,
+        timeRow(2018110121, 0, 100, "B"), timeRow(2018110121, 1, 100, "A"), timeRow(2018110121, 2, 100, "B"));
+
+    assertThat(TimeGroupAnalysis.of(timeGroup).getActivityCodes()).containsExactly("B", "A");
+  }
+
+  @Test
+  void start_time_is_the_earliest_row() {
+    final TimeGroup timeGroup = timeGroup(300, 100, DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG,
+        timeRow(2018110122, 5, 100, "A"), timeRow(2018110121, 50, 100, "A"), timeRow(2018110121, 10, 100, "A"));
+
+    assertThat(TimeGroupAnalysis.of(timeGroup).getStartTime())
+        .contains(LocalDateTime.of(2018, 11, 1, 21, 10));
+  }
+
+  @Test
+  void of_no_time_rows() {
+    final TimeGroup timeGroup = timeGroup(0, 100, DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG)
+        .timeRows(Collections.emptyList());
+
+    final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroup);
+
+    assertThat(analysis.getActivityCodes()).isEmpty();
+    assertThat(analysis.getStartTime()).isEmpty();
+    assertThat(analysis.getRowDurationSecs()).isZero();
+  }
+
+  @Test
+  void of_matches_separate_calculations() {
+    // seeded, so that a failure can be reproduced
+    final Random random = new Random(SEED);
+    for (int i = 0; i < 1000; i++) {
+      final TimeGroup timeGroup = randomTimeGroup(random);
+      final boolean edited = !timeGroup.getTotalDurationSecs()
+          .equals(timeGroup.getTimeRows().stream().mapToInt(TimeRow::getDurationSecs).sum());
+
+      final TimeGroupAnalysis analysis = TimeGroupAnalysis.of(timeGroup);
+
+      assertThat(analysis.isTotalDurationEdited()).as("edited flag of %s", timeGroup).isEqualTo(edited);
+      assertThat(analysis.getChargeableSecsPerCase()).as("chargeable time of %s", timeGroup).isEqualTo(edited
+          ? DurationCalculator.of(timeGroup).useDurationFrom(DurationSource.TIME_GROUP).roundToNearestSeconds(1)
+              .disregardExperienceWeighting().calculate()
+          : DurationCalculator.of(timeGroup).useDurationFrom(DurationSource.TIME_GROUP).roundToNearestSeconds(1)
+              .calculate());
+      assertThat(analysis.getActualSecsPerCase()).as("actual time of %s", timeGroup).isEqualTo(
+          DurationCalculator.of(timeGroup).useDurationFrom(DurationSource.SUM_TIME_ROWS).roundToNearestSeconds(1)
+              .disregardExperienceWeighting().calculate());
+      assertThat(analysis.getActivityCodes()).as("activity codes of %s", timeGroup).isEqualTo(
+          timeGroup.getTimeRows().stream().map(TimeRow::getActivityTypeCode).distinct().collect(Collectors.toList()));
+      assertThat(analysis.getStartTime()).as("start time of %s", timeGroup).isEqualTo(startTime(timeGroup));
+    }
+  }
+
+  private static TimeGroup randomTimeGroup(Random random) {
+    final List<TimeRow> timeRows = new ArrayList<>();
+    final int rowCount = random.nextInt(6);
+    // rows often start within the same hour
+    final int sharedActivityHour = randomActivityHour(random);
+    for (int i = 0; i < rowCount; i++) {
+      timeRows.add(timeRow(
+          random.nextBoolean() ? sharedActivityHour : randomActivityHour(random),
+          random.nextInt(60),
+          random.nextInt(3600),
+          // mixed activity codes, with repetitions
+          random.nextInt(4) == 0 ? String.valueOf((char) ('A' + random.nextInt(3))) : "A"));
+    }
+    final int rowDurationSecs = timeRows.stream().mapToInt(TimeRow::getDurationSecs).sum();
+    final List<Tag> tags = new ArrayList<>();
+    for (int i = random.nextInt(4); i >= 0; i--) {
+      tags.add(new Tag().name("P-" + i));
+    }
+    return new TimeGroup()
+        // the user edited the total duration
+        .totalDurationSecs(random.nextBoolean() ? rowDurationSecs : random.nextInt(20_000))
+        .user(new User().experienceWeightingPercent(random.nextInt(101)))
+        .durationSplitStrategy(random.nextBoolean()
+            ? DurationSplitStrategyEnum.WHOLE_DURATION_TO_EACH_TAG
+            : DurationSplitStrategyEnum.DIVIDE_BETWEEN_TAGS)
+        .tags(tags)
+        .timeRows(timeRows);
+  }
+
+  private static int randomActivityHour(Random random) {
+    // 'yyyyMMddHH'
+    return ((2018 + random.nextInt(4)) * 100 + 1 + random.nextInt(12)) * 10_000
+        + (1 + random.nextInt(28)) * 100 + random.nextInt(24);
+  }
+
+  private static TimeGroup timeGroup(int totalDurationSecs, int experienceWeightingPercent,
+                                     DurationSplitStrategyEnum splitStrategy, TimeRow... timeRows) {
+    return new TimeGroup()
+        .totalDurationSecs(totalDurationSecs)
+        .user(new User().experienceWeightingPercent(experienceWeightingPercent))
+        .durationSplitStrategy(splitStrategy)
+        .tags(ImmutableList.of(new Tag().name("P-1")))
+        .timeRows(ImmutableList.copyOf(timeRows));
+  }
+
+  private static TimeRow timeRow(int activityHour, int firstObservedInHour, int durationSecs, String activityCode) {
+    return new TimeRow()
+        .activityHour(activityHour)
+        .firstObservedInHour(firstObservedInHour)
+        .durationSecs(durationSecs)
+        .activityTypeCode(activityCode);
+  }
+}